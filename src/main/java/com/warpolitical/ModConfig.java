@@ -0,0 +1,78 @@
+package com.warpolitical;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Настройки мода: config/warpolitical/config.json. Читаются один раз при запуске;
+// если файла нет, он создаётся со значениями по умолчанию. Недостающие поля
+// получают значения по умолчанию, недопустимые заменяются на них же.
+public class ModConfig {
+
+    private static final String FILE = "config.json";
+
+    // Вершин на карту BlueMap на дальнем уровне детализации, все полигоны вместе
+    private int blueMapVertexBudget = 20000;
+    // Ближе этого расстояния камеры — точные контуры по чанкам
+    private double blueMapDetailDistance = 1500;
+    // Дальше этого — грубые контуры в пределах бюджета; между — упрощённые
+    private double blueMapCoarseDistance = 6000;
+
+    public static ModConfig load(Path configDir) {
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        Path file = configDir.resolve(FILE);
+        ModConfig config = null;
+
+        if (Files.exists(file)) {
+            try {
+                config = gson.fromJson(Files.readString(file), ModConfig.class);
+            } catch (IOException | JsonParseException e) {
+                WarPoliticalMod.LOGGER.error("{} не прочитан, используются значения по умолчанию: {}",
+                        FILE, e.getMessage());
+                return new ModConfig();
+            }
+        }
+        if (config == null) {
+            config = new ModConfig();
+            try {
+                Files.writeString(file, gson.toJson(config));
+            } catch (IOException e) {
+                WarPoliticalMod.LOGGER.warn("{} не записан: {}", FILE, e.getMessage());
+            }
+        }
+
+        config.validate();
+        return config;
+    }
+
+    private void validate() {
+        ModConfig defaults = new ModConfig();
+        if (blueMapVertexBudget < 100) {
+            WarPoliticalMod.LOGGER.warn("{}: blueMapVertexBudget меньше 100, взято {}",
+                    FILE, defaults.blueMapVertexBudget);
+            blueMapVertexBudget = defaults.blueMapVertexBudget;
+        }
+        if (blueMapDetailDistance <= 0 || blueMapCoarseDistance <= blueMapDetailDistance) {
+            WarPoliticalMod.LOGGER.warn("{}: нужно 0 < blueMapDetailDistance < blueMapCoarseDistance, взято {} и {}",
+                    FILE, defaults.blueMapDetailDistance, defaults.blueMapCoarseDistance);
+            blueMapDetailDistance = defaults.blueMapDetailDistance;
+            blueMapCoarseDistance = defaults.blueMapCoarseDistance;
+        }
+    }
+
+    public int getBlueMapVertexBudget() {
+        return blueMapVertexBudget;
+    }
+
+    public double getBlueMapDetailDistance() {
+        return blueMapDetailDistance;
+    }
+
+    public double getBlueMapCoarseDistance() {
+        return blueMapCoarseDistance;
+    }
+}
@@ -4,11 +4,13 @@ import com.warpolitical.bluemap.BlueMapIntegration;
 import com.warpolitical.claim.ClaimEngine;
 import com.warpolitical.commands.CommandRegistrar;
 import com.warpolitical.data.DataManager;
+import com.warpolitical.data.SaveService;
 import com.warpolitical.listeners.ProtectionHandler;
 import com.warpolitical.scenario.ScenarioParser;
 import com.warpolitical.world.WorldManager;
 import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.server.MinecraftServer;
 import org.slf4j.Logger;
@@ -24,7 +26,9 @@ public class WarPoliticalMod implements ModInitializer {
     private static WarPoliticalMod instance;
     private MinecraftServer server;
 
+    private ModConfig config;
     private DataManager dataManager;
+    private SaveService saveService;
     private ScenarioParser scenarioParser;
     private WorldManager worldManager;
     private ClaimEngine claimEngine;
@@ -39,6 +43,7 @@ public class WarPoliticalMod implements ModInitializer {
                 .getConfigDir().resolve(MOD_ID);
         configDir.toFile().mkdirs();
 
+        this.config = ModConfig.load(configDir);
         this.dataManager = new DataManager(configDir);
         this.claimEngine = new ClaimEngine(this);
         this.blueMapIntegration = new BlueMapIntegration(this);
@@ -48,6 +53,7 @@ public class WarPoliticalMod implements ModInitializer {
 
         ServerLifecycleEvents.SERVER_STARTED.register(this::onServerStarted);
         ServerLifecycleEvents.SERVER_STOPPING.register(this::onServerStopping);
+        ServerTickEvents.END_SERVER_TICK.register(this::onServerTick);
 
         LOGGER.info("WarPoliticalEngine зарегистрирован!");
     }
@@ -56,6 +62,7 @@ public class WarPoliticalMod implements ModInitializer {
         this.server = server;
         this.worldManager = new WorldManager(this, server);
         this.scenarioParser = new ScenarioParser(this, server);
+        this.saveService = new SaveService(dataManager);
 
         dataManager.loadAll();
 
@@ -69,8 +76,19 @@ public class WarPoliticalMod implements ModInitializer {
         LOGGER.info("WarPoliticalEngine полностью запущен!");
     }
 
+    private void onServerTick(MinecraftServer server) {
+        if (scenarioParser != null) scenarioParser.tick();
+        if (saveService != null) saveService.tick();
+        if (blueMapIntegration != null) blueMapIntegration.tick();
+    }
+
     private void onServerStopping(MinecraftServer server) {
-        if (dataManager != null) dataManager.saveAll();
+        // Незавершённая загрузка сценария просто бросается: состояние ещё не подменено
+        if (scenarioParser != null) scenarioParser.shutdown();
+        // Дописывает фоновую запись и сохраняет всё, что не успело уйти
+        if (saveService != null) saveService.shutdown();
+        // Журнал закрывается последним: снимок уже записан, журнал укорочен
+        if (dataManager != null) dataManager.close();
         if (blueMapIntegration != null) blueMapIntegration.shutdown();
         LOGGER.info("WarPoliticalEngine остановлен");
     }
@@ -83,10 +101,18 @@ public class WarPoliticalMod implements ModInitializer {
         return server;
     }
 
+    public ModConfig getConfig() {
+        return config;
+    }
+
     public DataManager getDataManager() {
         return dataManager;
     }
 
+    public SaveService getSaveService() {
+        return saveService;
+    }
+
     public ScenarioParser getScenarioParser() {
         return scenarioParser;
     }
@@ -0,0 +1,192 @@
+package com.warpolitical.bluemap;
+
+import com.warpolitical.model.ClaimedChunk;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Контуры связной группы чанков по битовой карте её прямоугольника. Граница —
+// рёбра между занятой и пустой клеткой; каждое ребро направлено так, что занятая
+// клетка справа, и хранится битом направления в вершине сетки. Кольца собираются
+// обходом этих битов: O(площади прямоугольника) на разметку и O(периметра) на
+// обход, без строк и карт. В кольцо попадают только углы — точки, где обход
+// поворачивает, и стыки (см. isJunction), если задан слой владельцев. Внешнее
+// кольцо идёт по часовой стрелке (x — восток, z — юг), дыры — против; их
+// отличает знак площади.
+final class ContourTracer {
+
+    private static final int BLOCKS_PER_CHUNK = 16;
+
+    // Направления обхода: восток, юг, запад, север
+    private static final int EAST = 0;
+    private static final int SOUTH = 1;
+    private static final int WEST = 2;
+    private static final int NORTH = 3;
+    private static final int[] DX = {1, 0, -1, 0};
+    private static final int[] DZ = {0, 1, 0, -1};
+
+    // Владелец чанка в слое карты (ординал города или нации), одно значение для ничьих
+    interface Owners {
+        int ownerAt(int chunkX, int chunkZ);
+    }
+
+    // Контур в блоках; точки — {x, z}
+    static final class Contour {
+        final List<double[]> outer;
+        final List<List<double[]>> holes;
+
+        Contour(List<double[]> outer, List<List<double[]>> holes) {
+            this.outer = outer;
+            this.holes = holes;
+        }
+    }
+
+    private ContourTracer() {
+    }
+
+    // chunks — упакованные координаты одной связной (по сторонам) части; null — часть пуста
+    static Contour trace(long[] chunks) {
+        return trace(chunks, null);
+    }
+
+    // owners != null — в кольца попадают и стыки, даже посреди прямого участка
+    static Contour trace(long[] chunks, Owners owners) {
+        if (chunks.length == 0) return null;
+
+        int minX = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        for (long packed : chunks) {
+            int x = ClaimedChunk.unpackX(packed);
+            int z = ClaimedChunk.unpackZ(packed);
+            minX = Math.min(minX, x);
+            minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x);
+            maxZ = Math.max(maxZ, z);
+        }
+
+        int width = maxX - minX + 1;
+        int height = maxZ - minZ + 1;
+        boolean[] filled = new boolean[width * height];
+        for (long packed : chunks) {
+            filled[(ClaimedChunk.unpackZ(packed) - minZ) * width + (ClaimedChunk.unpackX(packed) - minX)] = true;
+        }
+
+        // Граничные рёбра: бит направления в начальной вершине
+        int stride = width + 1;
+        byte[] edges = new byte[stride * (height + 1)];
+        for (int z = 0; z < height; z++) {
+            for (int x = 0; x < width; x++) {
+                if (!filled[z * width + x]) continue;
+                if (!isFilled(filled, width, height, x, z - 1)) {
+                    edges[z * stride + x] |= 1 << EAST;
+                }
+                if (!isFilled(filled, width, height, x + 1, z)) {
+                    edges[z * stride + x + 1] |= 1 << SOUTH;
+                }
+                if (!isFilled(filled, width, height, x, z + 1)) {
+                    edges[(z + 1) * stride + x + 1] |= 1 << WEST;
+                }
+                if (!isFilled(filled, width, height, x - 1, z)) {
+                    edges[(z + 1) * stride + x] |= 1 << NORTH;
+                }
+            }
+        }
+
+        byte[] used = new byte[edges.length];
+        List<double[]> outer = null;
+        List<List<double[]>> holes = new ArrayList<>();
+
+        for (int start = 0; start < edges.length; start++) {
+            int free = edges[start] & ~used[start];
+            if (free == 0) continue;
+
+            List<double[]> ring = traceRing(edges, used, stride, start,
+                    Integer.numberOfTrailingZeros(free), minX, minZ, owners);
+            if (ring.size() < 3) continue;
+
+            if (signedArea(ring) > 0 && outer == null) {
+                outer = ring;
+            } else {
+                holes.add(ring);
+            }
+        }
+
+        return outer != null ? new Contour(outer, holes) : null;
+    }
+
+    private static boolean isFilled(boolean[] filled, int width, int height, int x, int z) {
+        return x >= 0 && z >= 0 && x < width && z < height && filled[z * width + x];
+    }
+
+    // Обход кольца от ребра (start, direction). В вершине, где сходятся две клетки
+    // по диагонали, выходов два; приоритет поворота направо держит обход у той же
+    // клетки, поэтому клетки, касающиеся только углом, не сливаются в одно кольцо.
+    private static List<double[]> traceRing(byte[] edges, byte[] used, int stride, int start,
+                                            int startDirection, int minX, int minZ, Owners owners) {
+        List<double[]> ring = new ArrayList<>();
+        int vertex = start;
+        int direction = startDirection;
+        int previous = -1;
+        boolean startKept = false;
+
+        while (true) {
+            used[vertex] |= 1 << direction;
+            int vx = minX + vertex % stride;
+            int vz = minZ + vertex / stride;
+            boolean junction = owners != null && isJunction(owners, vx, vz);
+            if (direction != previous || junction) {
+                ring.add(new double[]{vx * (double) BLOCKS_PER_CHUNK, vz * (double) BLOCKS_PER_CHUNK});
+                if (vertex == start) startKept = junction;
+            }
+            previous = direction;
+
+            vertex += DZ[direction] * stride + DX[direction];
+            direction = nextDirection(edges[vertex], direction);
+            if (direction < 0) break;
+            if (vertex == start && direction == startDirection) break;
+        }
+
+        // Начало кольца посреди прямого участка — лишняя точка, если это не стык
+        if (ring.size() > 3 && previous == startDirection && !startKept) {
+            ring.remove(0);
+        }
+        return ring;
+    }
+
+    // Вершина сетки, где сходятся три и больше владельцев (считая ничьи чанки) или
+    // две пары по диагонали. Между стыками граница отделяет одну и ту же пару
+    // владельцев, поэтому её участок у обоих одинаковый.
+    static boolean isJunction(Owners owners, int vertexX, int vertexZ) {
+        int nw = owners.ownerAt(vertexX - 1, vertexZ - 1);
+        int ne = owners.ownerAt(vertexX, vertexZ - 1);
+        int sw = owners.ownerAt(vertexX - 1, vertexZ);
+        int se = owners.ownerAt(vertexX, vertexZ);
+        if (nw == se && ne == sw) return nw != ne;
+
+        int distinct = 1;
+        if (ne != nw) distinct++;
+        if (sw != nw && sw != ne) distinct++;
+        if (se != nw && se != ne && se != sw) distinct++;
+        return distinct >= 3;
+    }
+
+    // Направо, прямо, налево; назад граница не поворачивает
+    private static int nextDirection(int outgoing, int direction) {
+        int right = (direction + 1) & 3;
+        if ((outgoing & (1 << right)) != 0) return right;
+        if ((outgoing & (1 << direction)) != 0) return direction;
+        int left = (direction + 3) & 3;
+        if ((outgoing & (1 << left)) != 0) return left;
+        return -1;
+    }
+
+    private static double signedArea(List<double[]> ring) {
+        double sum = 0;
+        for (int i = 0, n = ring.size(); i < n; i++) {
+            double[] a = ring.get(i);
+            double[] b = ring.get((i + 1) % n);
+            sum += a[0] * b[1] - b[0] * a[1];
+        }
+        return sum / 2;
+    }
+}
@@ -0,0 +1,176 @@
+package com.warpolitical.bluemap;
+
+import com.warpolitical.data.ComponentIndex;
+import com.warpolitical.data.DataManager;
+import com.warpolitical.data.OrdinalRegistry;
+import com.warpolitical.data.TerritorySnapshot;
+import com.warpolitical.model.Nation;
+import com.warpolitical.model.Town;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Всё, что нужно для маркеров, на один момент времени. Собирается в потоке сервера:
+// копии полей городов и наций — O(городов + наций), связные части территорий —
+// готовые из ComponentIndex и только для пересчитываемых городов и наций,
+// владельцы соседних чанков — из неизменяемого снимка того же момента.
+// Для полного рендера и пока индекс частей не построен части здесь не собираются:
+// их строит поток карты по снимку (computeDeferredComponents), и сервер не тратит
+// O(мира). Дальше читается только потоком карты.
+final class MapInput {
+
+    final String worldName;
+    final TerritorySnapshot snapshot;
+    final Map<String, TownInfo> towns;
+    final Map<String, NationInfo> nations;
+    // Связные части: id → чанки каждой части
+    final Map<String, List<long[]>> townComponents = new HashMap<>();
+    final Map<String, List<long[]>> nationComponents = new HashMap<>();
+    // Части, отложенные до потока карты; null — все города или все нации
+    private boolean deferred;
+    private Set<String> deferredTowns;
+    private Set<String> deferredNations;
+
+    private MapInput(String worldName, TerritorySnapshot snapshot,
+                     Map<String, TownInfo> towns, Map<String, NationInfo> nations) {
+        this.worldName = worldName;
+        this.snapshot = snapshot;
+        this.towns = towns;
+        this.nations = nations;
+    }
+
+    // full — части всех городов и наций; иначе только townIds и nationIds
+    static MapInput capture(DataManager dataManager, Set<String> townIds, Set<String> nationIds,
+                            boolean full) {
+        Map<String, Nation> nations = dataManager.getNations();
+
+        Map<String, TownInfo> towns = new HashMap<>();
+        for (Town town : dataManager.getTowns().values()) {
+            towns.put(town.getId(), new TownInfo(town, nations.get(town.getNationId())));
+        }
+
+        Map<String, NationInfo> nationInfos = new HashMap<>();
+        for (Nation nation : nations.values()) {
+            nationInfos.put(nation.getId(), new NationInfo(nation, nations));
+        }
+
+        TerritorySnapshot snapshot = dataManager.getTerritorySnapshot();
+        MapInput input = new MapInput(snapshot.getActiveWorldName(), snapshot, towns, nationInfos);
+        if (input.worldName == null) return input;
+
+        ComponentIndex components = full ? null : dataManager.findComponents(input.worldName);
+        if (components == null) {
+            input.deferred = true;
+            input.deferredTowns = full ? null : townIds;
+            input.deferredNations = full ? null : nationIds;
+            return input;
+        }
+        OrdinalRegistry registry = dataManager.getRegistry();
+        for (String townId : townIds) {
+            input.townComponents.put(townId, components.getTownComponents(registry.findTown(townId)));
+        }
+        for (String nationId : nationIds) {
+            input.nationComponents.put(nationId, components.getNationComponents(registry.findNation(nationId)));
+        }
+        return input;
+    }
+
+    // Отложенные части по снимку; вызывается в потоке карты перед рендером
+    void computeDeferredComponents() {
+        if (!deferred) return;
+        deferred = false;
+
+        ComponentIndex components = ComponentIndex.of(snapshot);
+        for (int ordinal = 0; ordinal < snapshot.getTownCount(); ordinal++) {
+            TerritorySnapshot.TownView town = snapshot.getTown(ordinal);
+            if (town == null) continue;
+            if (deferredTowns == null || deferredTowns.contains(town.getId())) {
+                townComponents.put(town.getId(), components.getTownComponents(ordinal));
+            }
+            String nationId = town.getNationId();
+            if (town.getNationOrdinal() != OrdinalRegistry.NONE && !nationComponents.containsKey(nationId)
+                    && (deferredNations == null || deferredNations.contains(nationId))) {
+                nationComponents.put(nationId, components.getNationComponents(town.getNationOrdinal()));
+            }
+        }
+
+        // Без клеймов — пустые списки, как у индекса состояния
+        for (String townId : deferredTowns != null ? deferredTowns : towns.keySet()) {
+            townComponents.putIfAbsent(townId, List.of());
+        }
+        for (String nationId : deferredNations != null ? deferredNations : nations.keySet()) {
+            nationComponents.putIfAbsent(nationId, List.of());
+        }
+    }
+
+    static final class TownInfo {
+        final String id;
+        final String name;
+        final String color;
+        final String nationId;
+        final String nationName;
+        final String mayorName;
+        final int centerX;
+        final int centerZ;
+        final int chunkCount;
+        final boolean pvpEnabled;
+        final boolean explosionsEnabled;
+
+        private TownInfo(Town town, Nation nation) {
+            this.id = town.getId();
+            this.name = town.getName();
+            this.color = town.getColor();
+            this.nationId = town.getNationId();
+            this.nationName = nation != null ? nation.getName() : "—";
+            this.mayorName = town.getMayorName();
+            this.centerX = town.getCenterX();
+            this.centerZ = town.getCenterZ();
+            this.chunkCount = town.getChunkCount();
+            this.pvpEnabled = town.isPvpEnabled();
+            this.explosionsEnabled = town.isExplosionsEnabled();
+        }
+    }
+
+    static final class NationInfo {
+        final String id;
+        final String name;
+        final String color;
+        final String governmentType;
+        final String leaderName;
+        final String description;
+        final String capitalTownId;
+        final List<String> townIds;
+        final int totalChunks;
+        final boolean atWar;
+        // Имена, а не id: попап строится без доступа к остальным нациям
+        final List<String> allyNames;
+        final List<String> enemyNames;
+
+        private NationInfo(Nation nation, Map<String, Nation> all) {
+            this.id = nation.getId();
+            this.name = nation.getName();
+            this.color = nation.getColor();
+            this.governmentType = nation.getGovernmentType();
+            this.leaderName = nation.getLeaderName();
+            this.description = nation.getDescription();
+            this.capitalTownId = nation.getCapitalTownId();
+            this.townIds = List.copyOf(nation.getTownIds());
+            this.totalChunks = nation.getTotalChunks();
+            this.atWar = nation.isAtWar();
+            this.allyNames = names(nation.getAllies(), all);
+            this.enemyNames = names(nation.getEnemies(), all);
+        }
+
+        private static List<String> names(Iterable<String> ids, Map<String, Nation> all) {
+            List<String> result = new ArrayList<>();
+            for (String id : ids) {
+                Nation other = all.get(id);
+                result.add(other != null ? other.getName() : id);
+            }
+            return result;
+        }
+    }
+}
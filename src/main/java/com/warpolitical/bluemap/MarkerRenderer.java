@@ -0,0 +1,413 @@
+package com.warpolitical.bluemap;
+
+import com.warpolitical.ModConfig;
+import com.warpolitical.WarPoliticalMod;
+import com.warpolitical.data.TerritorySnapshot;
+import com.warpolitical.model.Nation;
+import com.warpolitical.model.Town;
+import de.bluecolored.bluemap.api.markers.POIMarker;
+import de.bluecolored.bluemap.api.markers.ShapeMarker;
+import de.bluecolored.bluemap.api.math.Color;
+import de.bluecolored.bluemap.api.math.Shape;
+
+import java.util.*;
+import java.util.function.Function;
+
+// Расчёт маркеров в потоке карты. Читает только MapInput, поэтому не видит
+// изменений, сделанных после его сборки. Геометрия считается один раз на мир;
+// готовые маркеры раскладываются по картам при публикации.
+//
+// Каждая часть территории рисуется тремя маркерами с разным расстоянием камеры:
+// точный контур по чанкам вблизи, упрощённый до чанка — на средних расстояниях и
+// грубый — издалека (ShapeSimplifier, общие границы соседей совпадают). Допуск
+// грубого уровня подбирается при полном пересчёте так, чтобы все полигоны карты
+// вместе уложились в бюджет вершин из ModConfig; частичные пересчёты берут
+// последний подобранный, чтобы соседи оставались на одном допуске.
+final class MarkerRenderer {
+
+    private static final double MEDIUM_TOLERANCE = 16;
+    private static final double MIN_COARSE_TOLERANCE = 32;
+    private static final double MAX_COARSE_TOLERANCE = 1024;
+
+    private final int vertexBudget;
+    private final double detailDistance;
+    private final double coarseDistance;
+    // Только поток карты
+    private double coarseTolerance = MIN_COARSE_TOLERANCE;
+
+    MarkerRenderer(ModConfig config) {
+        this.vertexBudget = config.getBlueMapVertexBudget();
+        this.detailDistance = config.getBlueMapDetailDistance();
+        this.coarseDistance = config.getBlueMapCoarseDistance();
+    }
+
+    // Готовые маркеры. Для частичного пересчёта — только затронутые города и нации.
+    static final class Result {
+        final boolean full;
+        // id → полигоны (ключ маркера → маркер); пустая карта — полигоны сняты
+        final Map<String, Map<String, ShapeMarker>> townShapes = new HashMap<>();
+        final Map<String, Map<String, ShapeMarker>> nationShapes = new HashMap<>();
+        // Ключ → POI; null — маркер снят
+        final Map<String, POIMarker> pois = new HashMap<>();
+
+        private Result(boolean full) {
+            this.full = full;
+        }
+    }
+
+    // Контуры одной части на каждом уровне; null — на этом уровне часть не рисуется
+    private static final class Levels {
+        // Со стыками — из него упрощаются средний и грубый уровни
+        final ContourTracer.Contour traced;
+        final ContourTracer.Contour exact;
+        final ContourTracer.Contour medium;
+        ContourTracer.Contour coarse;
+
+        private Levels(ContourTracer.Contour traced, ContourTracer.Owners owners) {
+            this.traced = traced;
+            this.exact = ShapeSimplifier.corners(traced);
+            this.medium = ShapeSimplifier.simplify(traced, MEDIUM_TOLERANCE, owners);
+        }
+    }
+
+    // Пересчитываются города и нации, чьи части есть в input; full — все
+    Result render(MapInput input, boolean full) {
+        input.computeDeferredComponents();
+        TerritorySnapshot snapshot = input.snapshot;
+        ContourTracer.Owners townOwners = snapshot::getActiveOwnerOrdinal;
+        ContourTracer.Owners nationOwners = snapshot::getActiveNationOrdinal;
+
+        Map<String, List<Levels>> townLevels = traceAll(input.townComponents, townOwners);
+        Map<String, List<Levels>> nationLevels = traceAll(input.nationComponents, nationOwners);
+        if (full) {
+            coarseTolerance = chooseCoarseTolerance(townLevels, townOwners, nationLevels, nationOwners);
+        } else {
+            simplifyCoarse(townLevels, townOwners, coarseTolerance);
+            simplifyCoarse(nationLevels, nationOwners, coarseTolerance);
+        }
+
+        Result result = new Result(full);
+        for (Map.Entry<String, List<Levels>> entry : townLevels.entrySet()) {
+            String townId = entry.getKey();
+            MapInput.TownInfo town = input.towns.get(townId);
+            result.townShapes.put(townId, town != null
+                    ? buildTownShapes(town, entry.getValue()) : Collections.emptyMap());
+
+            POIMarker poi = town != null && !isCapital(input, town) ? buildTownPoi(town) : null;
+            if (poi != null || !full) result.pois.put("town_poi_" + townId, poi);
+        }
+
+        for (Map.Entry<String, List<Levels>> entry : nationLevels.entrySet()) {
+            String nationId = entry.getKey();
+            MapInput.NationInfo nation = input.nations.get(nationId);
+            result.nationShapes.put(nationId, nation != null
+                    ? buildNationShapes(nation, entry.getValue()) : Collections.emptyMap());
+
+            MapInput.TownInfo capital = nation != null && nation.capitalTownId != null
+                    ? input.towns.get(nation.capitalTownId) : null;
+            POIMarker poi = capital != null ? buildCapitalPoi(nation, capital) : null;
+            if (poi != null || !full) result.pois.put("capital_" + nationId, poi);
+        }
+        return result;
+    }
+
+    private static boolean isCapital(MapInput input, MapInput.TownInfo town) {
+        MapInput.NationInfo nation = input.nations.get(town.nationId);
+        return nation != null && town.id.equals(nation.capitalTownId);
+    }
+
+    // ═══════════════════════════════════════
+    //  УРОВНИ ДЕТАЛИЗАЦИИ
+    // ═══════════════════════════════════════
+
+    // Контуры трассируются со стыками: без них упрощение не знает, где граница
+    // сменяет соседа. Точный уровень — те же кольца, но только углы.
+    private static Map<String, List<Levels>> traceAll(Map<String, List<long[]>> components,
+                                                      ContourTracer.Owners owners) {
+        Map<String, List<Levels>> result = new HashMap<>();
+        for (Map.Entry<String, List<long[]>> entry : components.entrySet()) {
+            List<Levels> levels = new ArrayList<>(entry.getValue().size());
+            for (long[] component : entry.getValue()) {
+                ContourTracer.Contour contour = ContourTracer.trace(component, owners);
+                if (contour == null) continue;
+                levels.add(new Levels(contour, owners));
+            }
+            result.put(entry.getKey(), levels);
+        }
+        return result;
+    }
+
+    // Допуск удваивается, пока вершин грубого уровня больше бюджета;
+    // упрощается всегда исходный контур, не результат прошлого шага
+    private double chooseCoarseTolerance(Map<String, List<Levels>> townLevels, ContourTracer.Owners townOwners,
+                                         Map<String, List<Levels>> nationLevels,
+                                         ContourTracer.Owners nationOwners) {
+        double tolerance = MIN_COARSE_TOLERANCE;
+        while (true) {
+            int vertices = simplifyCoarse(townLevels, townOwners, tolerance)
+                    + simplifyCoarse(nationLevels, nationOwners, tolerance);
+            if (vertices <= vertexBudget) return tolerance;
+            if (tolerance >= MAX_COARSE_TOLERANCE) {
+                WarPoliticalMod.LOGGER.warn("BlueMap: {} вершин на дальнем уровне при допуске {} блоков, "
+                        + "бюджет {}", vertices, (int) tolerance, vertexBudget);
+                return tolerance;
+            }
+            tolerance *= 2;
+        }
+    }
+
+    // Заполняет грубый уровень; возвращает число его вершин
+    private static int simplifyCoarse(Map<String, List<Levels>> levels, ContourTracer.Owners owners,
+                                      double tolerance) {
+        int vertices = 0;
+        for (List<Levels> parts : levels.values()) {
+            for (Levels part : parts) {
+                part.coarse = part.medium != null
+                        ? ShapeSimplifier.simplify(part.traced, tolerance, owners) : null;
+                if (part.coarse != null) vertices += ShapeSimplifier.vertexCount(part.coarse);
+            }
+        }
+        return vertices;
+    }
+
+    // Маркеры части на трёх уровнях; ключи: <prefix>_<n>, <prefix>_<n>_lod1, <prefix>_<n>_lod2
+    private void addLevels(Map<String, ShapeMarker> result, String key, Levels part,
+                           Function<ContourTracer.Contour, ShapeMarker.Builder> builder) {
+        ShapeMarker.Builder exact = builder.apply(part.exact);
+        if (exact == null) return;
+        result.put(key, exact.maxDistance(detailDistance).build());
+
+        ShapeMarker.Builder medium = part.medium != null ? builder.apply(part.medium) : null;
+        if (medium != null) {
+            result.put(key + "_lod1", medium.minDistance(detailDistance).maxDistance(coarseDistance).build());
+        }
+
+        ShapeMarker.Builder coarse = part.coarse != null ? builder.apply(part.coarse) : null;
+        if (coarse != null) {
+            result.put(key + "_lod2", coarse.minDistance(coarseDistance).build());
+        }
+    }
+
+    // ═══════════════════════════════════════
+    //  ТЕРРИТОРИИ НАЦИЙ
+    // ═══════════════════════════════════════
+
+    private Map<String, ShapeMarker> buildNationShapes(MapInput.NationInfo nation, List<Levels> parts) {
+        Map<String, ShapeMarker> result = new LinkedHashMap<>();
+        if (parts.isEmpty()) return result;
+
+        String detail = buildNationHtml(nation);
+        Color fillColor = parseColor(nation.color, 80);
+        Color lineColor = parseColor(nation.color, 200);
+
+        int polyIndex = 0;
+        for (Levels part : parts) {
+            addLevels(result, "nation_" + nation.id + "_" + polyIndex, part, contour -> {
+                Shape shape = createShape(contour.outer);
+                if (shape == null) return null;
+
+                return ShapeMarker.builder()
+                        .label(nation.name)
+                        .shape(shape, 64)
+                        .holes(createHoles(contour.holes))
+                        .fillColor(fillColor)
+                        .lineColor(lineColor)
+                        .lineWidth(2)
+                        .depthTestEnabled(false)
+                        .detail(detail);
+            });
+            polyIndex++;
+        }
+        return result;
+    }
+
+    // ═══════════════════════════════════════
+    //  ГРАНИЦЫ ГОРОДОВ
+    // ═══════════════════════════════════════
+
+    private Map<String, ShapeMarker> buildTownShapes(MapInput.TownInfo town, List<Levels> parts) {
+        Map<String, ShapeMarker> result = new LinkedHashMap<>();
+        if (parts.isEmpty()) return result;
+
+        String detail = buildTownHtml(town);
+        Color fillColor = parseColor(town.color, 40);
+        Color lineColor = parseColor(town.color, 255);
+
+        int polyIndex = 0;
+        for (Levels part : parts) {
+            addLevels(result, "town_" + town.id + "_" + polyIndex, part, contour -> {
+                Shape shape = createShape(contour.outer);
+                if (shape == null) return null;
+
+                return ShapeMarker.builder()
+                        .label(town.name)
+                        .shape(shape, 65)
+                        .holes(createHoles(contour.holes))
+                        .fillColor(fillColor)
+                        .lineColor(lineColor)
+                        .lineWidth(1)
+                        .depthTestEnabled(false)
+                        .detail(detail);
+            });
+            polyIndex++;
+        }
+        return result;
+    }
+
+    // ═══════════════════════════════════════
+    //  МАРКЕРЫ СТОЛИЦ
+    // ═══════════════════════════════════════
+
+    private POIMarker buildCapitalPoi(MapInput.NationInfo nation, MapInput.TownInfo capital) {
+        double x = capital.centerX * 16 + 8;
+        double z = capital.centerZ * 16 + 8;
+
+        return POIMarker.builder()
+                .label("★ " + capital.name + " — " + nation.name)
+                .position(x, 70, z)
+                .maxDistance(10000)
+                .detail(buildCapitalHtml(nation, capital))
+                .build();
+    }
+
+    private POIMarker buildTownPoi(MapInput.TownInfo town) {
+        double x = town.centerX * 16 + 8;
+        double z = town.centerZ * 16 + 8;
+
+        return POIMarker.builder()
+                .label(town.name)
+                .position(x, 70, z)
+                .maxDistance(5000)
+                .detail(buildTownHtml(town))
+                .build();
+    }
+
+    // ═══════════════════════════════════════
+    //  ГЕОМЕТРИЯ
+    // ═══════════════════════════════════════
+
+    private Shape createShape(List<double[]> outline) {
+        if (outline.size() < 3) return null;
+
+        try {
+            Shape.Builder builder = Shape.builder();
+            for (double[] point : outline) {
+                builder.addPoint(point[0], point[1]);
+            }
+            return builder.build();
+        } catch (Exception e) {
+            WarPoliticalMod.LOGGER.warn("Ошибка создания Shape: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    // Дыры (анклавы других владельцев, пропущенная вода) вырезаются из заливки
+    private Shape[] createHoles(List<List<double[]>> rings) {
+        List<Shape> holes = new ArrayList<>(rings.size());
+        for (List<double[]> ring : rings) {
+            Shape hole = createShape(ring);
+            if (hole != null) holes.add(hole);
+        }
+        return holes.toArray(new Shape[0]);
+    }
+
+    // ═══════════════════════════════════════
+    //  HTML ПОПАПЫ
+    // ═══════════════════════════════════════
+
+    private String buildNationHtml(MapInput.NationInfo nation) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<div style='font-family:Arial;padding:8px;'>");
+        sb.append("<h3 style='color:").append(nation.color)
+                .append(";margin:0;'>").append(nation.name).append("</h3>");
+        sb.append("<hr style='border-color:").append(nation.color).append("'>");
+        sb.append("<b>Строй:</b> ").append(translateGov(nation.governmentType)).append("<br>");
+        sb.append("<b>Лидер:</b> ").append(nation.leaderName).append("<br>");
+        sb.append("<b>Городов:</b> ").append(nation.townIds.size()).append("<br>");
+        sb.append("<b>Территория:</b> ").append(nation.totalChunks).append("/")
+                .append(Nation.MAX_CHUNKS).append(" чанков<br>");
+
+        if (nation.description != null && !nation.description.isEmpty()) {
+            sb.append("<i>").append(nation.description).append("</i><br>");
+        }
+
+        if (!nation.allyNames.isEmpty()) {
+            sb.append("<b>Союзники:</b> ");
+            sb.append(String.join(", ", nation.allyNames));
+            sb.append("<br>");
+        }
+
+        if (!nation.enemyNames.isEmpty()) {
+            sb.append("<b style='color:red;'>Враги:</b> ");
+            sb.append(String.join(", ", nation.enemyNames));
+            sb.append("<br>");
+        }
+
+        if (nation.atWar) {
+            sb.append("<b style='color:red;'>⚔ В СОСТОЯНИИ ВОЙНЫ</b><br>");
+        }
+
+        sb.append("</div>");
+        return sb.toString();
+    }
+
+    private String buildTownHtml(MapInput.TownInfo town) {
+        return "<div style='font-family:Arial;padding:6px;'>"
+                + "<h4 style='color:" + town.color + ";margin:0;'>"
+                + town.name + "</h4>"
+                + "<b>Нация:</b> " + town.nationName + "<br>"
+                + "<b>Мэр:</b> " + town.mayorName + "<br>"
+                + "<b>Чанков:</b> " + town.chunkCount + "/" + Town.MAX_CHUNKS + "<br>"
+                + "<b>PVP:</b> " + (town.pvpEnabled ? "✅" : "❌") + "<br>"
+                + "<b>Взрывы:</b> " + (town.explosionsEnabled ? "✅" : "❌")
+                + "</div>";
+    }
+
+    private String buildCapitalHtml(MapInput.NationInfo nation, MapInput.TownInfo capital) {
+        return "<div style='font-family:Arial;padding:10px;border:2px solid "
+                + nation.color + ";'>"
+                + "<h2 style='color:" + nation.color + ";margin:0;'>★ "
+                + nation.name + "</h2>"
+                + "<h4 style='margin:4px 0;'>Столица: " + capital.name + "</h4>"
+                + "<hr>"
+                + "<b>Лидер:</b> " + nation.leaderName + "<br>"
+                + "<b>Строй:</b> " + translateGov(nation.governmentType) + "<br>"
+                + "<b>Городов:</b> " + nation.townIds.size() + "<br>"
+                + "<b>Территория:</b> "
+                + nation.totalChunks
+                + " чанков<br>"
+                + (nation.atWar ? "<b style='color:red;'>⚔ В ВОЙНЕ</b>" : "")
+                + "</div>";
+    }
+
+    private String translateGov(String type) {
+        if (type == null) return "Неизвестно";
+        return switch (type) {
+            case "MONARCHY" -> "👑 Монархия";
+            case "DEMOCRACY" -> "🗳 Демократия";
+            case "DICTATORSHIP" -> "⚡ Диктатура";
+            case "REPUBLIC" -> "🏛 Республика";
+            case "EMPIRE" -> "🦅 Империя";
+            case "FEDERATION" -> "🤝 Федерация";
+            case "THEOCRACY" -> "⛪ Теократия";
+            case "COMMUNISM" -> "☭ Коммунизм";
+            default -> type;
+        };
+    }
+
+    // ═══════════════════════════════════════
+    //  УТИЛИТЫ
+    // ═══════════════════════════════════════
+
+    private Color parseColor(String hex, int alpha) {
+        try {
+            hex = hex.replace("#", "");
+            int r = Integer.parseInt(hex.substring(0, 2), 16);
+            int g = Integer.parseInt(hex.substring(2, 4), 16);
+            int b = Integer.parseInt(hex.substring(4, 6), 16);
+            return new Color(r, g, b, alpha);
+        } catch (Exception e) {
+            return new Color(255, 255, 255, alpha);
+        }
+    }
+}
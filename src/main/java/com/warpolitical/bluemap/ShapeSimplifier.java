@@ -0,0 +1,234 @@
+package com.warpolitical.bluemap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Упрощение контуров для дальних уровней детализации: Дуглас — Пекер по участкам
+// колец между стыками (ContourTracer.isJunction). Стыки не сдвигаются, а участок
+// между двумя стыками разделяет одну и ту же пару владельцев — у соседа это тот же
+// участок в обратную сторону. Выбор точек зависит только от концов участка и его
+// точек, не от направления обхода: отклонения считаются точно (координаты кратны
+// 16), равные разрешаются по координатам. Поэтому соседи получают одну и ту же
+// ломаную, и общая граница остаётся общей — без щелей и наложений на любом уровне.
+// Срезка, проходящая по чанкам третьего владельца, не принимается: иначе участок
+// пересёк бы чужую границу. Проверка тоже зависит только от срезки и пары владельцев.
+final class ShapeSimplifier {
+
+    private static final int BLOCKS_PER_CHUNK = 16;
+    // Шаг проверки срезки по чанкам, в блоках
+    private static final double CHORD_STEP = 2;
+
+    private ShapeSimplifier() {
+    }
+
+    // contour — как из ContourTracer.trace(chunks, owners): рёбра по сетке, стыки на месте.
+    // null — внешнее кольцо схлопнулось, часть на этом уровне не рисуется;
+    // схлопнувшиеся дыры просто пропадают
+    static ContourTracer.Contour simplify(ContourTracer.Contour contour, double tolerance,
+                                          ContourTracer.Owners owners) {
+        List<double[]> outer = simplifyRing(contour.outer, tolerance, owners);
+        if (outer == null) return null;
+
+        List<List<double[]>> holes = new ArrayList<>(contour.holes.size());
+        for (List<double[]> hole : contour.holes) {
+            List<double[]> simplified = simplifyRing(hole, tolerance, owners);
+            if (simplified != null) holes.add(simplified);
+        }
+        return new ContourTracer.Contour(outer, holes);
+    }
+
+    // Точный контур без стыков посреди прямых участков — только углы
+    static ContourTracer.Contour corners(ContourTracer.Contour contour) {
+        List<List<double[]>> holes = new ArrayList<>(contour.holes.size());
+        for (List<double[]> hole : contour.holes) {
+            holes.add(corners(hole));
+        }
+        return new ContourTracer.Contour(corners(contour.outer), holes);
+    }
+
+    static int vertexCount(ContourTracer.Contour contour) {
+        int count = contour.outer.size();
+        for (List<double[]> hole : contour.holes) {
+            count += hole.size();
+        }
+        return count;
+    }
+
+    private static List<double[]> corners(List<double[]> ring) {
+        int n = ring.size();
+        List<double[]> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            double[] prev = ring.get((i + n - 1) % n);
+            double[] point = ring.get(i);
+            double[] next = ring.get((i + 1) % n);
+            if (cross(prev, next, point) != 0) result.add(point);
+        }
+        return result;
+    }
+
+    // ═══════════════════════════════════════
+    //  КОЛЬЦО
+    // ═══════════════════════════════════════
+
+    private static List<double[]> simplifyRing(List<double[]> ring, double tolerance,
+                                               ContourTracer.Owners owners) {
+        int n = ring.size();
+        boolean[] keep = new boolean[n];
+        int first = -1;
+        for (int i = 0; i < n; i++) {
+            double[] point = ring.get(i);
+            if (ContourTracer.isJunction(owners, (int) (point[0] / BLOCKS_PER_CHUNK),
+                    (int) (point[1] / BLOCKS_PER_CHUNK))) {
+                keep[i] = true;
+                if (first < 0) first = i;
+            }
+        }
+
+        // Кольцо без стыков целиком граничит с одним владельцем, и у него то же
+        // множество точек — опорой берётся наименьшая по координатам
+        if (first < 0) {
+            first = 0;
+            for (int i = 1; i < n; i++) {
+                if (before(ring.get(i), ring.get(first))) first = i;
+            }
+            keep[first] = true;
+        }
+
+        // Участки от стыка до следующего; при одном стыке участок — всё кольцо
+        int start = first;
+        do {
+            int length = 1;
+            while (!keep[(start + length) % n]) length++;
+            simplifyArc(ring, start, length, tolerance, keep, owners);
+            start = (start + length) % n;
+        } while (start != first);
+
+        List<double[]> result = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (keep[i]) result.add(ring.get(i));
+        }
+        removeSpikes(result);
+        return result.size() >= 3 ? result : null;
+    }
+
+    // Дуглас — Пекер на точках start..start+length по кольцу, без рекурсии.
+    // Концы уже отмечены в keep. Если концы совпадают (петля от стыка к нему же),
+    // самая дальняя точка оставляется всегда — иначе отклонение не от чего считать.
+    private static void simplifyArc(List<double[]> ring, int start, int length,
+                                    double tolerance, boolean[] keep, ContourTracer.Owners owners) {
+        int n = ring.size();
+
+        // Владельцы по обе стороны участка: справа от первого ребра — свой, слева — сосед
+        double[] first = ring.get(start);
+        double[] second = ring.get((start + 1) % n);
+        double dx = Math.signum(second[0] - first[0]);
+        double dz = Math.signum(second[1] - first[1]);
+        double midX = (first[0] + second[0]) / 2;
+        double midZ = (first[1] + second[1]) / 2;
+        int self = ownerAt(owners, midX - dz / 2, midZ + dx / 2);
+        int other = ownerAt(owners, midX + dz / 2, midZ - dx / 2);
+
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = length;
+
+        while (top > 0) {
+            int hi = stack[--top];
+            int lo = stack[--top];
+            if (hi - lo < 2) continue;
+
+            double[] a = ring.get((start + lo) % n);
+            double[] b = ring.get((start + hi) % n);
+            boolean loop = a[0] == b[0] && a[1] == b[1];
+
+            int best = -1;
+            double bestDeviation = -1;
+            double[] bestPoint = null;
+            for (int k = lo + 1; k < hi; k++) {
+                double[] point = ring.get((start + k) % n);
+                double deviation = loop ? distanceSquared(a, point) : Math.abs(cross(a, b, point));
+                if (deviation > bestDeviation || (deviation == bestDeviation && before(point, bestPoint))) {
+                    best = k;
+                    bestDeviation = deviation;
+                    bestPoint = point;
+                }
+            }
+
+            // |cross| — удвоенная площадь треугольника; отклонение = |cross| / |ab|
+            if (!loop && bestDeviation <= tolerance * Math.sqrt(distanceSquared(a, b))
+                    && chordClear(a, b, self, other, owners)) {
+                continue;
+            }
+
+            keep[(start + best) % n] = true;
+            if (top + 4 > stack.length) stack = Arrays.copyOf(stack, stack.length << 1);
+            stack[top++] = lo;
+            stack[top++] = best;
+            stack[top++] = best;
+            stack[top++] = hi;
+        }
+    }
+
+    // Петля, схлопнутая до отрезка, даёт «шпильку» a → b → a; она и повторы убираются
+    private static void removeSpikes(List<double[]> ring) {
+        boolean changed = true;
+        while (changed && ring.size() >= 3) {
+            changed = false;
+            for (int i = 0; i < ring.size() && ring.size() >= 3; i++) {
+                int n = ring.size();
+                double[] prev = ring.get((i + n - 1) % n);
+                double[] point = ring.get(i);
+                double[] next = ring.get((i + 1) % n);
+                if (same(point, next)) {
+                    ring.remove(i);
+                    changed = true;
+                } else if (same(prev, next)) {
+                    ring.remove(i);
+                    ring.remove(i < ring.size() ? i : 0);
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    // ═══════════════════════════════════════
+    //  УТИЛИТЫ
+    // ═══════════════════════════════════════
+
+    // Срезка a → b идёт только по чанкам двух владельцев участка
+    private static boolean chordClear(double[] a, double[] b, int self, int other,
+                                      ContourTracer.Owners owners) {
+        int steps = (int) Math.ceil(Math.sqrt(distanceSquared(a, b)) / CHORD_STEP);
+        for (int i = 1; i < steps; i++) {
+            double t = (double) i / steps;
+            int owner = ownerAt(owners, a[0] + (b[0] - a[0]) * t, a[1] + (b[1] - a[1]) * t);
+            if (owner != self && owner != other) return false;
+        }
+        return true;
+    }
+
+    private static int ownerAt(ContourTracer.Owners owners, double x, double z) {
+        return owners.ownerAt((int) Math.floor(x / BLOCKS_PER_CHUNK), (int) Math.floor(z / BLOCKS_PER_CHUNK));
+    }
+
+    // Векторное произведение (b - a) × (p - a); для целых координат точное
+    private static double cross(double[] a, double[] b, double[] p) {
+        return (b[0] - a[0]) * (p[1] - a[1]) - (b[1] - a[1]) * (p[0] - a[0]);
+    }
+
+    private static double distanceSquared(double[] a, double[] b) {
+        double dx = b[0] - a[0];
+        double dz = b[1] - a[1];
+        return dx * dx + dz * dz;
+    }
+
+    private static boolean same(double[] a, double[] b) {
+        return a[0] == b[0] && a[1] == b[1];
+    }
+
+    private static boolean before(double[] a, double[] b) {
+        return b == null || a[0] < b[0] || (a[0] == b[0] && a[1] < b[1]);
+    }
+}
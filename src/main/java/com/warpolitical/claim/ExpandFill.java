@@ -0,0 +1,150 @@
+package com.warpolitical.claim;
+
+import com.warpolitical.data.TerritoryState;
+import com.warpolitical.model.ClaimedChunk;
+import com.warpolitical.model.Nation;
+import com.warpolitical.model.Town;
+import com.warpolitical.world.WaterMask;
+import com.warpolitical.world.WorldBounds;
+
+import java.util.Map;
+
+// Заливка EXPAND: поочерёдный BFS от территорий городов, до PER_TURN чанков за ход.
+// Чанки — индексы в квадрате границы (FillGrid), visited — битсет, очереди — кольцевые
+// буферы int. На шаге ничего не аллоцируется.
+// Порядок обхода и результат совпадают с прежней строковой реализацией (LegacyExpandFill).
+class ExpandFill {
+
+    private static final int PER_TURN = 4;
+
+    private final TerritoryState state;
+    private final WorldBounds bounds;
+    private final WaterMask water;
+
+    private FillGrid grid;
+    private long[] visited;
+
+    // water == null — водные чанки не исключаются
+    ExpandFill(TerritoryState state, WorldBounds bounds, WaterMask water) {
+        this.state = state;
+        this.bounds = bounds;
+        this.water = water;
+    }
+
+    int run(Map<String, Town> towns, Map<String, Nation> nations) {
+        grid = new FillGrid(state, bounds, water);
+        visited = new long[grid.words()];
+        int side = grid.side;
+
+        // Очереди BFS для каждого города, в порядке towns
+        int count = towns.size();
+        Town[] townOrder = new Town[count];
+        Nation[] nationOrder = new Nation[count];
+        IntQueue[] queues = new IntQueue[count];
+
+        int t = 0;
+        for (Town town : towns.values()) {
+            townOrder[t] = town;
+            nationOrder[t] = nations.get(town.getNationId());
+            queues[t] = new IntQueue();
+            t++;
+        }
+
+        // Затравка — соседи уже занятых чанков города в порядке обхода хранилища
+        grid.collectTownChunks(townOrder);
+        for (int i = 0; i < count; i++) {
+            for (int k = grid.townStart[i]; k < grid.townStart[i + 1]; k++) {
+                int cx = ClaimedChunk.unpackX(grid.townChunks[k]);
+                int cz = ClaimedChunk.unpackZ(grid.townChunks[k]);
+                offer(queues[i], grid.indexOf(cx + 1, cz));
+                offer(queues[i], grid.indexOf(cx - 1, cz));
+                offer(queues[i], grid.indexOf(cx, cz + 1));
+                offer(queues[i], grid.indexOf(cx, cz - 1));
+            }
+        }
+
+        // Итеративное расширение
+        boolean anyExpanded = true;
+        int totalAssigned = 0;
+
+        while (anyExpanded) {
+            anyExpanded = false;
+
+            for (int i = 0; i < count; i++) {
+                IntQueue queue = queues[i];
+                Town town = townOrder[i];
+                Nation nation = nationOrder[i];
+
+                if (queue.isEmpty()) continue;
+                if (!town.canClaimMore()) continue;
+                if (nation != null && !nation.canClaimMore()) continue;
+
+                int expandCount = Math.min(PER_TURN, queue.size());
+                for (int k = 0; k < expandCount && !queue.isEmpty(); k++) {
+                    int pos = queue.poll();
+
+                    if (grid.isClaimed(pos)) continue;
+                    if (!town.canClaimMore()) break;
+                    if (nation != null && !nation.canClaimMore()) break;
+
+                    grid.claim(pos, town.getId());
+                    totalAssigned++;
+                    anyExpanded = true;
+
+                    // Соседи в том же порядке, что и раньше: +x, -x, +z, -z
+                    int ix = pos / side;
+                    int iz = pos - ix * side;
+                    if (ix + 1 < side) offer(queue, pos + side);
+                    if (ix > 0) offer(queue, pos - side);
+                    if (iz + 1 < side) offer(queue, pos + 1);
+                    if (iz > 0) offer(queue, pos - 1);
+                }
+            }
+        }
+
+        return totalAssigned;
+    }
+
+    private void offer(IntQueue queue, int pos) {
+        if (!grid.isOpen(pos) || FillGrid.isSet(visited, pos)) return;
+        queue.add(pos);
+        FillGrid.set(visited, pos);
+    }
+
+    // Кольцевая очередь int; растёт удвоением, каждый чанк попадает в очереди не больше раза
+    private static class IntQueue {
+        private int[] items = new int[16];
+        private int head;
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void add(int value) {
+            if (size == items.length) grow();
+            items[(head + size) & (items.length - 1)] = value;
+            size++;
+        }
+
+        int poll() {
+            int value = items[head];
+            head = (head + 1) & (items.length - 1);
+            size--;
+            return value;
+        }
+
+        private void grow() {
+            int[] grown = new int[items.length << 1];
+            for (int i = 0; i < size; i++) {
+                grown[i] = items[(head + i) & (items.length - 1)];
+            }
+            items = grown;
+            head = 0;
+        }
+    }
+}
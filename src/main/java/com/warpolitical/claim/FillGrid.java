@@ -0,0 +1,128 @@
+package com.warpolitical.claim;
+
+import com.warpolitical.data.OrdinalRegistry;
+import com.warpolitical.data.TerritoryState;
+import com.warpolitical.model.ClaimedChunk;
+import com.warpolitical.model.Town;
+import com.warpolitical.world.WaterMask;
+import com.warpolitical.world.WorldBounds;
+
+import java.util.Arrays;
+
+// Квадрат границы для сеточных заливок: чанк — индекс pos = ix * side + iz,
+// allowed (внутри границы и не вода) и claimed — битсеты размером с квадрат.
+class FillGrid {
+
+    final String worldName;
+    final int radius;
+    final int side;
+
+    private final TerritoryState state;
+    private final long[] allowed;
+    private final long[] claimed;
+
+    // Чанки городов (CSR): чанки города i лежат в townChunks[townStart[i] .. townStart[i + 1])
+    long[] townChunks;
+    int[] townStart;
+
+    FillGrid(TerritoryState state, WorldBounds bounds, WaterMask water) {
+        this.state = state;
+        this.worldName = state.getActiveWorldName();
+        this.radius = bounds.getRadiusChunks();
+        this.side = radius * 2 + 1;
+
+        int words = words();
+        this.allowed = new long[words];
+        this.claimed = new long[words];
+
+        // Занятость нужна только для допустимых чанков
+        for (int ix = 0; ix < side; ix++) {
+            int cx = ix - radius;
+            for (int iz = 0; iz < side; iz++) {
+                int cz = iz - radius;
+                if (!bounds.contains(cx, cz)) continue;
+                if (water != null && water.isWater(cx, cz)) continue;
+
+                int pos = ix * side + iz;
+                set(allowed, pos);
+                if (state.isChunkClaimed(worldName, cx, cz)) set(claimed, pos);
+            }
+        }
+    }
+
+    int words() {
+        return (int) (((long) side * side + 63) >>> 6);
+    }
+
+    int indexOf(int cx, int cz) {
+        int ix = cx + radius;
+        int iz = cz + radius;
+        if (ix < 0 || iz < 0 || ix >= side || iz >= side) return -1;
+        return ix * side + iz;
+    }
+
+    int chunkX(int pos) {
+        return pos / side - radius;
+    }
+
+    int chunkZ(int pos) {
+        return pos % side - radius;
+    }
+
+    boolean isAllowed(int pos) {
+        return isSet(allowed, pos);
+    }
+
+    boolean isClaimed(int pos) {
+        return isSet(claimed, pos);
+    }
+
+    // Свободный допустимый чанк
+    boolean isOpen(int pos) {
+        return pos >= 0 && isSet(allowed, pos) && !isSet(claimed, pos);
+    }
+
+    void claim(int pos, String townId) {
+        state.claimChunk(chunkX(pos), chunkZ(pos), worldName, townId);
+        set(claimed, pos);
+    }
+
+    // Чанки всех городов за один проход хранилища. Порядок внутри города — как у
+    // getTownChunks, но без полного обхода хранилища на каждый город.
+    void collectTownChunks(Town[] townOrder) {
+        OrdinalRegistry registry = state.getRegistry();
+        int[] slotOf = new int[registry.townCount()];
+        Arrays.fill(slotOf, -1);
+        for (int i = 0; i < townOrder.length; i++) {
+            int ordinal = registry.findTown(townOrder[i].getId());
+            if (ordinal != OrdinalRegistry.NONE && ordinal < slotOf.length) slotOf[ordinal] = i;
+        }
+
+        int[] start = new int[townOrder.length + 1];
+        state.forEachClaim(worldName, (cx, cz, owner) -> {
+            if (owner < slotOf.length && slotOf[owner] >= 0) start[slotOf[owner] + 1]++;
+        });
+        for (int i = 0; i < townOrder.length; i++) {
+            start[i + 1] += start[i];
+        }
+
+        long[] chunks = new long[start[townOrder.length]];
+        int[] fill = Arrays.copyOf(start, townOrder.length);
+        state.forEachClaim(worldName, (cx, cz, owner) -> {
+            if (owner < slotOf.length && slotOf[owner] >= 0) {
+                chunks[fill[slotOf[owner]]++] = ClaimedChunk.pack(cx, cz);
+            }
+        });
+
+        this.townChunks = chunks;
+        this.townStart = start;
+    }
+
+    static boolean isSet(long[] bits, int pos) {
+        return (bits[pos >>> 6] & (1L << pos)) != 0;
+    }
+
+    static void set(long[] bits, int pos) {
+        bits[pos >>> 6] |= 1L << pos;
+    }
+}
@@ -0,0 +1,175 @@
+package com.warpolitical.claim;
+
+import java.util.Arrays;
+
+// Сеточный пространственный индекс центров городов (в координатах чанков).
+// Ищет ближайший центр с разрешением ничьих по меньшему индексу — тот же порядок,
+// что даёт стабильная сортировка списка центров по расстоянию.
+// Центры можно "закрывать" (город или нация упёрлись в лимит), тогда поиск их пропускает.
+public class TownCenterIndex {
+
+    public static final int NONE = -1;
+
+    private final int[] xs;
+    private final int[] zs;
+    private final boolean[] open;
+
+    private final int minX;
+    private final int minZ;
+    private final int cellSize;
+    private final int cols;
+    private final int rows;
+
+    // CSR: центры ячейки cell лежат в cellItems[cellStart[cell] .. cellStart[cell + 1])
+    private final int[] cellStart;
+    private final int[] cellItems;
+    private final int[] cellOpen;
+    private int openCount;
+
+    public TownCenterIndex(int[] xs, int[] zs) {
+        if (xs.length != zs.length) throw new IllegalArgumentException("xs/zs разной длины");
+        this.xs = xs;
+        this.zs = zs;
+        this.open = new boolean[xs.length];
+        Arrays.fill(open, true);
+        this.openCount = xs.length;
+
+        int loX = Integer.MAX_VALUE, loZ = Integer.MAX_VALUE;
+        int hiX = Integer.MIN_VALUE, hiZ = Integer.MIN_VALUE;
+        for (int i = 0; i < xs.length; i++) {
+            loX = Math.min(loX, xs[i]);
+            hiX = Math.max(hiX, xs[i]);
+            loZ = Math.min(loZ, zs[i]);
+            hiZ = Math.max(hiZ, zs[i]);
+        }
+        if (xs.length == 0) {
+            loX = loZ = hiX = hiZ = 0;
+        }
+
+        long area = (long) (hiX - loX + 1) * (hiZ - loZ + 1);
+        this.cellSize = (int) Math.max(1, Math.ceil(Math.sqrt(area / (double) Math.max(1, xs.length))));
+        this.minX = loX;
+        this.minZ = loZ;
+        this.cols = (hiX - loX) / cellSize + 1;
+        this.rows = (hiZ - loZ) / cellSize + 1;
+
+        int cells = cols * rows;
+        this.cellStart = new int[cells + 1];
+        this.cellOpen = new int[cells];
+        for (int i = 0; i < xs.length; i++) {
+            int cell = cellOf(i);
+            cellStart[cell + 1]++;
+            cellOpen[cell]++;
+        }
+        for (int c = 0; c < cells; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        this.cellItems = new int[xs.length];
+        int[] fill = Arrays.copyOf(cellStart, cells);
+        for (int i = 0; i < xs.length; i++) {
+            cellItems[fill[cellOf(i)]++] = i;
+        }
+    }
+
+    public int size() {
+        return xs.length;
+    }
+
+    public int openCount() {
+        return openCount;
+    }
+
+    public boolean isOpen(int center) {
+        return open[center];
+    }
+
+    public void close(int center) {
+        if (!open[center]) return;
+        open[center] = false;
+        cellOpen[cellOf(center)]--;
+        openCount--;
+    }
+
+    public long distSq(int center, int x, int z) {
+        long dx = x - xs[center];
+        long dz = z - zs[center];
+        return dx * dx + dz * dz;
+    }
+
+    // Квадрат расстояния до ближайшего центра среди всех (открытых и закрытых)
+    public long nearestDistSq(int x, int z) {
+        int best = nearest(x, z, false);
+        return best == NONE ? Long.MAX_VALUE : distSq(best, x, z);
+    }
+
+    // Ближайший открытый центр; при равных расстояниях — с меньшим индексом
+    public int nearestOpen(int x, int z) {
+        return nearest(x, z, true);
+    }
+
+    private int nearest(int x, int z, boolean openOnly) {
+        if (openOnly ? openCount == 0 : xs.length == 0) return NONE;
+
+        int homeCol = clamp(Math.floorDiv(x - minX, cellSize), cols);
+        int homeRow = clamp(Math.floorDiv(z - minZ, cellSize), rows);
+        int maxRing = Math.max(Math.max(homeCol, cols - 1 - homeCol),
+                Math.max(homeRow, rows - 1 - homeRow));
+
+        int best = NONE;
+        long bestDist = Long.MAX_VALUE;
+
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Любая ячейка кольца ring не ближе (ring - 1) * cellSize
+            if (best != NONE) {
+                long bound = (long) (ring - 1) * cellSize;
+                if (bound > 0 && bound * bound > bestDist) break;
+            }
+
+            int c0 = homeCol - ring, c1 = homeCol + ring;
+            int r0 = homeRow - ring, r1 = homeRow + ring;
+            for (int row = Math.max(r0, 0); row <= Math.min(r1, rows - 1); row++) {
+                boolean edgeRow = row == r0 || row == r1;
+                int step = edgeRow ? 1 : Math.max(1, c1 - c0);
+                for (int col = c0; col <= c1; col += step) {
+                    if (col < 0 || col >= cols) continue;
+                    int cell = row * cols + col;
+                    if (openOnly ? cellOpen[cell] == 0 : cellStart[cell] == cellStart[cell + 1]) {
+                        continue;
+                    }
+                    if (cellLowerBound(cell, x, z) > bestDist) continue;
+
+                    for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                        int center = cellItems[k];
+                        if (openOnly && !open[center]) continue;
+                        long d = distSq(center, x, z);
+                        if (d < bestDist || (d == bestDist && center < best)) {
+                            best = center;
+                            bestDist = d;
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private long cellLowerBound(int cell, int x, int z) {
+        int col = cell % cols;
+        int row = cell / cols;
+        long cellX0 = minX + (long) col * cellSize;
+        long cellZ0 = minZ + (long) row * cellSize;
+        long dx = Math.max(0, Math.max(cellX0 - x, x - (cellX0 + cellSize - 1)));
+        long dz = Math.max(0, Math.max(cellZ0 - z, z - (cellZ0 + cellSize - 1)));
+        return dx * dx + dz * dz;
+    }
+
+    private int cellOf(int center) {
+        int col = (xs[center] - minX) / cellSize;
+        int row = (zs[center] - minZ) / cellSize;
+        return row * cols + col;
+    }
+
+    private static int clamp(int value, int size) {
+        return Math.max(0, Math.min(size - 1, value));
+    }
+}
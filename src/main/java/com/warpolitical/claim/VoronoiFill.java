@@ -0,0 +1,262 @@
+package com.warpolitical.claim;
+
+import com.warpolitical.WarPoliticalMod;
+import com.warpolitical.data.TerritoryState;
+import com.warpolitical.model.Nation;
+import com.warpolitical.model.Town;
+import com.warpolitical.world.WaterMask;
+import com.warpolitical.world.WorldBounds;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Заливка VORONOI в две фазы:
+//  1) тайлы квадрата границы считают кандидатов параллельно (только чтение);
+//  2) детерминированное слияние в порядке (расстояние, позиция) применяет лимиты городов и наций.
+// Результат не зависит от числа потоков: фаза 1 — чистая функция от сценария.
+class VoronoiFill {
+
+    private static final int TILE = 32;
+    private static final long NOT_ELIGIBLE = -1L;
+    // Ключ фазы 1 — (dist² << 32) | позиция; dist² от 2³¹ уходит в знаковый бит,
+    // ломает порядок и может совпасть с NOT_ELIGIBLE
+    private static final long MAX_KEY_DIST_SQ = Integer.MAX_VALUE;
+
+    private final TerritoryState state;
+    private final WorldBounds bounds;
+    private final WaterMask water;
+    private final int parallelism;
+
+    // water == null — водные чанки не пропускаются
+    VoronoiFill(TerritoryState state, WorldBounds bounds, WaterMask water, int parallelism) {
+        this.state = state;
+        this.bounds = bounds;
+        this.water = water;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    void run(Map<String, Town> towns, Map<String, Nation> nations) {
+        int chunkRadius = bounds.getRadiusChunks();
+        String worldName = state.getActiveWorldName();
+
+        // Центры городов
+        List<TownCenter> centers = new ArrayList<>();
+        for (Town town : towns.values()) {
+            centers.add(new TownCenter(town.getId(), town.getNationId(),
+                    town.getCenterX(), town.getCenterZ()));
+        }
+
+        if (centers.isEmpty()) {
+            WarPoliticalMod.LOGGER.warn("Нет городов для заполнения!");
+            return;
+        }
+
+        checkKeyRange(centers, chunkRadius);
+        TownCenterIndex index = buildCenterIndex(centers);
+
+        // Фаза 1: ключ (dist² << 32 | позиция в квадрате) и ближайший центр для каждого чанка
+        int side = chunkRadius * 2 + 1;
+        long[] keys = new long[side * side];
+        int[] candidates = new int[side * side];
+        CandidateTask root = new CandidateTask(index, worldName, chunkRadius, side,
+                keys, candidates, 0, side, 0, side);
+
+        long started = System.nanoTime();
+        if (parallelism > 1) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(root);
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            root.compute();
+        }
+
+        int count = 0;
+        for (long key : keys) {
+            if (key != NOT_ELIGIBLE) keys[count++] = key;
+        }
+        long[] order = Arrays.copyOf(keys, count);
+        // Ключи уникальны, поэтому порядок не зависит от алгоритма сортировки
+        if (parallelism > 1) {
+            Arrays.parallelSort(order);
+        } else {
+            Arrays.sort(order);
+        }
+
+        WarPoliticalMod.LOGGER.info("Незанятых чанков: {} (кандидаты за {} мс, потоков: {})",
+                count, (System.nanoTime() - started) / 1_000_000, parallelism);
+
+        // Фаза 2: последовательное слияние с лимитами
+        int assigned = 0;
+        int skippedWater = 0;
+        int skippedLimit = 0;
+
+        for (long key : order) {
+            int pos = (int) key;
+            int cx = pos / side - chunkRadius;
+            int cz = pos % side - chunkRadius;
+
+            // Вода определена заранее на серверном потоке
+            if (water != null && water.isWater(cx, cz)) {
+                skippedWater++;
+                continue;
+            }
+
+            String bestTown = findBestTown(cx, cz, candidates[pos], index, centers, towns, nations);
+
+            if (bestTown != null) {
+                state.claimChunk(cx, cz, worldName, bestTown);
+                assigned++;
+            } else {
+                skippedLimit++;
+            }
+        }
+
+        WarPoliticalMod.LOGGER.info(
+                "Voronoi завершён: назначено={}, водные={}, лимит={}",
+                assigned, skippedWater, skippedLimit);
+    }
+
+    // Ближайший город с запасом лимита. Во время заливки лимиты только убывают,
+    // поэтому исчерпанные центры закрываются в индексе навсегда.
+    private String findBestTown(int cx, int cz, int candidate,
+                                TownCenterIndex index,
+                                List<TownCenter> centers,
+                                Map<String, Town> towns,
+                                Map<String, Nation> nations) {
+
+        // Кандидат из фазы 1 — ближайший среди всех центров; пока он открыт, он и есть ответ
+        int best = candidate != TownCenterIndex.NONE && index.isOpen(candidate)
+                ? candidate
+                : index.nearestOpen(cx, cz);
+
+        while (best != TownCenterIndex.NONE) {
+            TownCenter center = centers.get(best);
+            Town town = towns.get(center.townId);
+            Nation nation = nations.get(center.nationId);
+
+            if (town == null || nation == null || !town.canClaimMore()) {
+                index.close(best);
+            } else if (!nation.canClaimMore()) {
+                closeNation(index, centers, center.nationId);
+            } else {
+                return center.townId;
+            }
+            best = index.nearestOpen(cx, cz);
+        }
+        return null;
+    }
+
+    // Расстояние от чанка до ближайшего центра не больше, чем до любого центра,
+    // а до центра — не больше, чем от центра до дальнего угла квадрата заливки
+    private static void checkKeyRange(List<TownCenter> centers, int chunkRadius) {
+        long bound = Long.MAX_VALUE;
+        for (TownCenter center : centers) {
+            long dx = Math.abs((long) center.x) + chunkRadius;
+            long dz = Math.abs((long) center.z) + chunkRadius;
+            bound = Math.min(bound, dx * dx + dz * dz);
+        }
+        if (bound > MAX_KEY_DIST_SQ) {
+            throw new IllegalArgumentException("VORONOI: граница мира или центры городов слишком далеко — "
+                    + "расстояние до ближайшего города не должно превышать ~46000 чанков");
+        }
+    }
+
+    private TownCenterIndex buildCenterIndex(List<TownCenter> centers) {
+        int[] xs = new int[centers.size()];
+        int[] zs = new int[centers.size()];
+        for (int i = 0; i < centers.size(); i++) {
+            xs[i] = centers.get(i).x;
+            zs[i] = centers.get(i).z;
+        }
+        return new TownCenterIndex(xs, zs);
+    }
+
+    private void closeNation(TownCenterIndex index, List<TownCenter> centers, String nationId) {
+        for (int i = 0; i < centers.size(); i++) {
+            if (Objects.equals(centers.get(i).nationId, nationId)) {
+                index.close(i);
+            }
+        }
+    }
+
+    // Тайл [x0, x1) × [z0, z1) в индексах квадрата; делится пополам, пока больше TILE
+    private class CandidateTask extends RecursiveAction {
+
+        private final TownCenterIndex index;
+        private final String worldName;
+        private final int chunkRadius;
+        private final int side;
+        private final long[] keys;
+        private final int[] candidates;
+        private final int x0, x1, z0, z1;
+
+        CandidateTask(TownCenterIndex index, String worldName, int chunkRadius, int side,
+                      long[] keys, int[] candidates, int x0, int x1, int z0, int z1) {
+            this.index = index;
+            this.worldName = worldName;
+            this.chunkRadius = chunkRadius;
+            this.side = side;
+            this.keys = keys;
+            this.candidates = candidates;
+            this.x0 = x0;
+            this.x1 = x1;
+            this.z0 = z0;
+            this.z1 = z1;
+        }
+
+        @Override
+        protected void compute() {
+            if (parallelism > 1 && (x1 - x0 > TILE || z1 - z0 > TILE)) {
+                if (x1 - x0 >= z1 - z0) {
+                    int mid = (x0 + x1) >>> 1;
+                    invokeAll(split(x0, mid, z0, z1), split(mid, x1, z0, z1));
+                } else {
+                    int mid = (z0 + z1) >>> 1;
+                    invokeAll(split(x0, x1, z0, mid), split(x0, x1, mid, z1));
+                }
+                return;
+            }
+
+            for (int ix = x0; ix < x1; ix++) {
+                int cx = ix - chunkRadius;
+                for (int iz = z0; iz < z1; iz++) {
+                    int cz = iz - chunkRadius;
+                    int pos = ix * side + iz;
+
+                    if (state.isChunkClaimed(worldName, cx, cz) || !bounds.contains(cx, cz)) {
+                        keys[pos] = NOT_ELIGIBLE;
+                        candidates[pos] = TownCenterIndex.NONE;
+                        continue;
+                    }
+
+                    int nearest = index.nearestOpen(cx, cz);
+                    candidates[pos] = nearest;
+                    keys[pos] = (index.distSq(nearest, cx, cz) << 32) | pos;
+                }
+            }
+        }
+
+        private CandidateTask split(int nx0, int nx1, int nz0, int nz1) {
+            return new CandidateTask(index, worldName, chunkRadius, side,
+                    keys, candidates, nx0, nx1, nz0, nz1);
+        }
+    }
+
+    private static class TownCenter {
+        final String townId;
+        final String nationId;
+        final int x;
+        final int z;
+
+        TownCenter(String townId, String nationId, int x, int z) {
+            this.townId = townId;
+            this.nationId = nationId;
+            this.x = x;
+            this.z = z;
+        }
+    }
+}
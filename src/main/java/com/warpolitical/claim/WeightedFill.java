@@ -0,0 +1,227 @@
+package com.warpolitical.claim;
+
+import com.warpolitical.WarPoliticalMod;
+import com.warpolitical.data.TerritoryState;
+import com.warpolitical.model.ClaimedChunk;
+import com.warpolitical.model.Nation;
+import com.warpolitical.model.Town;
+import com.warpolitical.world.WaterMask;
+import com.warpolitical.world.WorldBounds;
+
+import java.util.Arrays;
+import java.util.Map;
+
+// Взвешенные заливки с учётом лимитов — один проход многоисточникового поиска
+// по сетке чанков с общей кучей на все города:
+//  POWER          — ключ чанка для города: |p − c|² − w² (диаграмма мощности, w — вес города);
+//  FLOOD_WEIGHTED — Дейкстра от территорий: шаг стоит SCALE / w, тяжёлые города растут быстрее.
+// Из кучи извлекается минимум; если город или нация упёрлись в лимит, запись просто
+// отбрасывается, и чанк достаётся следующему по ключу соседу. Каждый занятый чанк
+// добавляет не больше 4 записей, поэтому весь проход — O(N log N) по числу чанков.
+class WeightedFill {
+
+    enum Mode {
+        POWER,
+        FLOOD_WEIGHTED
+    }
+
+    // Дробные веса переводятся в целые ключи с этим множителем
+    private static final long POWER_SCALE = 1024;
+    private static final long FLOOD_SCALE = 1_000_000;
+    private static final double MIN_WEIGHT = 0.1;
+
+    private final TerritoryState state;
+    private final WorldBounds bounds;
+    private final WaterMask water;
+    private final Mode mode;
+
+    private FillGrid grid;
+    private Town[] townOrder;
+    private long[] powerBias;
+    private long[] floodStep;
+    private final ChunkHeap heap = new ChunkHeap();
+
+    // water == null — водные чанки не исключаются
+    WeightedFill(TerritoryState state, WorldBounds bounds, WaterMask water, Mode mode) {
+        this.state = state;
+        this.bounds = bounds;
+        this.water = water;
+        this.mode = mode;
+    }
+
+    // weights: id города → вес; города без веса получают 1
+    int run(Map<String, Town> towns, Map<String, Nation> nations, Map<String, Double> weights) {
+        grid = new FillGrid(state, bounds, water);
+        int side = grid.side;
+
+        int count = towns.size();
+        townOrder = new Town[count];
+        Nation[] nationOrder = new Nation[count];
+        powerBias = new long[count];
+        floodStep = new long[count];
+
+        int t = 0;
+        for (Town town : towns.values()) {
+            double weight = Math.max(MIN_WEIGHT, weights.getOrDefault(town.getId(), 1.0));
+            townOrder[t] = town;
+            nationOrder[t] = nations.get(town.getNationId());
+            powerBias[t] = Math.round(weight * weight * POWER_SCALE);
+            floodStep[t] = Math.max(1, Math.round(FLOOD_SCALE / weight));
+            t++;
+        }
+
+        // Источники: соседи уже занятых чанков; город без чанков растёт из своего центра
+        grid.collectTownChunks(townOrder);
+        for (int i = 0; i < count; i++) {
+            if (grid.townStart[i] == grid.townStart[i + 1]) {
+                Town town = townOrder[i];
+                push(i, grid.indexOf(town.getCenterX(), town.getCenterZ()), 0);
+                continue;
+            }
+            for (int k = grid.townStart[i]; k < grid.townStart[i + 1]; k++) {
+                int cx = ClaimedChunk.unpackX(grid.townChunks[k]);
+                int cz = ClaimedChunk.unpackZ(grid.townChunks[k]);
+                pushNeighbours(i, cx, cz, 0);
+            }
+        }
+
+        int assigned = 0;
+        int dropped = 0;
+
+        while (!heap.isEmpty()) {
+            long key = heap.topKey();
+            int town = heap.topTown();
+            int pos = heap.topPos();
+            heap.pop();
+
+            if (grid.isClaimed(pos)) continue;
+
+            Town owner = townOrder[town];
+            Nation nation = nationOrder[town];
+            if (!owner.canClaimMore() || (nation != null && !nation.canClaimMore())) {
+                dropped++;
+                continue;
+            }
+
+            grid.claim(pos, owner.getId());
+            assigned++;
+
+            int ix = pos / side;
+            int iz = pos - ix * side;
+            pushNeighbours(town, ix - grid.radius, iz - grid.radius, key);
+        }
+
+        WarPoliticalMod.LOGGER.info("{}: назначено {}, отброшено по лимиту {}", mode, assigned, dropped);
+        return assigned;
+    }
+
+    // Занятый чанк города может лежать вне квадрата — соседи считаются по координатам
+    private void pushNeighbours(int town, int cx, int cz, long key) {
+        push(town, grid.indexOf(cx + 1, cz), key);
+        push(town, grid.indexOf(cx - 1, cz), key);
+        push(town, grid.indexOf(cx, cz + 1), key);
+        push(town, grid.indexOf(cx, cz - 1), key);
+    }
+
+    private void push(int town, int pos, long parentKey) {
+        if (!grid.isOpen(pos)) return;
+        heap.push(keyFor(town, pos, parentKey), town, pos);
+    }
+
+    private long keyFor(int town, int pos, long parentKey) {
+        if (mode == Mode.FLOOD_WEIGHTED) {
+            return parentKey + floodStep[town];
+        }
+        Town t = townOrder[town];
+        long dx = grid.chunkX(pos) - t.getCenterX();
+        long dz = grid.chunkZ(pos) - t.getCenterZ();
+        return (dx * dx + dz * dz) * POWER_SCALE - powerBias[town];
+    }
+
+    // Двоичная куча на параллельных массивах; порядок — (ключ, город, позиция),
+    // поэтому результат не зависит от порядка вставки равных ключей
+    private static class ChunkHeap {
+        private long[] keys = new long[256];
+        private int[] towns = new int[256];
+        private int[] positions = new int[256];
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long topKey() {
+            return keys[0];
+        }
+
+        int topTown() {
+            return towns[0];
+        }
+
+        int topPos() {
+            return positions[0];
+        }
+
+        void push(long key, int town, int pos) {
+            if (size == keys.length) grow();
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!less(key, town, pos, parent)) break;
+                move(parent, i);
+                i = parent;
+            }
+            keys[i] = key;
+            towns[i] = town;
+            positions[i] = pos;
+        }
+
+        void pop() {
+            size--;
+            if (size == 0) return;
+            long key = keys[size];
+            int town = towns[size];
+            int pos = positions[size];
+
+            int i = 0;
+            while (true) {
+                int child = (i << 1) + 1;
+                if (child >= size) break;
+                if (child + 1 < size && lessAt(child + 1, child)) child++;
+                if (!less(keys[child], towns[child], positions[child], key, town, pos)) break;
+                move(child, i);
+                i = child;
+            }
+            keys[i] = key;
+            towns[i] = town;
+            positions[i] = pos;
+        }
+
+        private boolean less(long key, int town, int pos, int at) {
+            return less(key, town, pos, keys[at], towns[at], positions[at]);
+        }
+
+        private boolean lessAt(int a, int b) {
+            return less(keys[a], towns[a], positions[a], keys[b], towns[b], positions[b]);
+        }
+
+        private static boolean less(long keyA, int townA, int posA, long keyB, int townB, int posB) {
+            if (keyA != keyB) return keyA < keyB;
+            if (townA != townB) return townA < townB;
+            return posA < posB;
+        }
+
+        private void move(int from, int to) {
+            keys[to] = keys[from];
+            towns[to] = towns[from];
+            positions[to] = positions[from];
+        }
+
+        private void grow() {
+            int capacity = keys.length << 1;
+            keys = Arrays.copyOf(keys, capacity);
+            towns = Arrays.copyOf(towns, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+        }
+    }
+}
@@ -3,8 +3,11 @@ package com.warpolitical.commands;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.context.CommandContext;
 import com.warpolitical.WarPoliticalMod;
+import com.warpolitical.listeners.ProtectionHandler;
+import com.warpolitical.listeners.TerritoryTracker;
 import com.warpolitical.model.Nation;
 import com.warpolitical.model.Town;
+import com.warpolitical.scenario.ScenarioLoadPipeline;
 import com.warpolitical.scenario.ScenarioParser.ScenarioResult;
 import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
 import net.minecraft.server.command.ServerCommandSource;
@@ -14,6 +17,7 @@ import net.minecraft.text.Text;
 import net.minecraft.util.Formatting;
 import net.minecraft.world.Heightmap;
 
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 
@@ -143,7 +147,7 @@ public class CommandRegistrar {
                             .executes(ctx -> {
                                 mod.getBlueMapIntegration().renderAll();
                                 ctx.getSource().sendMessage(
-                                        Text.literal("✅ BlueMap обновлён")
+                                        Text.literal("✅ Перерисовка BlueMap запущена")
                                                 .formatted(Formatting.GREEN));
                                 return 1;
                             }))
@@ -156,15 +160,25 @@ public class CommandRegistrar {
                                 return 1;
                             })))
 
+                    .then(literal("data")
+                        .then(literal("export")
+                            .executes(ctx -> exportClaims(ctx, mod)))
+                        .then(literal("import")
+                            .executes(ctx -> importClaims(ctx, mod))))
+
                     .then(literal("reload")
                         .executes(ctx -> {
+                            if (mod.getScenarioParser().isLoading()) {
+                                ctx.getSource().sendMessage(
+                                        Text.literal("⚠ Идёт загрузка сценария")
+                                                .formatted(Formatting.YELLOW));
+                                return 0;
+                            }
+                            mod.getSaveService().discardPending();
                             mod.getDataManager().loadAll();
                             ctx.getSource().sendMessage(
                                     Text.literal("✅ Данные перезагружены")
                                             .formatted(Formatting.GREEN));
-                            if (mod.getBlueMapIntegration().isInitialized()) {
-                                mod.getBlueMapIntegration().renderAll();
-                            }
                             return 1;
                         }))
             );
@@ -189,6 +203,7 @@ public class CommandRegistrar {
         s.sendMessage(Text.literal("/wpe nation war|peace|ally <н1> <н2>").formatted(Formatting.YELLOW));
         s.sendMessage(Text.literal("/wpe town setpvp|setexplosions <город> <true|false>").formatted(Formatting.YELLOW));
         s.sendMessage(Text.literal("/wpe bluemap render|clear").formatted(Formatting.YELLOW));
+        s.sendMessage(Text.literal("/wpe data export|import").formatted(Formatting.YELLOW));
         s.sendMessage(Text.literal("/wpe reload").formatted(Formatting.YELLOW));
         return 1;
     }
@@ -197,6 +212,12 @@ public class CommandRegistrar {
         String name = StringArgumentType.getString(ctx, "scenario");
         ServerCommandSource s = ctx.getSource();
 
+        if (mod.getScenarioParser().isLoading()) {
+            s.sendMessage(Text.literal("⚠ Сценарий уже загружается, дождитесь окончания")
+                    .formatted(Formatting.YELLOW));
+            return 0;
+        }
+
         if (mod.getDataManager().getActiveWorldName() != null) {
             s.sendMessage(Text.literal("⚠ Сценарий уже загружен! /wpe unload")
                     .formatted(Formatting.YELLOW));
@@ -205,24 +226,70 @@ public class CommandRegistrar {
 
         s.sendMessage(Text.literal("⏳ Загрузка '" + name + "'...").formatted(Formatting.GREEN));
 
-        ScenarioResult result = mod.getScenarioParser().loadAndApply(name);
+        // Команда возвращается сразу, стадии отчитываются по мере выполнения
+        mod.getScenarioParser().startLoad(name, new ScenarioLoadPipeline.Listener() {
+            @Override
+            public void onProgress(ScenarioLoadPipeline.Stage stage, String message) {
+                s.sendMessage(Text.literal("⏳ " + stage.title + ": " + message)
+                        .formatted(Formatting.GRAY));
+            }
+
+            @Override
+            public void onFinished(ScenarioResult result) {
+                if (result.success) {
+                    s.sendMessage(Text.literal("✅ Загружено! Наций: " + result.nationCount
+                            + " | Городов: " + result.townCount
+                            + " | Чанков: " + result.chunkCount).formatted(Formatting.GREEN));
+
+                    mod.getServer().getPlayerManager().broadcast(
+                            Text.literal("🌍 Новый вайп: " + result.scenarioName + "!")
+                                    .formatted(Formatting.GOLD), false);
+                } else {
+                    s.sendMessage(Text.literal("❌ " + result.message).formatted(Formatting.RED));
+                }
+            }
+        });
 
-        if (result.success) {
-            s.sendMessage(Text.literal("✅ Загружено! Наций: " + result.nationCount
-                    + " | Городов: " + result.townCount
-                    + " | Чанков: " + result.chunkCount).formatted(Formatting.GREEN));
+        return 1;
+    }
 
-            mod.getServer().getPlayerManager().broadcast(
-                    Text.literal("🌍 Новый вайп: " + result.scenarioName + "!")
-                            .formatted(Formatting.GOLD), false);
-        } else {
-            s.sendMessage(Text.literal("❌ " + result.message).formatted(Formatting.RED));
+    private static int exportClaims(CommandContext<ServerCommandSource> ctx, WarPoliticalMod mod) {
+        Path file = mod.getDataManager().exportClaimsJson();
+        ctx.getSource().sendMessage(Text.literal("✅ Клеймы выгружены: " + file.getFileName()
+                + " (" + mod.getDataManager().getClaimedChunkCount() + " чанков)")
+                .formatted(Formatting.GREEN));
+        return 1;
+    }
+
+    // Клеймы из data/chunks.json заменяют текущие и сохраняются в chunks.bin
+    private static int importClaims(CommandContext<ServerCommandSource> ctx, WarPoliticalMod mod) {
+        if (mod.getScenarioParser().isLoading()) {
+            ctx.getSource().sendMessage(
+                    Text.literal("⚠ Идёт загрузка сценария").formatted(Formatting.YELLOW));
+            return 0;
+        }
+
+        // Импорт сам пишет полный снимок — фоновая запись не должна идти параллельно
+        mod.getSaveService().discardPending();
+        int imported = mod.getDataManager().importClaimsJson();
+        mod.getSaveService().requestSave();
+        if (imported < 0) {
+            ctx.getSource().sendMessage(
+                    Text.literal("❌ Нет data/chunks.json или он не прочитан").formatted(Formatting.RED));
+            return 0;
         }
 
-        return result.success ? 1 : 0;
+        ctx.getSource().sendMessage(
+                Text.literal("✅ Загружено чанков: " + imported).formatted(Formatting.GREEN));
+        return 1;
     }
 
     private static int unloadScenario(CommandContext<ServerCommandSource> ctx, WarPoliticalMod mod) {
+        if (mod.getScenarioParser().isLoading()) {
+            ctx.getSource().sendMessage(
+                    Text.literal("⚠ Идёт загрузка сценария").formatted(Formatting.YELLOW));
+            return 0;
+        }
         if (mod.getDataManager().getActiveWorldName() == null) {
             ctx.getSource().sendMessage(
                     Text.literal("Нет активного сценария").formatted(Formatting.RED));
@@ -231,7 +298,7 @@ public class CommandRegistrar {
 
         mod.getBlueMapIntegration().shutdown();
         mod.getDataManager().clearAll();
-        mod.getDataManager().saveAll();
+        mod.getSaveService().requestSave();
 
         ctx.getSource().sendMessage(
                 Text.literal("✅ Сценарий выгружен").formatted(Formatting.GREEN));
@@ -269,8 +336,13 @@ public class CommandRegistrar {
                 .formatted(Formatting.YELLOW));
         s.sendMessage(Text.literal("Городов: " + mod.getDataManager().getTowns().size())
                 .formatted(Formatting.YELLOW));
-        s.sendMessage(Text.literal("Чанков: " + mod.getDataManager().getClaimedChunks().size())
+        s.sendMessage(Text.literal("Чанков: " + mod.getDataManager().getClaimedChunkCount())
                 .formatted(Formatting.YELLOW));
+        TerritoryTracker tracker = ProtectionHandler.getTracker();
+        s.sendMessage(Text.literal("Поиск территории: " + tracker.getLookups()
+                + ", пропущено без движения: " + tracker.getLookupsAvoided()
+                + ", сессий: " + ProtectionHandler.getSessions().size())
+                .formatted(Formatting.GRAY));
 
         if (s.getPlayer() != null) {
             ServerPlayerEntity p = s.getPlayer();
@@ -368,8 +440,12 @@ public class CommandRegistrar {
         s.sendMessage(Text.literal("Лидер: " + nation.getLeaderName()).formatted(Formatting.YELLOW));
         s.sendMessage(Text.literal("Строй: " + nation.getGovernmentType()).formatted(Formatting.YELLOW));
         s.sendMessage(Text.literal("Городов: " + nation.getTownIds().size()).formatted(Formatting.YELLOW));
-        s.sendMessage(Text.literal("Чанков: " + nation.getTotalChunks(towns) + "/" + Nation.MAX_CHUNKS)
+        s.sendMessage(Text.literal("Чанков: " + nation.getTotalChunks() + "/" + Nation.MAX_CHUNKS)
                 .formatted(Formatting.YELLOW));
+        int nationParts = mod.getDataManager().getNationComponentCount(nation);
+        if (nationParts > 1) {
+            s.sendMessage(Text.literal("Эксклавов: " + (nationParts - 1)).formatted(Formatting.YELLOW));
+        }
 
         for (String tid : nation.getTownIds()) {
             Town t = towns.get(tid);
@@ -413,6 +489,10 @@ public class CommandRegistrar {
                 .formatted(Formatting.YELLOW));
         s.sendMessage(Text.literal("Чанков: " + town.getChunkCount() + "/" + Town.MAX_CHUNKS)
                 .formatted(Formatting.YELLOW));
+        int townParts = mod.getDataManager().getTownComponentCount(town);
+        if (townParts > 1) {
+            s.sendMessage(Text.literal("Эксклавов: " + (townParts - 1)).formatted(Formatting.YELLOW));
+        }
         s.sendMessage(Text.literal("PVP: " + (town.isPvpEnabled() ? "✅" : "❌"))
                 .formatted(Formatting.YELLOW));
         s.sendMessage(Text.literal("Взрывы: " + (town.isExplosionsEnabled() ? "✅" : "❌"))
@@ -431,8 +511,8 @@ public class CommandRegistrar {
             ctx.getSource().sendMessage(Text.literal("❌ Город не найден").formatted(Formatting.RED));
             return 0;
         }
-        town.getResidents().add(playerName);
-        mod.getDataManager().saveAll();
+        mod.getDataManager().addResident(town, playerName);
+        mod.getSaveService().requestSave();
         ctx.getSource().sendMessage(
                 Text.literal("✅ " + playerName + " добавлен в " + town.getName())
                         .formatted(Formatting.GREEN));
@@ -447,8 +527,8 @@ public class CommandRegistrar {
             ctx.getSource().sendMessage(Text.literal("❌ Город не найден").formatted(Formatting.RED));
             return 0;
         }
-        town.getResidents().remove(playerName);
-        mod.getDataManager().saveAll();
+        mod.getDataManager().removeResident(town, playerName);
+        mod.getSaveService().requestSave();
         ctx.getSource().sendMessage(
                 Text.literal("✅ " + playerName + " удалён из " + town.getName())
                         .formatted(Formatting.GREEN));
@@ -483,14 +563,8 @@ public class CommandRegistrar {
             ctx.getSource().sendMessage(Text.literal("❌ Нация не найдена").formatted(Formatting.RED));
             return 0;
         }
-        n1.getEnemies().add(id2);
-        n2.getEnemies().add(id1);
-        n1.getAllies().remove(id2);
-        n2.getAllies().remove(id1);
-        n1.setAtWar(true);
-        n2.setAtWar(true);
-        mod.getDataManager().saveAll();
-        if (mod.getBlueMapIntegration().isInitialized()) mod.getBlueMapIntegration().renderAll();
+        mod.getDataManager().declareWar(n1, n2);
+        mod.getSaveService().requestSave();
 
         mod.getServer().getPlayerManager().broadcast(
                 Text.literal("⚔ " + n1.getName() + " объявила войну " + n2.getName() + "!")
@@ -507,12 +581,8 @@ public class CommandRegistrar {
             ctx.getSource().sendMessage(Text.literal("❌ Нация не найдена").formatted(Formatting.RED));
             return 0;
         }
-        n1.getEnemies().remove(id2);
-        n2.getEnemies().remove(id1);
-        if (n1.getEnemies().isEmpty()) n1.setAtWar(false);
-        if (n2.getEnemies().isEmpty()) n2.setAtWar(false);
-        mod.getDataManager().saveAll();
-        if (mod.getBlueMapIntegration().isInitialized()) mod.getBlueMapIntegration().renderAll();
+        mod.getDataManager().makePeace(n1, n2);
+        mod.getSaveService().requestSave();
 
         mod.getServer().getPlayerManager().broadcast(
                 Text.literal("🕊 " + n1.getName() + " и " + n2.getName() + " заключили мир!")
@@ -529,12 +599,8 @@ public class CommandRegistrar {
             ctx.getSource().sendMessage(Text.literal("❌ Нация не найдена").formatted(Formatting.RED));
             return 0;
         }
-        n1.getAllies().add(id2);
-        n2.getAllies().add(id1);
-        n1.getEnemies().remove(id2);
-        n2.getEnemies().remove(id1);
-        mod.getDataManager().saveAll();
-        if (mod.getBlueMapIntegration().isInitialized()) mod.getBlueMapIntegration().renderAll();
+        mod.getDataManager().makeAlliance(n1, n2);
+        mod.getSaveService().requestSave();
 
         mod.getServer().getPlayerManager().broadcast(
                 Text.literal("🤝 " + n1.getName() + " и " + n2.getName() + " стали союзниками!")
@@ -550,8 +616,8 @@ public class CommandRegistrar {
             ctx.getSource().sendMessage(Text.literal("❌ Город не найден").formatted(Formatting.RED));
             return 0;
         }
-        town.setPvpEnabled(Boolean.parseBoolean(value));
-        mod.getDataManager().saveAll();
+        mod.getDataManager().setTownPvp(town, Boolean.parseBoolean(value));
+        mod.getSaveService().requestSave();
         ctx.getSource().sendMessage(
                 Text.literal("✅ PVP в " + town.getName() + " → " + value)
                         .formatted(Formatting.GREEN));
@@ -566,8 +632,8 @@ public class CommandRegistrar {
             ctx.getSource().sendMessage(Text.literal("❌ Город не найден").formatted(Formatting.RED));
             return 0;
         }
-        town.setExplosionsEnabled(Boolean.parseBoolean(value));
-        mod.getDataManager().saveAll();
+        mod.getDataManager().setTownExplosions(town, Boolean.parseBoolean(value));
+        mod.getSaveService().requestSave();
         ctx.getSource().sendMessage(
                 Text.literal("✅ Взрывы в " + town.getName() + " → " + value)
                         .formatted(Formatting.GREEN));
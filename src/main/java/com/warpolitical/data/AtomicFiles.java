@@ -0,0 +1,59 @@
+package com.warpolitical.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Запись через временный файл и переименование: при падении посреди записи
+// на месте остаётся старая целая версия, а не обрезанный файл. Временный файл
+// сбрасывается на диск до переименования (иначе после отключения питания на
+// месте файла может оказаться пустой), каталог — после.
+final class AtomicFiles {
+
+    private AtomicFiles() {
+    }
+
+    static Path tempFor(Path target) {
+        return target.resolveSibling(target.getFileName() + ".tmp");
+    }
+
+    // Кодировка — как у FileReader в DataManager.loadFromFile, чтобы старые файлы читались по-прежнему
+    static void writeString(Path target, String content) throws IOException {
+        Path temp = tempFor(target);
+        ByteBuffer bytes = Charset.defaultCharset().encode(content);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        replace(temp, target);
+    }
+
+    static void replace(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(target.toAbsolutePath().getParent());
+    }
+
+    // Запись о переименовании живёт в каталоге. Каталог открывается для fsync не
+    // везде (на Windows — нет), там остаётся то, что гарантирует сама ФС.
+    private static void syncDirectory(Path dir) {
+        if (dir == null) return;
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException | UnsupportedOperationException e) {
+            // Не поддерживается — не ошибка записи
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package com.warpolitical.data;
+
+import com.warpolitical.WarPoliticalMod;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// Журнал изменений data/journal.wal: клеймы, жители, дипломатия и флаги городов
+// между снимками. Заголовок — MAGIC, VERSION и id журнала (совпадает с journalId
+// в meta.json снимка). Запись — длина, CRC32 и тело: номер, операция, аргументы.
+// Операции копятся в памяти и уходят на диск одной пачкой с одним fsync не позже
+// GROUP_COMMIT_MS после первой — массовые изменения не делают fsync на каждый чанк.
+// После уплотнения (chunks.bin переписан) всё, что в него вошло, вырезается из файла (compact).
+final class ChangeJournal {
+
+    static final int MAGIC = 0x5750454A; // "WPEJ"
+    static final int VERSION = 1;
+
+    private static final long GROUP_COMMIT_MS = 20;
+    // Запись длиннее — мусор на хвосте после падения
+    private static final int MAX_RECORD_BYTES = 1 << 16;
+
+    enum Op {
+        CLAIM,
+        UNCLAIM,
+        CLAIMS_CLEAR,
+        CLEAR,
+        RESIDENT_ADD,
+        RESIDENT_REMOVE,
+        WAR,
+        PEACE,
+        ALLIANCE,
+        TOWN_PVP,
+        TOWN_EXPLOSIONS
+    }
+
+    // Разобранная запись; неиспользуемые операцией поля пустые
+    static final class Record {
+        final long seq;
+        final Op op;
+        final String world;
+        final int x;
+        final int z;
+        final String first;
+        final String second;
+        final boolean flag;
+        final byte[] frame;
+
+        private Record(long seq, Op op, String world, int x, int z,
+                       String first, String second, boolean flag, byte[] frame) {
+            this.seq = seq;
+            this.op = op;
+            this.world = world;
+            this.x = x;
+            this.z = z;
+            this.first = first;
+            this.second = second;
+            this.flag = flag;
+            this.frame = frame;
+        }
+    }
+
+    private final Path file;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "WPE-Journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Поток сервера → поток журнала
+    private final List<Record> pending = new ArrayList<>();
+    private boolean flushScheduled;
+    // Номер последней операции; выдаётся в потоке сервера
+    private volatile long lastSeq;
+
+    // Только поток журнала
+    private long journalId;
+    private FileChannel channel;
+    private final ArrayDeque<Record> retained = new ArrayDeque<>();
+
+    // recovered — записи, которые ещё не вошли в снимок; они остаются в файле
+    ChangeJournal(Path file, long journalId, long lastSeq, List<Record> recovered) {
+        this.file = file;
+        this.lastSeq = lastSeq;
+        for (Record record : recovered) {
+            this.lastSeq = Math.max(this.lastSeq, record.seq);
+        }
+        executor.execute(() -> {
+            this.journalId = journalId;
+            retained.addAll(recovered);
+            rewrite();
+        });
+    }
+
+    long getLastSeq() {
+        return lastSeq;
+    }
+
+    // ═══════════════════════════════════════
+    //  ЗАПИСЬ (поток сервера)
+    // ═══════════════════════════════════════
+
+    void claim(String world, int x, int z, String townId) {
+        append(Op.CLAIM, world, x, z, townId, "", false);
+    }
+
+    void unclaim(String world, int x, int z) {
+        append(Op.UNCLAIM, world, x, z, "", "", false);
+    }
+
+    void append(Op op, String first, String second) {
+        append(op, "", 0, 0, first, second, false);
+    }
+
+    void append(Op op, String first, boolean flag) {
+        append(op, "", 0, 0, first, "", flag);
+    }
+
+    void append(Op op) {
+        append(op, "", 0, 0, "", "", false);
+    }
+
+    private void append(Op op, String world, int x, int z, String first, String second, boolean flag) {
+        long seq = ++lastSeq;
+        Record record = new Record(seq, op, world, x, z, first, second, flag,
+                encode(seq, op, world, x, z, first, second, flag));
+        synchronized (pending) {
+            pending.add(record);
+            if (flushScheduled) return;
+            flushScheduled = true;
+        }
+        executor.schedule(this::flushPending, GROUP_COMMIT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // Снимок с номером upToSeq записан — его операции больше не нужны
+    void compact(long upToSeq) {
+        executor.execute(() -> {
+            flushPending();
+            if (retained.isEmpty() || retained.peekFirst().seq > upToSeq) return;
+            while (!retained.isEmpty() && retained.peekFirst().seq <= upToSeq) {
+                retained.pollFirst();
+            }
+            rewrite();
+        });
+    }
+
+    // Новое состояние со своим id: операции старого выбрасываются
+    void reset(long newJournalId) {
+        synchronized (pending) {
+            pending.clear();
+        }
+        executor.execute(() -> {
+            journalId = newJournalId;
+            retained.clear();
+            rewrite();
+        });
+    }
+
+    // Дописывает накопленное и закрывает файл
+    void close() {
+        executor.execute(() -> {
+            flushPending();
+            closeChannel();
+        });
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                WarPoliticalMod.LOGGER.warn("Журнал не закрылся за 10 с");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ═══════════════════════════════════════
+    //  ФАЙЛ (поток журнала)
+    // ═══════════════════════════════════════
+
+    private void flushPending() {
+        List<Record> batch;
+        synchronized (pending) {
+            flushScheduled = false;
+            if (pending.isEmpty()) return;
+            batch = new ArrayList<>(pending);
+            pending.clear();
+        }
+
+        retained.addAll(batch);
+        if (channel == null) return;
+        try {
+            for (Record record : batch) {
+                writeFully(channel, record.frame);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            WarPoliticalMod.LOGGER.error("Ошибка записи журнала: {}", e.getMessage());
+            // Файл переписывается целиком из памяти при следующем compact/reset
+            closeChannel();
+        }
+    }
+
+    // Файл собирается заново из retained во временном файле и подменяется
+    private void rewrite() {
+        closeChannel();
+        Path temp = AtomicFiles.tempFor(file);
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(16);
+                header.putInt(MAGIC).putInt(VERSION).putLong(journalId).flip();
+                while (header.hasRemaining()) out.write(header);
+                for (Record record : retained) {
+                    writeFully(out, record.frame);
+                }
+                out.force(false);
+            }
+            AtomicFiles.replace(temp, file);
+            channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            WarPoliticalMod.LOGGER.error("Журнал не пересобран: {}", e.getMessage());
+        }
+    }
+
+    private void closeChannel() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        channel = null;
+    }
+
+    private static void writeFully(FileChannel out, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) out.write(buffer);
+    }
+
+    // ═══════════════════════════════════════
+    //  ФОРМАТ
+    // ═══════════════════════════════════════
+
+    private static byte[] encode(long seq, Op op, String world, int x, int z,
+                                 String first, String second, boolean flag) {
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(body);
+            out.writeLong(seq);
+            out.writeByte(op.ordinal());
+            out.writeUTF(world);
+            out.writeInt(x);
+            out.writeInt(z);
+            out.writeUTF(first);
+            out.writeUTF(second);
+            out.writeBoolean(flag);
+            byte[] payload = body.toByteArray();
+
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            ByteBuffer frame = ByteBuffer.allocate(8 + payload.length);
+            frame.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+            return frame.array();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Записи журнала journalId с номером больше afterSeq. Чужой или отсутствующий
+    // журнал — пустой список; оборванный хвост после падения отбрасывается.
+    static List<Record> read(Path file, long journalId, long afterSeq) {
+        List<Record> records = new ArrayList<>();
+        if (!Files.exists(file)) return records;
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                WarPoliticalMod.LOGGER.warn("Журнал: неизвестный формат, пропускаем");
+                return records;
+            }
+            if (in.readLong() != journalId) {
+                WarPoliticalMod.LOGGER.info("Журнал относится к другому состоянию, пропускаем");
+                return records;
+            }
+
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException end) {
+                    break;
+                }
+                int expectedCrc = in.readInt();
+                if (length <= 0 || length > MAX_RECORD_BYTES) {
+                    WarPoliticalMod.LOGGER.warn("Журнал: повреждённая запись, хвост отброшен");
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != expectedCrc) {
+                    WarPoliticalMod.LOGGER.warn("Журнал: неверная контрольная сумма, хвост отброшен");
+                    break;
+                }
+
+                Record record = decode(payload, expectedCrc);
+                if (record != null && record.seq > afterSeq) records.add(record);
+            }
+        } catch (EOFException e) {
+            WarPoliticalMod.LOGGER.warn("Журнал: оборванная запись в конце, отброшена");
+        } catch (IOException e) {
+            WarPoliticalMod.LOGGER.error("Журнал не прочитан: {}", e.getMessage());
+        }
+        return records;
+    }
+
+    private static Record decode(byte[] payload, int crc) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        long seq = in.readLong();
+        int opIndex = in.readUnsignedByte();
+        if (opIndex >= Op.values().length) return null;
+        Op op = Op.values()[opIndex];
+        String world = in.readUTF();
+        int x = in.readInt();
+        int z = in.readInt();
+        String first = in.readUTF();
+        String second = in.readUTF();
+        boolean flag = in.readBoolean();
+
+        ByteBuffer frame = ByteBuffer.allocate(8 + payload.length);
+        frame.putInt(payload.length).putInt(crc).put(payload);
+        return new Record(seq, op, world, x, z, first, second, flag, frame.array());
+    }
+}
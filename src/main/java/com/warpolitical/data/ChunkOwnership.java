@@ -0,0 +1,37 @@
+package com.warpolitical.data;
+
+// Хранилище владения чанками одного мира: координаты чанка → ординал города
+public interface ChunkOwnership {
+
+    int NONE = -1;
+
+    int get(int chunkX, int chunkZ);
+
+    // Возвращает предыдущего владельца или NONE
+    int put(int chunkX, int chunkZ, int owner);
+
+    int remove(int chunkX, int chunkZ);
+
+    int size();
+
+    void forEach(ChunkOwnerConsumer consumer);
+
+    // Примерный объём занимаемой памяти в байтах — для логов и выбора режима
+    long estimateBytes();
+
+    // Независимая копия — для снимков, которые пишутся на диск в фоне
+    ChunkOwnership copy();
+
+    default boolean contains(int chunkX, int chunkZ) {
+        return get(chunkX, chunkZ) != NONE;
+    }
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @FunctionalInterface
+    interface ChunkOwnerConsumer {
+        void accept(int chunkX, int chunkZ, int owner);
+    }
+}
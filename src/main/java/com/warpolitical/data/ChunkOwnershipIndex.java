@@ -0,0 +1,196 @@
+package com.warpolitical.data;
+
+import com.warpolitical.model.ClaimedChunk;
+
+import java.util.Arrays;
+
+// Индекс владения чанками одного мира: упакованные координаты (long) → ординал города.
+// Открытая адресация с линейным пробированием, без боксинга и аллокаций при поиске.
+public class ChunkOwnershipIndex implements ChunkOwnership {
+
+    // Long.MIN_VALUE соответствует X = Integer.MIN_VALUE — такого чанка в мире не бывает
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int MIN_CAPACITY = 64;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private int[] owners;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    public ChunkOwnershipIndex() {
+        this(MIN_CAPACITY);
+    }
+
+    public ChunkOwnershipIndex(int expected) {
+        allocate(tableSizeFor(expected));
+    }
+
+    private ChunkOwnershipIndex(ChunkOwnershipIndex source) {
+        this.keys = source.keys.clone();
+        this.owners = source.owners.clone();
+        this.mask = source.mask;
+        this.size = source.size;
+        this.resizeAt = source.resizeAt;
+    }
+
+    @Override
+    public int get(int chunkX, int chunkZ) {
+        return get(ClaimedChunk.pack(chunkX, chunkZ));
+    }
+
+    public int get(long packed) {
+        long[] k = keys;
+        int slot = mix(packed) & mask;
+        while (true) {
+            long cur = k[slot];
+            if (cur == packed) return owners[slot];
+            if (cur == EMPTY) return NONE;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    @Override
+    public int put(int chunkX, int chunkZ, int owner) {
+        return put(ClaimedChunk.pack(chunkX, chunkZ), owner);
+    }
+
+    public int put(long packed, int owner) {
+        if (owner < 0) throw new IllegalArgumentException("owner < 0: " + owner);
+
+        int slot = mix(packed) & mask;
+        while (true) {
+            long cur = keys[slot];
+            if (cur == packed) {
+                int prev = owners[slot];
+                owners[slot] = owner;
+                return prev;
+            }
+            if (cur == EMPTY) break;
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = packed;
+        owners[slot] = owner;
+        if (++size >= resizeAt) {
+            rehash(keys.length << 1);
+        }
+        return NONE;
+    }
+
+    @Override
+    public int remove(int chunkX, int chunkZ) {
+        return remove(ClaimedChunk.pack(chunkX, chunkZ));
+    }
+
+    public int remove(long packed) {
+        int slot = mix(packed) & mask;
+        while (true) {
+            long cur = keys[slot];
+            if (cur == EMPTY) return NONE;
+            if (cur == packed) break;
+            slot = (slot + 1) & mask;
+        }
+
+        int prev = owners[slot];
+        shiftKeys(slot);
+        size--;
+        return prev;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long estimateBytes() {
+        return (long) keys.length * (Long.BYTES + Integer.BYTES);
+    }
+
+    // Копия таблиц целиком, без повторной вставки
+    @Override
+    public ChunkOwnershipIndex copy() {
+        return new ChunkOwnershipIndex(this);
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    @Override
+    public void forEach(ChunkOwnerConsumer consumer) {
+        long[] k = keys;
+        int[] o = owners;
+        for (int i = 0; i < k.length; i++) {
+            long packed = k[i];
+            if (packed != EMPTY) {
+                consumer.accept(ClaimedChunk.unpackX(packed), ClaimedChunk.unpackZ(packed), o[i]);
+            }
+        }
+    }
+
+    // Удаление без надгробий: сдвигаем хвост кластера назад
+    private void shiftKeys(int pos) {
+        long[] k = keys;
+        while (true) {
+            int last = pos;
+            pos = (pos + 1) & mask;
+            long cur;
+            while (true) {
+                cur = k[pos];
+                if (cur == EMPTY) {
+                    k[last] = EMPTY;
+                    return;
+                }
+                int home = mix(cur) & mask;
+                // Элемент можно перенести в last, если last лежит между home и pos (циклически)
+                if (last <= pos ? (last >= home || home > pos) : (last >= home && home > pos)) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            k[last] = cur;
+            owners[last] = owners[pos];
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        int[] oldOwners = owners;
+        allocate(newCapacity);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            long packed = oldKeys[i];
+            if (packed == EMPTY) continue;
+            int slot = mix(packed) & mask;
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = packed;
+            owners[slot] = oldOwners[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        owners = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int tableSizeFor(int expected) {
+        int needed = (int) Math.ceil(Math.max(expected, 1) / LOAD_FACTOR) + 1;
+        int capacity = Integer.highestOneBit(Math.max(needed, MIN_CAPACITY) - 1) << 1;
+        return Math.max(capacity, MIN_CAPACITY);
+    }
+
+    private static int mix(long packed) {
+        long h = packed * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        return (int) (h ^ (h >>> 16));
+    }
+}
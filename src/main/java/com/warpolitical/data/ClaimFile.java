@@ -0,0 +1,219 @@
+package com.warpolitical.data;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+
+// Двоичный файл клеймов data/chunks.bin:
+//   заголовок  — MAGIC, VERSION, число городов, число чанков, число миров;
+//   таблица    — id городов по ординалам (длина short + UTF-8);
+//   мир        — имя, число строк; строка — x и список отрезков (z начала, длина, ординал).
+// Соседние чанки одного города по z сливаются в один отрезок, поэтому залитая карта
+// занимает порядка строк × городов на строку, а не по записи на чанк.
+// Пишется через FileChannel во временный файл с атомарной подменой, читается целиком в буфер
+// в куче. Отображение в память (mmap) не годится: оно держит файл до сборки мусора,
+// и на Windows следующая подмена chunks.bin или перенос в .broken падают.
+final class ClaimFile {
+
+    static final int MAGIC = 0x57504543; // "WPEC"
+    static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = 1 << 17;
+
+    private ClaimFile() {
+    }
+
+    // townIds — id городов по ординалам; worlds — хранилища, которые никто не меняет во время записи
+    static void write(Path target, String[] townIds, Map<String, ChunkOwnership> worlds) throws IOException {
+        int chunkCount = 0;
+        for (ChunkOwnership index : worlds.values()) {
+            chunkCount += index.size();
+        }
+
+        Path temp = AtomicFiles.tempFor(target);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Output out = new Output(channel);
+
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(townIds.length);
+            out.putInt(chunkCount);
+            out.putInt(worlds.size());
+
+            for (String townId : townIds) {
+                out.putString(townId != null ? townId : "");
+            }
+
+            for (Map.Entry<String, ChunkOwnership> entry : worlds.entrySet()) {
+                out.putString(entry.getKey());
+                writeWorld(out, entry.getValue());
+            }
+
+            out.flush();
+            channel.force(false);
+        }
+        AtomicFiles.replace(temp, target);
+    }
+
+    // Чанки мира упорядочиваются по (x, z), дальше строки режутся на отрезки
+    private static void writeWorld(Output out, ChunkOwnership index) throws IOException {
+        long[] keys = new long[index.size()];
+        int[] count = {0};
+        index.forEach((cx, cz, owner) -> keys[count[0]++] = sortKey(cx, cz));
+        long[] sorted = Arrays.copyOf(keys, count[0]);
+        Arrays.sort(sorted);
+
+        int rows = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || keyX(sorted[i]) != keyX(sorted[i - 1])) rows++;
+        }
+        out.putInt(rows);
+
+        int i = 0;
+        while (i < sorted.length) {
+            int x = keyX(sorted[i]);
+            int rowEnd = i;
+            while (rowEnd < sorted.length && keyX(sorted[rowEnd]) == x) rowEnd++;
+
+            int runs = 0;
+            for (int k = i; k < rowEnd; k++) {
+                if (!continuesRun(index, sorted, k, i)) runs++;
+            }
+            out.putInt(x);
+            out.putInt(runs);
+
+            int k = i;
+            while (k < rowEnd) {
+                int start = keyZ(sorted[k]);
+                int owner = index.get(x, start);
+                int length = 1;
+                while (k + length < rowEnd && continuesRun(index, sorted, k + length, i)) length++;
+                out.putInt(start);
+                out.putInt(length);
+                out.putInt(owner);
+                k += length;
+            }
+            i = rowEnd;
+        }
+    }
+
+    // Чанк продолжает отрезок, если он вплотную за предыдущим и у того же города
+    private static boolean continuesRun(ChunkOwnership index, long[] sorted, int k, int rowStart) {
+        if (k == rowStart) return false;
+        int x = keyX(sorted[k]);
+        int z = keyZ(sorted[k]);
+        int prevZ = keyZ(sorted[k - 1]);
+        return prevZ + 1 == z && index.get(x, prevZ) == index.get(x, z);
+    }
+
+    // false — файл не подходит по формату; повреждённый файл даёт IOException
+    static boolean read(Path file, TerritoryState target) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("файл слишком велик: " + size);
+            ByteBuffer in = ByteBuffer.allocate((int) size);
+            while (in.hasRemaining()) {
+                if (channel.read(in) < 0) throw new IOException("файл обрезан");
+            }
+            in.flip();
+            if (in.remaining() < 8 || in.getInt() != MAGIC || in.getInt() != VERSION) return false;
+
+            int townCount = in.getInt();
+            in.getInt(); // число чанков — для внешних инструментов, здесь считается заново
+            int worldCount = in.getInt();
+
+            // Ординалы файла → ординалы загружаемого состояния
+            OrdinalRegistry registry = target.getRegistry();
+            int[] remap = new int[townCount];
+            for (int i = 0; i < townCount; i++) {
+                String townId = getString(in);
+                remap[i] = townId.isEmpty() ? ChunkOwnership.NONE : registry.townOrdinal(townId);
+            }
+
+            for (int w = 0; w < worldCount; w++) {
+                String world = getString(in);
+                int rows = in.getInt();
+                for (int r = 0; r < rows; r++) {
+                    int x = in.getInt();
+                    int runs = in.getInt();
+                    for (int k = 0; k < runs; k++) {
+                        int start = in.getInt();
+                        int length = in.getInt();
+                        int owner = in.getInt();
+                        if (owner < 0 || owner >= townCount || remap[owner] == ChunkOwnership.NONE) {
+                            throw new IOException("неизвестный ординал города " + owner);
+                        }
+                        // Счёт по длине: start + length может переполнить int у края мира
+                        for (int j = 0; j < length; j++) {
+                            target.importClaim(world, x, start + j, remap[owner]);
+                        }
+                    }
+                }
+            }
+            return true;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("файл обрезан", e);
+        }
+    }
+
+    // z со сдвигом знака: сортировка long даёт порядок по x, затем по z
+    private static long sortKey(int cx, int cz) {
+        return ((long) cx << 32) | ((cz ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+    }
+
+    private static int keyX(long key) {
+        return (int) (key >> 32);
+    }
+
+    private static int keyZ(long key) {
+        return (int) key ^ Integer.MIN_VALUE;
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xFFFF];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Буфер записи: копит данные и сбрасывает их в канал по заполнении
+    private static class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) throw new IOException("слишком длинный id: " + value);
+            ensure(Short.BYTES + bytes.length);
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) flush();
+        }
+    }
+}
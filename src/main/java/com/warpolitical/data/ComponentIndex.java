@@ -0,0 +1,208 @@
+package com.warpolitical.data;
+
+import com.warpolitical.model.ClaimedChunk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+// Связные (по сторонам) части территорий одного мира: система непересекающихся
+// множеств по упакованным координатам чанков, отдельно для каждого города и каждой
+// нации. Клейм — добавление и до четырёх объединений с соседями того же владельца.
+// Снятие клейма объединения не откатывает: лес владельца помечается устаревшим и
+// пересобирается по его же чанкам при следующем запросе — O(размера владельца),
+// не мира. Индекс состояния строится лениво (TerritoryState.getComponents) и живёт
+// в потоке сервера; of(snapshot) строит отдельный индекс для другого потока.
+public final class ComponentIndex {
+
+    private Forest[] towns = new Forest[0];
+    private Forest[] nations = new Forest[0];
+    // Ординал города → ординал его нации или OrdinalRegistry.NONE
+    private final IntUnaryOperator nationOfTown;
+
+    ComponentIndex(OrdinalRegistry registry) {
+        this(registry::nationOfTown);
+    }
+
+    private ComponentIndex(IntUnaryOperator nationOfTown) {
+        this.nationOfTown = nationOfTown;
+    }
+
+    // Индекс по клеймам мира сценария из неизменяемого снимка. С состоянием не связан:
+    // строится и читается в потоке карты, сервер тратит на него только ссылку на снимок
+    public static ComponentIndex of(TerritorySnapshot snapshot) {
+        ComponentIndex index = new ComponentIndex(townOrdinal -> {
+            TerritorySnapshot.TownView town = snapshot.getTown(townOrdinal);
+            return town != null ? town.getNationOrdinal() : OrdinalRegistry.NONE;
+        });
+        snapshot.forEachActiveClaim((chunkX, chunkZ, owner) -> index.add(ClaimedChunk.pack(chunkX, chunkZ), owner));
+        return index;
+    }
+
+    void add(long packed, int townOrdinal) {
+        forTown(townOrdinal).add(packed);
+        int nation = nationOfTown.applyAsInt(townOrdinal);
+        if (nation != OrdinalRegistry.NONE) forNation(nation).add(packed);
+    }
+
+    void remove(long packed, int townOrdinal) {
+        forTown(townOrdinal).remove(packed);
+        int nation = nationOfTown.applyAsInt(townOrdinal);
+        if (nation != OrdinalRegistry.NONE) forNation(nation).remove(packed);
+    }
+
+    // Число отдельных частей; больше одной — есть эксклавы
+    public int getTownComponentCount(int townOrdinal) {
+        Forest forest = get(towns, townOrdinal);
+        return forest != null ? forest.componentCount() : 0;
+    }
+
+    public int getNationComponentCount(int nationOrdinal) {
+        Forest forest = get(nations, nationOrdinal);
+        return forest != null ? forest.componentCount() : 0;
+    }
+
+    // Чанки каждой части отдельным массивом; массивы новые, их можно отдавать в другой поток
+    public List<long[]> getTownComponents(int townOrdinal) {
+        Forest forest = get(towns, townOrdinal);
+        return forest != null ? forest.components() : List.of();
+    }
+
+    public List<long[]> getNationComponents(int nationOrdinal) {
+        Forest forest = get(nations, nationOrdinal);
+        return forest != null ? forest.components() : List.of();
+    }
+
+    private static Forest get(Forest[] forests, int ordinal) {
+        return ordinal >= 0 && ordinal < forests.length ? forests[ordinal] : null;
+    }
+
+    private Forest forTown(int ordinal) {
+        if (ordinal >= towns.length) towns = Arrays.copyOf(towns, Math.max(ordinal + 1, towns.length << 1));
+        if (towns[ordinal] == null) towns[ordinal] = new Forest();
+        return towns[ordinal];
+    }
+
+    private Forest forNation(int ordinal) {
+        if (ordinal >= nations.length) nations = Arrays.copyOf(nations, Math.max(ordinal + 1, nations.length << 1));
+        if (nations[ordinal] == null) nations[ordinal] = new Forest();
+        return nations[ordinal];
+    }
+
+    // Чанки одного владельца: слоты в плотных массивах, слот ищется по координатам
+    private static final class Forest {
+        private final ChunkOwnershipIndex slots = new ChunkOwnershipIndex();
+        private long[] chunks = new long[16];
+        private int[] parent = new int[16];
+        private int[] weight = new int[16];
+        private int size;
+        private int components;
+        private boolean stale;
+
+        void add(long packed) {
+            if (slots.get(packed) != ChunkOwnership.NONE) return;
+            if (size == chunks.length) {
+                chunks = Arrays.copyOf(chunks, size << 1);
+                parent = Arrays.copyOf(parent, size << 1);
+                weight = Arrays.copyOf(weight, size << 1);
+            }
+            int slot = size++;
+            chunks[slot] = packed;
+            slots.put(packed, slot);
+            if (stale) return;
+
+            parent[slot] = slot;
+            weight[slot] = 1;
+            components++;
+            unionNeighbors(slot);
+        }
+
+        // Последний слот переезжает на место удалённого; связи пересоберутся в ensure()
+        void remove(long packed) {
+            int slot = slots.remove(packed);
+            if (slot == ChunkOwnership.NONE) return;
+            int last = --size;
+            if (slot != last) {
+                chunks[slot] = chunks[last];
+                slots.put(chunks[slot], slot);
+            }
+            stale = true;
+        }
+
+        int componentCount() {
+            ensure();
+            return components;
+        }
+
+        List<long[]> components() {
+            ensure();
+            int[] rootIndex = new int[size];
+            Arrays.fill(rootIndex, -1);
+            int[] counts = new int[components];
+            int groups = 0;
+            for (int slot = 0; slot < size; slot++) {
+                int root = find(slot);
+                if (rootIndex[root] < 0) rootIndex[root] = groups++;
+                counts[rootIndex[root]]++;
+            }
+
+            long[][] result = new long[groups][];
+            for (int group = 0; group < groups; group++) {
+                result[group] = new long[counts[group]];
+                counts[group] = 0;
+            }
+            for (int slot = 0; slot < size; slot++) {
+                int group = rootIndex[find(slot)];
+                result[group][counts[group]++] = chunks[slot];
+            }
+            return new ArrayList<>(Arrays.asList(result));
+        }
+
+        private void ensure() {
+            if (!stale) return;
+            stale = false;
+            components = size;
+            for (int slot = 0; slot < size; slot++) {
+                parent[slot] = slot;
+                weight[slot] = 1;
+            }
+            for (int slot = 0; slot < size; slot++) {
+                unionNeighbors(slot);
+            }
+        }
+
+        private void unionNeighbors(int slot) {
+            int x = ClaimedChunk.unpackX(chunks[slot]);
+            int z = ClaimedChunk.unpackZ(chunks[slot]);
+            union(slot, slots.get(ClaimedChunk.pack(x + 1, z)));
+            union(slot, slots.get(ClaimedChunk.pack(x - 1, z)));
+            union(slot, slots.get(ClaimedChunk.pack(x, z + 1)));
+            union(slot, slots.get(ClaimedChunk.pack(x, z - 1)));
+        }
+
+        private void union(int a, int b) {
+            if (b == ChunkOwnership.NONE) return;
+            int rootA = find(a);
+            int rootB = find(b);
+            if (rootA == rootB) return;
+            if (weight[rootA] < weight[rootB]) {
+                int swap = rootA;
+                rootA = rootB;
+                rootB = swap;
+            }
+            parent[rootB] = rootA;
+            weight[rootA] += weight[rootB];
+            components--;
+        }
+
+        // С сокращением пути через одного
+        private int find(int slot) {
+            while (parent[slot] != slot) {
+                parent[slot] = parent[parent[slot]];
+                slot = parent[slot];
+            }
+            return slot;
+        }
+    }
+}
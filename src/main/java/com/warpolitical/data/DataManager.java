@@ -10,141 +10,521 @@ import com.warpolitical.model.Town;
 
 import java.io.*;
 import java.lang.reflect.Type;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 public class DataManager {
 
+    private static final String NATIONS_DIR = "nations";
+    private static final String TOWNS_DIR = "towns";
+    private static final String CLAIMS_FILE = "chunks.bin";
+    private static final String CLAIMS_JSON_FILE = "chunks.json";
+    // Общие файлы до разбиения по сущностям — читаются один раз для переноса
+    private static final String LEGACY_NATIONS_FILE = "nations.json";
+    private static final String LEGACY_TOWNS_FILE = "towns.json";
+    private static final String JOURNAL_FILE = "journal.wal";
+    // Уплотнение журнала: chunks.bin переписывается, когда после прошлой его записи
+    // накопилось COMPACT_RECORDS операций или прошло COMPACT_AGE_NANOS
+    private static final long COMPACT_RECORDS = 50_000;
+    private static final long COMPACT_AGE_NANOS = TimeUnit.MINUTES.toNanos(30);
+
     private final Path configDir;
     private final Gson gson;
 
-    private final Map<String, Nation> nations = new ConcurrentHashMap<>();
-    private final Map<String, Town> towns = new ConcurrentHashMap<>();
-    private final Map<String, ClaimedChunk> claimedChunks = new ConcurrentHashMap<>();
-    private String activeWorldName = null;
+    // Текущее состояние; подменяется целиком через publish()
+    private volatile TerritoryState state = new TerritoryState();
+    // Неизменяемый снимок для защиты и уведомлений; пересобирается после каждого изменения
+    private volatile TerritorySnapshot territorySnapshot = TerritorySnapshot.EMPTY;
+
+    // Мета последнего снимка — пишется только при изменении
+    private volatile String savedMetaJson;
+    // Запись не удалась или диск не совпадает с состоянием — следующий снимок будет полным
+    private volatile boolean saveFailed;
+
+    // Журнал операций после последнего снимка; открывается в loadAll()
+    private volatile ChangeJournal journal;
+    // Операции журнала до claimsSeq включительно есть в chunks.bin; до него журнал
+    // и укорачивается. claimsSavedAt — время той записи (System.nanoTime)
+    private volatile long claimsSeq;
+    private volatile long claimsSavedAt = System.nanoTime();
+
+    // Подписчики на изменения (карта и т.п.)
+    private final List<TerritoryListener> listeners = new CopyOnWriteArrayList<>();
 
     public DataManager(Path configDir) {
         this.configDir = configDir;
         this.gson = new GsonBuilder().setPrettyPrinting().create();
     }
 
+    public TerritoryState getState() {
+        return state;
+    }
+
+    public TerritorySnapshot getTerritorySnapshot() {
+        return territorySnapshot;
+    }
+
+    public void addListener(TerritoryListener listener) {
+        listeners.add(listener);
+    }
+
+    // Атомарная подмена состояния: читатели видят либо старое, либо новое целиком.
+    // Операции старого состояния в журнале новому не нужны — журнал начинается заново.
+    public void publish(TerritoryState next) {
+        TerritoryState previous = this.state;
+        this.state = next;
+        territorySnapshot = TerritorySnapshot.of(next, territorySnapshot.getVersion() + 1);
+        ChangeJournal current = journal;
+        if (current != null && next.getJournalId() != previous.getJournalId()) {
+            // Новое состояние записано целиком (SaveService.persist) — отсчёт уплотнения заново
+            claimsSeq = current.getLastSeq();
+            claimsSavedAt = System.nanoTime();
+            current.reset(next.getJournalId());
+        }
+        fireReset();
+    }
+
     public Map<String, Nation> getNations() {
-        return nations;
+        return state.getNations();
     }
 
     public Map<String, Town> getTowns() {
-        return towns;
+        return state.getTowns();
     }
 
-    public Map<String, ClaimedChunk> getClaimedChunks() {
-        return claimedChunks;
+    public int getClaimedChunkCount() {
+        return state.getClaimedChunkCount();
     }
 
     public Nation getNation(String id) {
-        return nations.get(id);
+        return state.getNation(id);
     }
 
     public Town getTown(String id) {
-        return towns.get(id);
+        return state.getTown(id);
     }
 
     public void addNation(Nation nation) {
-        nations.put(nation.getId(), nation);
+        state.addNation(nation);
+        territorySnapshot = territorySnapshot.withNation(state, nation.getId());
+        fireNationChanged(nation.getId());
     }
 
     public void addTown(Town town) {
-        towns.put(town.getId(), town);
+        state.addTown(town);
+        territorySnapshot = territorySnapshot.withTown(state, town.getId());
+        fireTownChanged(town.getId());
+        fireNationChanged(town.getNationId());
+    }
+
+    public OrdinalRegistry getRegistry() {
+        return state.getRegistry();
+    }
+
+    public RelationTable getRelations() {
+        return state.getRelations();
     }
 
     public void claimChunk(int x, int z, String world, String townId) {
-        ClaimedChunk chunk = new ClaimedChunk(x, z, world, townId);
-        claimedChunks.put(chunk.getKey(), chunk);
-        Town town = towns.get(townId);
-        if (town != null) {
-            town.addChunk(chunk.getKey());
-        }
+        String previousTownId = listeners.isEmpty() ? null : ownerTownId(world, x, z);
+        state.claimChunk(x, z, world, townId);
+        territorySnapshot = territorySnapshot.withClaim(world, x, z, state.getOwnerOrdinal(world, x, z));
+        ChangeJournal current = journal;
+        if (current != null) current.claim(world, x, z, townId);
+        if (!townId.equals(previousTownId)) fireChunkChanged(world, x, z, previousTownId, townId);
+    }
+
+    public boolean unclaimChunk(int x, int z, String world) {
+        String previousTownId = listeners.isEmpty() ? null : ownerTownId(world, x, z);
+        if (!state.unclaimChunk(x, z, world)) return false;
+        territorySnapshot = territorySnapshot.withClaim(world, x, z, ChunkOwnership.NONE);
+        ChangeJournal current = journal;
+        if (current != null) current.unclaim(world, x, z);
+        fireChunkChanged(world, x, z, previousTownId, null);
+        return true;
+    }
+
+    private String ownerTownId(String world, int x, int z) {
+        int owner = state.getOwnerOrdinal(world, x, z);
+        return owner != ChunkOwnership.NONE ? state.getRegistry().townId(owner) : null;
     }
 
     public ClaimedChunk getChunkAt(String world, int chunkX, int chunkZ) {
-        String key = ClaimedChunk.makeKey(world, chunkX, chunkZ);
-        return claimedChunks.get(key);
+        return state.getChunkAt(world, chunkX, chunkZ);
     }
 
     public boolean isChunkClaimed(String world, int chunkX, int chunkZ) {
-        String key = ClaimedChunk.makeKey(world, chunkX, chunkZ);
-        return claimedChunks.containsKey(key);
+        return state.isChunkClaimed(world, chunkX, chunkZ);
     }
 
     public Town getTownAtChunk(String world, int chunkX, int chunkZ) {
-        ClaimedChunk chunk = getChunkAt(world, chunkX, chunkZ);
-        if (chunk == null) return null;
-        return towns.get(chunk.getTownId());
+        return state.getTownAtChunk(world, chunkX, chunkZ);
+    }
+
+    public int getOwnerOrdinal(String world, int chunkX, int chunkZ) {
+        return state.getOwnerOrdinal(world, chunkX, chunkZ);
     }
 
     public Nation getNationAtChunk(String world, int chunkX, int chunkZ) {
-        Town town = getTownAtChunk(world, chunkX, chunkZ);
-        if (town == null) return null;
-        return nations.get(town.getNationId());
+        return state.getNationAtChunk(world, chunkX, chunkZ);
+    }
+
+    public long[] getTownChunks(Town town) {
+        return state.getTownChunks(town);
+    }
+
+    public ComponentIndex getComponents(String world) {
+        return state.getComponents(world);
+    }
+
+    public ComponentIndex findComponents(String world) {
+        return state.findComponents(world);
+    }
+
+    // Число связных частей территории; больше одной — есть эксклавы
+    public int getTownComponentCount(Town town) {
+        return state.getComponents(town.getWorldName())
+                .getTownComponentCount(state.getRegistry().findTown(town.getId()));
+    }
+
+    public int getNationComponentCount(Nation nation) {
+        String world = state.getActiveWorldName();
+        if (world == null) return 0;
+        return state.getComponents(world)
+                .getNationComponentCount(state.getRegistry().findNation(nation.getId()));
+    }
+
+    // ═══════════════════════════════════════
+    //  ДИПЛОМАТИЯ
+    // ═══════════════════════════════════════
+
+    public boolean areAtWar(String nationA, String nationB) {
+        return state.areAtWar(nationA, nationB);
+    }
+
+    public boolean areAllied(String nationA, String nationB) {
+        return state.areAllied(nationA, nationB);
+    }
+
+    public void declareWar(Nation n1, Nation n2) {
+        state.declareWar(n1, n2);
+        territorySnapshot = territorySnapshot.withRelations(state);
+        fireNationChanged(n1.getId());
+        fireNationChanged(n2.getId());
+        journal(ChangeJournal.Op.WAR, n1.getId(), n2.getId());
+    }
+
+    public void makePeace(Nation n1, Nation n2) {
+        state.makePeace(n1, n2);
+        territorySnapshot = territorySnapshot.withRelations(state);
+        fireNationChanged(n1.getId());
+        fireNationChanged(n2.getId());
+        journal(ChangeJournal.Op.PEACE, n1.getId(), n2.getId());
+    }
+
+    public void makeAlliance(Nation n1, Nation n2) {
+        state.makeAlliance(n1, n2);
+        territorySnapshot = territorySnapshot.withRelations(state);
+        fireNationChanged(n1.getId());
+        fireNationChanged(n2.getId());
+        journal(ChangeJournal.Op.ALLIANCE, n1.getId(), n2.getId());
+    }
+
+    public void rebuildRelations() {
+        state.rebuildRelations();
+        territorySnapshot = territorySnapshot.withRelations(state);
+        fireReset();
     }
 
     public String getActiveWorldName() {
-        return activeWorldName;
+        return state.getActiveWorldName();
     }
 
     public void setActiveWorldName(String name) {
-        this.activeWorldName = name;
+        state.setActiveWorldName(name);
+        territorySnapshot = territorySnapshot.withActiveWorld(name);
+        fireReset();
     }
 
+    // ═══════════════════════════════════════
+    //  ГОРОДА
+    // ═══════════════════════════════════════
+
+    public boolean addResident(Town town, String playerName) {
+        if (!town.addResident(playerName)) return false;
+        territorySnapshot = territorySnapshot.withTown(state, town.getId());
+        fireTownChanged(town.getId());
+        journal(ChangeJournal.Op.RESIDENT_ADD, town.getId(), playerName);
+        return true;
+    }
+
+    public boolean removeResident(Town town, String playerName) {
+        if (!town.removeResident(playerName)) return false;
+        territorySnapshot = territorySnapshot.withTown(state, town.getId());
+        fireTownChanged(town.getId());
+        journal(ChangeJournal.Op.RESIDENT_REMOVE, town.getId(), playerName);
+        return true;
+    }
+
+    public void setTownPvp(Town town, boolean enabled) {
+        town.setPvpEnabled(enabled);
+        territorySnapshot = territorySnapshot.withTown(state, town.getId());
+        fireTownChanged(town.getId());
+        ChangeJournal current = journal;
+        if (current != null) current.append(ChangeJournal.Op.TOWN_PVP, town.getId(), enabled);
+    }
+
+    public void setTownExplosions(Town town, boolean enabled) {
+        town.setExplosionsEnabled(enabled);
+        territorySnapshot = territorySnapshot.withTown(state, town.getId());
+        fireTownChanged(town.getId());
+        ChangeJournal current = journal;
+        if (current != null) current.append(ChangeJournal.Op.TOWN_EXPLOSIONS, town.getId(), enabled);
+    }
+
+    // Пустое состояние остаётся в том же журнале: после падения CLEAR повторит очистку
     public void clearAll() {
-        nations.clear();
-        towns.clear();
-        claimedChunks.clear();
-        activeWorldName = null;
+        TerritoryState next = new TerritoryState();
+        next.setJournalId(state.getJournalId());
+        publish(next);
+        ChangeJournal current = journal;
+        if (current != null) current.append(ChangeJournal.Op.CLEAR);
+    }
+
+    public int verifyChunkCounters() {
+        return state.verifyChunkCounters();
+    }
+
+    private void journal(ChangeJournal.Op op, String first, String second) {
+        ChangeJournal current = journal;
+        if (current != null) current.append(op, first, second);
     }
 
+    // ═══════════════════════════════════════
+    //  СОБЫТИЯ
+    // ═══════════════════════════════════════
+
+    private void fireChunkChanged(String world, int x, int z, String previousTownId, String townId) {
+        for (TerritoryListener listener : listeners) {
+            listener.chunkChanged(world, x, z, previousTownId, townId);
+        }
+    }
+
+    private void fireTownChanged(String townId) {
+        for (TerritoryListener listener : listeners) {
+            listener.townChanged(townId);
+        }
+    }
+
+    private void fireNationChanged(String nationId) {
+        if (nationId == null) return;
+        for (TerritoryListener listener : listeners) {
+            listener.nationChanged(nationId);
+        }
+    }
+
+    private void fireReset() {
+        for (TerritoryListener listener : listeners) {
+            listener.territoryReset();
+        }
+    }
+
+    // ═══════════════════════════════════════
+    //  СОХРАНЕНИЕ / ЗАГРУЗКА
+    // ═══════════════════════════════════════
+
+    // Синхронная запись — для остановки сервера; команды сохраняют через SaveService
     public void saveAll() {
+        write(snapshot());
+    }
+
+    // Снимок берётся в потоке сервера и содержит только изменённое: JSON помеченных
+    // наций и городов и мету, если она поменялась. Отдельные клеймы живут только в
+    // журнале; копия хранилищ клеймов для chunks.bin снимается лишь при уплотнении —
+    // после замены клеймов целиком или по порогу журнала (compactionDue).
+    // Полные списки id нужны записи, чтобы удалить файлы исчезнувших.
+    Snapshot snapshot() {
+        return snapshot(state);
+    }
+
+    // Снимок ещё не опубликованного состояния (SaveService.persist) снимается в потоке
+    // записи: его никто не меняет. Номер журнала у такого снимка 0 — журнал нового
+    // состояния начнётся после publish() и весь будет новее снимка.
+    Snapshot snapshot(TerritoryState current) {
+        ChangeJournal currentJournal = journal;
+        long journalSeq = current == state && currentJournal != null ? currentJournal.getLastSeq() : 0;
+        if (saveFailed) {
+            saveFailed = false;
+            current.markAllDirty();
+            savedMetaJson = null;
+        }
+
+        Map<String, String> nationFiles = new HashMap<>();
+        for (Nation nation : current.getNations().values()) {
+            if (!nation.isDirty()) continue;
+            nationFiles.put(nation.getId(), gson.toJson(nation));
+            nation.markClean();
+        }
+
+        Map<String, String> townFiles = new HashMap<>();
+        for (Town town : current.getTowns().values()) {
+            if (!town.isDirty()) continue;
+            townFiles.put(town.getId(), gson.toJson(town));
+            town.markClean();
+        }
+
+        // Мета ссылается на номер, с которого журнал повторяется при загрузке: файлы
+        // сущностей бывают новее, но повтор поверх них даёт то же состояние
+        boolean compaction = current.isClaimsDirty() || current == state && compactionDue(journalSeq);
+        long coveredSeq = compaction ? journalSeq : claimsSeq;
+
+        String metaJson = metaJson(current, coveredSeq);
+        if (metaJson.equals(savedMetaJson)) {
+            metaJson = null;
+        } else {
+            savedMetaJson = metaJson;
+        }
+
+        String[] claimTownIds = null;
+        Map<String, ChunkOwnership> claims = null;
+        if (compaction) {
+            claimTownIds = townIds(current.getRegistry());
+            claims = new HashMap<>();
+            for (Map.Entry<String, ChunkOwnership> entry : current.getChunkIndexes().entrySet()) {
+                claims.put(entry.getKey(), entry.getValue().copy());
+            }
+            current.markClaimsClean();
+        }
+
+        return new Snapshot(nationFiles, townFiles,
+                new HashSet<>(current.getNations().keySet()),
+                new HashSet<>(current.getTowns().keySet()),
+                metaJson, claimTownIds, claims, coveredSeq);
+    }
+
+    // Порог уплотнения: число операций после прошлой записи chunks.bin или её давность
+    private boolean compactionDue(long journalSeq) {
+        long pending = journalSeq - claimsSeq;
+        if (pending <= 0) return false;
+        return pending >= COMPACT_RECORDS || System.nanoTime() - claimsSavedAt >= COMPACT_AGE_NANOS;
+    }
+
+    // Следующий снимок перепишет всё — диск мог разойтись с текущим состоянием
+    void requestFullSave() {
+        saveFailed = true;
+    }
+
+    // Каждый файл подменяется атомарно; ошибка одного не мешает остальным.
+    // false — что-то не записалось, следующий снимок будет полным.
+    boolean write(Snapshot snapshot) {
+        if (snapshot.isEmpty()) return true;
+
         Path dataDir = configDir.resolve("data");
-        dataDir.toFile().mkdirs();
+        Path nationsDir = dataDir.resolve(NATIONS_DIR);
+        Path townsDir = dataDir.resolve(TOWNS_DIR);
+        boolean ok = true;
 
-        saveToFile(dataDir.resolve("nations.json").toFile(), nations);
-        saveToFile(dataDir.resolve("towns.json").toFile(), towns);
-        saveToFile(dataDir.resolve("chunks.json").toFile(), claimedChunks);
+        try {
+            Files.createDirectories(nationsDir);
+            Files.createDirectories(townsDir);
+        } catch (IOException e) {
+            WarPoliticalMod.LOGGER.error("Ошибка сохранения: {}", e.getMessage());
+            saveFailed = true;
+            return false;
+        }
 
-        Map<String, String> meta = new ConcurrentHashMap<>();
-        meta.put("activeWorld", activeWorldName != null ? activeWorldName : "");
+        for (Map.Entry<String, String> entry : snapshot.nationFiles.entrySet()) {
+            ok &= writeFile(nationsDir.resolve(entityFileName(entry.getKey())), entry.getValue());
+        }
+        ok &= removeStale(nationsDir, snapshot.nationIds);
+
+        for (Map.Entry<String, String> entry : snapshot.townFiles.entrySet()) {
+            ok &= writeFile(townsDir.resolve(entityFileName(entry.getKey())), entry.getValue());
+        }
+        ok &= removeStale(townsDir, snapshot.townIds);
+
+        if (snapshot.claims != null) {
+            try {
+                ClaimFile.write(dataDir.resolve(CLAIMS_FILE), snapshot.claimTownIds, snapshot.claims);
+            } catch (IOException e) {
+                WarPoliticalMod.LOGGER.error("Ошибка сохранения {}: {}", CLAIMS_FILE, e.getMessage());
+                ok = false;
+            }
+        }
 
-        saveToFile(dataDir.resolve("meta.json").toFile(), meta);
+        if (snapshot.metaJson != null) {
+            ok &= writeFile(dataDir.resolve("meta.json"), snapshot.metaJson);
+        }
 
-        WarPoliticalMod.LOGGER.info("Данные сохранены: {} наций, {} городов, {} чанков",
-                nations.size(), towns.size(), claimedChunks.size());
+        if (!ok) {
+            saveFailed = true;
+        } else if (snapshot.claims != null) {
+            // chunks.bin и файлы сущностей содержат всё до journalSeq — из журнала вырезается
+            claimsSeq = snapshot.journalSeq;
+            claimsSavedAt = System.nanoTime();
+            ChangeJournal current = journal;
+            if (current != null) current.compact(snapshot.journalSeq);
+        }
+        WarPoliticalMod.LOGGER.info("Данные сохранены: наций {}, городов {}, клеймы {}",
+                snapshot.nationFiles.size(), snapshot.townFiles.size(),
+                snapshot.claims != null ? "переписаны" : "без изменений");
+        return ok;
     }
 
+    // Состояние с диска собирается отдельно и публикуется целиком. Поверх снимка
+    // повторяются операции журнала, записанные после него; после повтора изменённые
+    // сущности сразу пишутся заново, а журнал укорачивается при следующем уплотнении.
     public void loadAll() {
+        closeJournal();
         Path dataDir = configDir.resolve("data");
-        if (!dataDir.toFile().exists()) return;
-
-        File nationsFile = dataDir.resolve("nations.json").toFile();
-        if (nationsFile.exists()) {
-            Type type = new TypeToken<Map<String, Nation>>() {}.getType();
-            Map<String, Nation> loaded = loadFromFile(nationsFile, type);
-            if (loaded != null) nations.putAll(loaded);
+        if (!dataDir.toFile().exists()) {
+            dataDir.toFile().mkdirs();
+            openJournal(dataDir, state, 0, List.of());
+            return;
         }
 
-        File townsFile = dataDir.resolve("towns.json").toFile();
-        if (townsFile.exists()) {
-            Type type = new TypeToken<Map<String, Town>>() {}.getType();
-            Map<String, Town> loaded = loadFromFile(townsFile, type);
-            if (loaded != null) towns.putAll(loaded);
+        TerritoryState loadedState = new TerritoryState();
+
+        boolean legacy = false;
+        Path nationsDir = dataDir.resolve(NATIONS_DIR);
+        if (Files.isDirectory(nationsDir)) {
+            loadEntities(nationsDir, Nation.class, loadedState::addNation);
+        } else {
+            legacy |= loadLegacyEntities(dataDir.resolve(LEGACY_NATIONS_FILE).toFile(),
+                    new TypeToken<Map<String, Nation>>() {}.getType(), loadedState::addNation);
         }
 
-        File chunksFile = dataDir.resolve("chunks.json").toFile();
-        if (chunksFile.exists()) {
-            Type type = new TypeToken<Map<String, ClaimedChunk>>() {}.getType();
-            Map<String, ClaimedChunk> loaded = loadFromFile(chunksFile, type);
-            if (loaded != null) claimedChunks.putAll(loaded);
+        Path townsDir = dataDir.resolve(TOWNS_DIR);
+        if (Files.isDirectory(townsDir)) {
+            loadEntities(townsDir, Town.class, loadedState::addTown);
+        } else {
+            legacy |= loadLegacyEntities(dataDir.resolve(LEGACY_TOWNS_FILE).toFile(),
+                    new TypeToken<Map<String, Town>>() {}.getType(), loadedState::addTown);
         }
 
+        legacy |= loadClaims(dataDir, loadedState);
+
+        // Прочитанное совпадает с диском; перенесённое из старых файлов пишется заново целиком
+        loadedState.markAllClean();
+        if (legacy) loadedState.markAllDirty();
+        loadedState.verifyChunkCounters();
+        loadedState.rebuildRelations();
+
+        boolean hasJournalId = false;
+        long journalSeq = 0;
         File metaFile = dataDir.resolve("meta.json").toFile();
         if (metaFile.exists()) {
             Type type = new TypeToken<Map<String, String>>() {}.getType();
@@ -152,21 +532,313 @@ public class DataManager {
             if (meta != null && meta.containsKey("activeWorld")) {
                 String w = meta.get("activeWorld");
                 if (w != null && !w.isEmpty()) {
-                    activeWorldName = w;
+                    loadedState.setActiveWorldName(w);
+                }
+            }
+            if (meta != null && meta.containsKey("journalId")) {
+                try {
+                    loadedState.setJournalId(Long.parseLong(meta.get("journalId")));
+                    journalSeq = Long.parseLong(meta.getOrDefault("journalSeq", "0"));
+                    hasJournalId = true;
+                } catch (NumberFormatException e) {
+                    WarPoliticalMod.LOGGER.error("meta.json: неверный journalId, журнал пропущен");
                 }
             }
         }
+        savedMetaJson = legacy ? null : metaJson(loadedState, journalSeq);
+
+        // Снимок без journalId (старый формат) с журналом не связан
+        List<ChangeJournal.Record> recovered = hasJournalId
+                ? ChangeJournal.read(dataDir.resolve(JOURNAL_FILE), loadedState.getJournalId(), journalSeq)
+                : List.of();
+        if (!recovered.isEmpty()) {
+            loadedState = replayJournal(loadedState, recovered);
+            WarPoliticalMod.LOGGER.info("Журнал: повторено операций после снимка: {}", recovered.size());
+        }
+
+        publish(loadedState);
+        openJournal(dataDir, loadedState, journalSeq, recovered);
+        claimsSeq = journalSeq;
+        claimsSavedAt = System.nanoTime();
+
+        if (legacy) {
+            migrateLegacyFiles(dataDir);
+        } else if (!recovered.isEmpty() || !hasJournalId) {
+            write(snapshot());
+        }
 
         WarPoliticalMod.LOGGER.info("Загружено: {} наций, {} городов, {} чанков",
-                nations.size(), towns.size(), claimedChunks.size());
+                loadedState.getNations().size(), loadedState.getTowns().size(),
+                loadedState.getClaimedChunkCount());
+    }
+
+    // ═══════════════════════════════════════
+    //  ФАЙЛЫ НАЦИЙ И ГОРОДОВ
+    // ═══════════════════════════════════════
+
+    // id → имя файла: латиница, цифры и _-. как есть, остальное — ~XXXX (код символа).
+    // Только ASCII: при кодировке ФС не UTF-8 (LANG=C) кириллица в имени файла не проходит.
+    static String entityFileName(String id) {
+        StringBuilder name = new StringBuilder(id.length() + 5);
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '_' || c == '-' || c == '.') {
+                name.append(c);
+            } else {
+                name.append('~').append(String.format("%04x", (int) c));
+            }
+        }
+        return name.append(".json").toString();
+    }
+
+    private <T> void loadEntities(Path dir, Class<T> type, Consumer<T> sink) {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.json")) {
+            stream.forEach(files::add);
+        } catch (IOException e) {
+            WarPoliticalMod.LOGGER.error("Ошибка чтения {}: {}", dir.getFileName(), e.getMessage());
+            return;
+        }
+        Collections.sort(files);
+
+        for (Path file : files) {
+            T entity = loadFromFile(file.toFile(), type);
+            if (entity != null) {
+                sink.accept(entity);
+                continue;
+            }
+            // Нечитаемый файл откладывается, иначе уборка удалит его при следующем сохранении
+            try {
+                Files.move(file, file.resolveSibling(file.getFileName() + ".broken"),
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                WarPoliticalMod.LOGGER.error("{} не отложен: {}", file.getFileName(), e.getMessage());
+            }
+        }
+    }
+
+    private <T> boolean loadLegacyEntities(File file, Type type, Consumer<T> sink) {
+        if (!file.exists()) return false;
+        Map<String, T> loaded = loadFromFile(file, type);
+        if (loaded != null) loaded.values().forEach(sink);
+        return true;
+    }
+
+    // Удаляет файлы сущностей, которых больше нет в состоянии
+    private boolean removeStale(Path dir, Set<String> liveIds) {
+        Set<String> live = new HashSet<>();
+        for (String id : liveIds) {
+            live.add(entityFileName(id));
+        }
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.json")) {
+            for (Path file : stream) {
+                if (!live.contains(file.getFileName().toString())) Files.delete(file);
+            }
+            return true;
+        } catch (IOException e) {
+            WarPoliticalMod.LOGGER.error("Ошибка уборки {}: {}", dir.getFileName(), e.getMessage());
+            return false;
+        }
+    }
+
+    // Одноразовый перенос со старых общих файлов: всё пишется в новом виде,
+    // старые файлы переименовываются в *.migrated
+    private void migrateLegacyFiles(Path dataDir) {
+        if (!write(snapshot())) {
+            WarPoliticalMod.LOGGER.error("Перенос данных не удался, старые файлы оставлены");
+            return;
+        }
+
+        for (String legacyFile : new String[]{LEGACY_NATIONS_FILE, LEGACY_TOWNS_FILE, CLAIMS_JSON_FILE}) {
+            Path file = dataDir.resolve(legacyFile);
+            if (!Files.exists(file)) continue;
+            try {
+                Files.move(file, dataDir.resolve(legacyFile + ".migrated"),
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                WarPoliticalMod.LOGGER.error("{} не переименован: {}", legacyFile, e.getMessage());
+            }
+        }
+        WarPoliticalMod.LOGGER.info("Данные перенесены в {}/, {}/ и {}", NATIONS_DIR, TOWNS_DIR, CLAIMS_FILE);
+    }
+
+    // journalSeq — номер последней операции журнала, вошедшей в chunks.bin
+    private String metaJson(TerritoryState source, long journalSeq) {
+        Map<String, String> meta = new HashMap<>();
+        String activeWorldName = source.getActiveWorldName();
+        meta.put("activeWorld", activeWorldName != null ? activeWorldName : "");
+        meta.put("journalId", Long.toString(source.getJournalId()));
+        meta.put("journalSeq", Long.toString(journalSeq));
+        return gson.toJson(meta);
+    }
+
+    // ═══════════════════════════════════════
+    //  ЖУРНАЛ
+    // ═══════════════════════════════════════
+
+    // recovered — уже повторённые операции; остаются в журнале до следующего снимка
+    private void openJournal(Path dataDir, TerritoryState owner, long journalSeq,
+                             List<ChangeJournal.Record> recovered) {
+        journal = new ChangeJournal(dataDir.resolve(JOURNAL_FILE), owner.getJournalId(), journalSeq, recovered);
+    }
+
+    private void closeJournal() {
+        ChangeJournal current = journal;
+        journal = null;
+        if (current != null) current.close();
+    }
+
+    // Остановка сервера: после последнего сохранения
+    public void close() {
+        closeJournal();
+    }
+
+    // Операции журнала задают итоговое значение (клейм за городом, житель есть, PVP вкл.),
+    // поэтому повтор поверх снимка, который уже частично их содержит, даёт то же состояние.
+    // CLEAR заменяет состояние пустым с тем же id журнала.
+    private static TerritoryState replayJournal(TerritoryState target, List<ChangeJournal.Record> records) {
+        for (ChangeJournal.Record record : records) {
+            switch (record.op) {
+                case CLAIM -> target.claimChunk(record.x, record.z, record.world, record.first);
+                case UNCLAIM -> target.unclaimChunk(record.x, record.z, record.world);
+                case CLAIMS_CLEAR -> target.importClaimedChunks(List.of());
+                case CLEAR -> {
+                    TerritoryState cleared = new TerritoryState();
+                    cleared.setJournalId(target.getJournalId());
+                    target = cleared;
+                }
+                case RESIDENT_ADD, RESIDENT_REMOVE, TOWN_PVP, TOWN_EXPLOSIONS -> {
+                    Town town = target.getTown(record.first);
+                    if (town == null) continue;
+                    switch (record.op) {
+                        case RESIDENT_ADD -> town.addResident(record.second);
+                        case RESIDENT_REMOVE -> town.removeResident(record.second);
+                        case TOWN_PVP -> town.setPvpEnabled(record.flag);
+                        default -> town.setExplosionsEnabled(record.flag);
+                    }
+                }
+                case WAR, PEACE, ALLIANCE -> {
+                    Nation n1 = target.getNation(record.first);
+                    Nation n2 = target.getNation(record.second);
+                    if (n1 == null || n2 == null) continue;
+                    switch (record.op) {
+                        case WAR -> target.declareWar(n1, n2);
+                        case PEACE -> target.makePeace(n1, n2);
+                        default -> target.makeAlliance(n1, n2);
+                    }
+                }
+            }
+        }
+        target.verifyChunkCounters();
+        return target;
+    }
+
+    // ═══════════════════════════════════════
+    //  КЛЕЙМЫ: chunks.bin / chunks.json
+    // ═══════════════════════════════════════
+
+    // true — клеймы взяты из старого chunks.json и их нужно перенести в chunks.bin
+    private boolean loadClaims(Path dataDir, TerritoryState target) {
+        Path binary = dataDir.resolve(CLAIMS_FILE);
+        if (Files.exists(binary)) {
+            try {
+                if (ClaimFile.read(binary, target)) return false;
+                WarPoliticalMod.LOGGER.error("{}: неизвестный формат", CLAIMS_FILE);
+            } catch (IOException e) {
+                WarPoliticalMod.LOGGER.error("Ошибка загрузки {}: {}", CLAIMS_FILE, e.getMessage());
+            }
+            // Повреждённый файл откладывается, иначе его перезапишет следующее сохранение
+            try {
+                Files.move(binary, dataDir.resolve(CLAIMS_FILE + ".broken"),
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                WarPoliticalMod.LOGGER.error("{} не отложен: {}", CLAIMS_FILE, e.getMessage());
+            }
+            target.importClaimedChunks(List.of());
+            return false;
+        }
+
+        return importClaimsJson(dataDir.resolve(CLAIMS_JSON_FILE).toFile(), target) >= 0;
+    }
+
+    // Выгрузка клеймов в читаемый data/chunks.json — для правки руками и внешних инструментов
+    public Path exportClaimsJson() {
+        Path dataDir = configDir.resolve("data");
+        dataDir.toFile().mkdirs();
+        Path file = dataDir.resolve(CLAIMS_JSON_FILE);
+        saveToFile(file.toFile(), exportClaimedChunks(state));
+        return file;
+    }
+
+    // Замена клеймов текущего состояния содержимым data/chunks.json; -1 — файла нет или он не прочитан.
+    // Как publish(): журнал не повторяет мир по записи на чанк (десятки МБ в памяти и
+    // на диске до уплотнения), а начинается заново с новым id после полного снимка.
+    // Снимок пишется сразу в потоке сервера — фоновая запись должна быть дождана
+    // (SaveService.discardPending). Если снимок записался не весь, meta.json со старым
+    // id не увидит новый журнал, а следующее сохранение будет полным.
+    public int importClaimsJson() {
+        TerritoryState current = state;
+        File file = configDir.resolve("data").resolve(CLAIMS_JSON_FILE).toFile();
+        int imported = importClaimsJson(file, current);
+        if (imported < 0) return -1;
+
+        current.verifyChunkCounters();
+        current.setJournalId(ThreadLocalRandom.current().nextLong());
+        territorySnapshot = TerritorySnapshot.of(current, territorySnapshot.getVersion() + 1);
+
+        requestFullSave();
+        write(snapshot());
+        ChangeJournal currentJournal = journal;
+        if (currentJournal != null) currentJournal.reset(current.getJournalId());
+        fireReset();
+        return imported;
+    }
+
+    private int importClaimsJson(File file, TerritoryState target) {
+        if (!file.exists()) return -1;
+        Type type = new TypeToken<Map<String, ClaimedChunk>>() {}.getType();
+        Map<String, ClaimedChunk> loaded = loadFromFile(file, type);
+        if (loaded == null) return -1;
+        target.importClaimedChunks(loaded.values());
+        return loaded.size();
+    }
+
+    // Объекты ClaimedChunk создаются только на время записи chunks.json
+    private Map<String, ClaimedChunk> exportClaimedChunks(TerritoryState source) {
+        Map<String, ClaimedChunk> result = new HashMap<>();
+        OrdinalRegistry registry = source.getRegistry();
+        for (Map.Entry<String, ChunkOwnership> entry : source.getChunkIndexes().entrySet()) {
+            String world = entry.getKey();
+            entry.getValue().forEach((cx, cz, owner) -> {
+                ClaimedChunk chunk = new ClaimedChunk(cx, cz, world, registry.townId(owner));
+                result.put(chunk.getKey(), chunk);
+            });
+        }
+        return result;
+    }
+
+    private static String[] townIds(OrdinalRegistry registry) {
+        String[] ids = new String[registry.townCount()];
+        for (int ordinal = 0; ordinal < ids.length; ordinal++) {
+            ids[ordinal] = registry.townId(ordinal);
+        }
+        return ids;
     }
 
     private void saveToFile(File file, Object data) {
-        try (Writer writer = new FileWriter(file)) {
-            gson.toJson(data, writer);
+        writeFile(file.toPath(), gson.toJson(data));
+    }
+
+    private boolean writeFile(Path file, String json) {
+        try {
+            AtomicFiles.writeString(file, json);
+            return true;
         } catch (IOException e) {
             WarPoliticalMod.LOGGER.error("Ошибка сохранения {}: {}",
-                    file.getName(), e.getMessage());
+                    file.getFileName(), e.getMessage());
+            return false;
         }
     }
 
@@ -179,4 +851,33 @@ public class DataManager {
             return null;
         }
     }
+
+    // Неизменяемый снимок для записи на диск; null в полях — раздел не менялся
+    static final class Snapshot {
+        final Map<String, String> nationFiles;
+        final Map<String, String> townFiles;
+        final Set<String> nationIds;
+        final Set<String> townIds;
+        final String metaJson;
+        final String[] claimTownIds;
+        final Map<String, ChunkOwnership> claims;
+        final long journalSeq;
+
+        Snapshot(Map<String, String> nationFiles, Map<String, String> townFiles,
+                 Set<String> nationIds, Set<String> townIds, String metaJson,
+                 String[] claimTownIds, Map<String, ChunkOwnership> claims, long journalSeq) {
+            this.nationFiles = nationFiles;
+            this.townFiles = townFiles;
+            this.nationIds = nationIds;
+            this.townIds = townIds;
+            this.metaJson = metaJson;
+            this.claimTownIds = claimTownIds;
+            this.claims = claims;
+            this.journalSeq = journalSeq;
+        }
+
+        boolean isEmpty() {
+            return nationFiles.isEmpty() && townFiles.isEmpty() && metaJson == null && claims == null;
+        }
+    }
 }
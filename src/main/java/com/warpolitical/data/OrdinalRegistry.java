@@ -0,0 +1,91 @@
+package com.warpolitical.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Плотные целочисленные id для наций и городов. Ординал выдаётся один раз и не
+// переиспользуется до clear(), поэтому его можно хранить в индексах и таблицах.
+public class OrdinalRegistry {
+
+    public static final int NONE = -1;
+
+    private final Map<String, Integer> townOrdinals = new ConcurrentHashMap<>();
+    private final Map<String, Integer> nationOrdinals = new ConcurrentHashMap<>();
+    private final List<String> townIds = new ArrayList<>();
+    private final List<String> nationIds = new ArrayList<>();
+
+    // Ординал города → ординал его нации
+    private int[] townNations = new int[16];
+
+    public synchronized int townOrdinal(String townId) {
+        Integer ordinal = townOrdinals.get(townId);
+        if (ordinal != null) return ordinal;
+
+        int next = townIds.size();
+        townIds.add(townId);
+        if (next == townNations.length) {
+            townNations = Arrays.copyOf(townNations, next << 1);
+        }
+        townNations[next] = NONE;
+        townOrdinals.put(townId, next);
+        return next;
+    }
+
+    public synchronized int nationOrdinal(String nationId) {
+        Integer ordinal = nationOrdinals.get(nationId);
+        if (ordinal != null) return ordinal;
+
+        int next = nationIds.size();
+        nationIds.add(nationId);
+        nationOrdinals.put(nationId, next);
+        return next;
+    }
+
+    public int findTown(String townId) {
+        if (townId == null) return NONE;
+        Integer ordinal = townOrdinals.get(townId);
+        return ordinal != null ? ordinal : NONE;
+    }
+
+    public int findNation(String nationId) {
+        if (nationId == null) return NONE;
+        Integer ordinal = nationOrdinals.get(nationId);
+        return ordinal != null ? ordinal : NONE;
+    }
+
+    public synchronized String townId(int ordinal) {
+        return ordinal >= 0 && ordinal < townIds.size() ? townIds.get(ordinal) : null;
+    }
+
+    public synchronized String nationId(int ordinal) {
+        return ordinal >= 0 && ordinal < nationIds.size() ? nationIds.get(ordinal) : null;
+    }
+
+    public synchronized void bindTown(int townOrdinal, int nationOrdinal) {
+        townNations[townOrdinal] = nationOrdinal;
+    }
+
+    public int nationOfTown(int townOrdinal) {
+        int[] table = townNations;
+        return townOrdinal >= 0 && townOrdinal < table.length ? table[townOrdinal] : NONE;
+    }
+
+    public synchronized int townCount() {
+        return townIds.size();
+    }
+
+    public synchronized int nationCount() {
+        return nationIds.size();
+    }
+
+    public synchronized void clear() {
+        townOrdinals.clear();
+        nationOrdinals.clear();
+        townIds.clear();
+        nationIds.clear();
+        Arrays.fill(townNations, NONE);
+    }
+}
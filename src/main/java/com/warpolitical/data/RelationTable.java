@@ -0,0 +1,86 @@
+package com.warpolitical.data;
+
+import java.util.Arrays;
+
+// Симметричные отношения между нациями по ординалам: строка битсета на каждую нацию.
+// Проверка "в войне / в союзе" — один битовый тест без аллокаций.
+public class RelationTable {
+
+    private volatile long[][] wars = new long[0][];
+    private volatile long[][] alliances = new long[0][];
+
+    public boolean atWar(int a, int b) {
+        return test(wars, a, b);
+    }
+
+    public boolean allied(int a, int b) {
+        return test(alliances, a, b);
+    }
+
+    public synchronized void setWar(int a, int b, boolean value) {
+        wars = set(wars, a, b, value);
+    }
+
+    public synchronized void setAlliance(int a, int b, boolean value) {
+        alliances = set(alliances, a, b, value);
+    }
+
+    public synchronized void clear() {
+        wars = new long[0][];
+        alliances = new long[0][];
+    }
+
+    // Глубокая копия для снимка: строки битсетов меняются на месте
+    public synchronized RelationTable copy() {
+        RelationTable copy = new RelationTable();
+        copy.wars = copyRows(wars);
+        copy.alliances = copyRows(alliances);
+        return copy;
+    }
+
+    private static long[][] copyRows(long[][] table) {
+        long[][] copy = new long[table.length][];
+        for (int i = 0; i < table.length; i++) {
+            copy[i] = table[i].clone();
+        }
+        return copy;
+    }
+
+    private static boolean test(long[][] table, int a, int b) {
+        if (a < 0 || b < 0 || a >= table.length) return false;
+        long[] row = table[a];
+        int word = b >>> 6;
+        return word < row.length && (row[word] & (1L << b)) != 0;
+    }
+
+    private static long[][] set(long[][] table, int a, int b, boolean value) {
+        if (a < 0 || b < 0) return table;
+        int needed = Math.max(a, b) + 1;
+        if (needed > table.length) {
+            table = grow(table, needed);
+        }
+        setBit(table[a], b, value);
+        setBit(table[b], a, value);
+        return table;
+    }
+
+    private static long[][] grow(long[][] table, int size) {
+        int capacity = Math.max(size, table.length << 1);
+        int words = (capacity + 63) >>> 6;
+        long[][] grown = new long[capacity][];
+        for (int i = 0; i < capacity; i++) {
+            grown[i] = i < table.length
+                    ? Arrays.copyOf(table[i], words)
+                    : new long[words];
+        }
+        return grown;
+    }
+
+    private static void setBit(long[] row, int bit, boolean value) {
+        if (value) {
+            row[bit >>> 6] |= 1L << bit;
+        } else {
+            row[bit >>> 6] &= ~(1L << bit);
+        }
+    }
+}
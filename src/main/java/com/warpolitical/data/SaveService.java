@@ -0,0 +1,102 @@
+package com.warpolitical.data;
+
+import com.warpolitical.WarPoliticalMod;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Фоновое сохранение. Команды только отмечают изменения через requestSave();
+// раз в тик сервис проверяет, не пора ли писать. Всё, что пришло за COALESCE_NANOS
+// после первого запроса, уходит одной записью. Снимок снимается в потоке сервера,
+// файлы пишутся в потоке WPE-Save. Пока идёт запись, новые запросы копятся до следующей.
+public class SaveService {
+
+    private static final long COALESCE_NANOS = TimeUnit.SECONDS.toNanos(2);
+    private static final long NO_REQUEST = -1;
+
+    private final DataManager dataManager;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "WPE-Save");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Время первого несохранённого запроса или NO_REQUEST
+    private final AtomicLong requestedAt = new AtomicLong(NO_REQUEST);
+    private CompletableFuture<Void> inFlight = CompletableFuture.completedFuture(null);
+    // Между persist() и resume(): на диске новое состояние, в памяти ещё старое
+    private volatile boolean suspended;
+
+    public SaveService(DataManager dataManager) {
+        this.dataManager = dataManager;
+    }
+
+    public void requestSave() {
+        requestedAt.compareAndSet(NO_REQUEST, System.nanoTime());
+    }
+
+    public boolean isDirty() {
+        return requestedAt.get() != NO_REQUEST;
+    }
+
+    // Вызывается в конце каждого тика сервера
+    public void tick() {
+        long since = requestedAt.get();
+        if (since == NO_REQUEST) return;
+        if (System.nanoTime() - since < COALESCE_NANOS) return;
+        if (!inFlight.isDone() || suspended) return;
+
+        requestedAt.set(NO_REQUEST);
+        DataManager.Snapshot snapshot = dataManager.snapshot();
+        inFlight = CompletableFuture.runAsync(() -> dataManager.write(snapshot), executor)
+                .exceptionally(error -> {
+                    WarPoliticalMod.LOGGER.error("Ошибка фонового сохранения", error);
+                    return null;
+                });
+    }
+
+    // Новое состояние (загрузка сценария) пишется целиком до публикации: журнал
+    // старого состояния при публикации сбрасывается, и без снимка падение сразу после
+    // неё вернуло бы старое. Фоновые сохранения старого до resume() не идут.
+    // true — записано без ошибок.
+    public CompletableFuture<Boolean> persist(TerritoryState next) {
+        suspended = true;
+        CompletableFuture<Boolean> written = inFlight.thenApplyAsync(
+                ignored -> dataManager.write(dataManager.snapshot(next)), executor);
+        inFlight = written.handle((ok, error) -> {
+            if (error != null) WarPoliticalMod.LOGGER.error("Ошибка записи нового состояния", error);
+            return null;
+        });
+        return written;
+    }
+
+    // После persist(): published == false — загрузка прервана, и на диске чужое
+    // состояние; следующее сохранение перепишет текущее целиком
+    public void resume(boolean published) {
+        if (!published) dataManager.requestFullSave();
+        suspended = false;
+    }
+
+    // Дожидается текущей записи и синхронно пишет актуальное состояние
+    public void flush() {
+        inFlight.join();
+        if (suspended) resume(false);
+        requestedAt.set(NO_REQUEST);
+        dataManager.saveAll();
+    }
+
+    // Перед перечитыванием файлов: дождаться записи и забыть несохранённый запрос,
+    // чтобы правки на диске не затёрлись
+    public void discardPending() {
+        inFlight.join();
+        requestedAt.set(NO_REQUEST);
+    }
+
+    public void shutdown() {
+        flush();
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,276 @@
+package com.warpolitical.data;
+
+import java.util.Arrays;
+
+// Неизменяемое владение чанками одного мира для TerritorySnapshot. Мир разбит на тайлы
+// 32x32 чанка, тайлы — на регионы 32x32 тайла. Изменение одного чанка копирует только
+// его тайл, массив ссылок его региона и список регионов; остальные тайлы общие
+// с предыдущим снимком. Клейм стоит O(регионов + размер тайла), а не O(мира).
+final class SnapshotClaims {
+
+    private static final int TILE_SHIFT = TiledChunkOwnership.TILE_SHIFT;
+    private static final int TILE_MASK = (1 << TILE_SHIFT) - 1;
+    private static final int TILE_AREA = 1 << (TILE_SHIFT * 2);
+    private static final int REGION_SHIFT = 5;
+    private static final int REGION_MASK = (1 << REGION_SHIFT) - 1;
+    private static final int REGION_AREA = 1 << (REGION_SHIFT * 2);
+
+    // Тайл до стольких чанков хранится списком, больше — массивом на все клетки.
+    // Обратно в список — при вдвое меньшем числе, чтобы не переключаться на каждом клейме
+    private static final int SPARSE_MAX = 64;
+
+    static final SnapshotClaims EMPTY = new SnapshotClaims(new ChunkOwnershipIndex(), new Tile[0][], 0);
+
+    // Регион (regionX, regionZ) → номер в regions; пустые тайлы — null
+    private final ChunkOwnershipIndex regionSlots;
+    private final Tile[][] regions;
+    private final int size;
+
+    private SnapshotClaims(ChunkOwnershipIndex regionSlots, Tile[][] regions, int size) {
+        this.regionSlots = regionSlots;
+        this.regions = regions;
+        this.size = size;
+    }
+
+    // Полная сборка — после подмены состояния и массовых изменений клеймов
+    static SnapshotClaims of(ChunkOwnership source) {
+        if (source.isEmpty()) return EMPTY;
+
+        // Первый проход — число чанков в каждом тайле, чтобы сразу выбрать вид тайла
+        ChunkOwnershipIndex tileSlots = new ChunkOwnershipIndex();
+        int[][] counts = {new int[16]};
+        int[] tileCount = {0};
+        source.forEach((chunkX, chunkZ, owner) -> {
+            int tileX = chunkX >> TILE_SHIFT;
+            int tileZ = chunkZ >> TILE_SHIFT;
+            int slot = tileSlots.get(tileX, tileZ);
+            if (slot == ChunkOwnership.NONE) {
+                slot = tileCount[0]++;
+                if (slot == counts[0].length) counts[0] = Arrays.copyOf(counts[0], slot << 1);
+                tileSlots.put(tileX, tileZ, slot);
+            }
+            counts[0][slot]++;
+        });
+
+        int[][] dense = new int[tileCount[0]][];
+        long[][] sparse = new long[tileCount[0]][];
+        int[] filled = new int[tileCount[0]];
+        source.forEach((chunkX, chunkZ, owner) -> {
+            int slot = tileSlots.get(chunkX >> TILE_SHIFT, chunkZ >> TILE_SHIFT);
+            int cell = cellIndex(chunkX, chunkZ);
+            if (counts[0][slot] > SPARSE_MAX) {
+                if (dense[slot] == null) dense[slot] = new int[TILE_AREA];
+                dense[slot][cell] = owner + 1;
+            } else {
+                if (sparse[slot] == null) sparse[slot] = new long[counts[0][slot]];
+                sparse[slot][filled[slot]++] = entry(cell, owner);
+            }
+        });
+
+        ChunkOwnershipIndex regionSlots = new ChunkOwnershipIndex();
+        Tile[][][] grown = {new Tile[16][]};
+        int[] regionCount = {0};
+        tileSlots.forEach((tileX, tileZ, slot) -> {
+            int regionX = tileX >> REGION_SHIFT;
+            int regionZ = tileZ >> REGION_SHIFT;
+            int region = regionSlots.get(regionX, regionZ);
+            if (region == ChunkOwnership.NONE) {
+                region = regionCount[0]++;
+                if (region == grown[0].length) grown[0] = Arrays.copyOf(grown[0], region << 1);
+                grown[0][region] = new Tile[REGION_AREA];
+                regionSlots.put(regionX, regionZ, region);
+            }
+            Tile tile;
+            if (dense[slot] != null) {
+                tile = new Tile(dense[slot], null, counts[0][slot]);
+            } else {
+                Arrays.sort(sparse[slot]);
+                tile = new Tile(null, sparse[slot], counts[0][slot]);
+            }
+            grown[0][region][tileIndex(tileX, tileZ)] = tile;
+        });
+
+        return new SnapshotClaims(regionSlots, Arrays.copyOf(grown[0], regionCount[0]), source.size());
+    }
+
+    int get(int chunkX, int chunkZ) {
+        int tileX = chunkX >> TILE_SHIFT;
+        int tileZ = chunkZ >> TILE_SHIFT;
+        int region = regionSlots.get(tileX >> REGION_SHIFT, tileZ >> REGION_SHIFT);
+        if (region == ChunkOwnership.NONE) return ChunkOwnership.NONE;
+        Tile tile = regions[region][tileIndex(tileX, tileZ)];
+        return tile != null ? tile.get(cellIndex(chunkX, chunkZ)) : ChunkOwnership.NONE;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Следующий снимок мира: чанк получает owner, NONE — освобождается.
+    // Тот же объект, если владелец не поменялся
+    SnapshotClaims with(int chunkX, int chunkZ, int owner) {
+        int tileX = chunkX >> TILE_SHIFT;
+        int tileZ = chunkZ >> TILE_SHIFT;
+        int regionX = tileX >> REGION_SHIFT;
+        int regionZ = tileZ >> REGION_SHIFT;
+        int cell = cellIndex(chunkX, chunkZ);
+        int tileIndex = tileIndex(tileX, tileZ);
+
+        int region = regionSlots.get(regionX, regionZ);
+        Tile tile = region != ChunkOwnership.NONE ? regions[region][tileIndex] : null;
+        int prev = tile != null ? tile.get(cell) : ChunkOwnership.NONE;
+        if (prev == owner) return this;
+
+        Tile nextTile = tile != null ? tile.with(cell, prev, owner)
+                : new Tile(null, new long[]{entry(cell, owner)}, 1);
+
+        ChunkOwnershipIndex nextSlots = regionSlots;
+        Tile[][] nextRegions;
+        Tile[] nextRegion;
+        if (region == ChunkOwnership.NONE) {
+            region = regions.length;
+            nextSlots = regionSlots.copy();
+            nextSlots.put(regionX, regionZ, region);
+            nextRegions = Arrays.copyOf(regions, region + 1);
+            nextRegion = new Tile[REGION_AREA];
+        } else {
+            nextRegions = regions.clone();
+            nextRegion = regions[region].clone();
+        }
+        nextRegion[tileIndex] = nextTile;
+        nextRegions[region] = nextRegion;
+
+        int nextSize = size + (prev == ChunkOwnership.NONE ? 1 : 0) - (owner == ChunkOwnership.NONE ? 1 : 0);
+        return new SnapshotClaims(nextSlots, nextRegions, nextSize);
+    }
+
+    void forEach(ChunkOwnership.ChunkOwnerConsumer consumer) {
+        regionSlots.forEach((regionX, regionZ, region) -> {
+            Tile[] tiles = regions[region];
+            for (int i = 0; i < REGION_AREA; i++) {
+                Tile tile = tiles[i];
+                if (tile == null) continue;
+                int baseX = ((regionX << REGION_SHIFT) + (i & REGION_MASK)) << TILE_SHIFT;
+                int baseZ = ((regionZ << REGION_SHIFT) + (i >> REGION_SHIFT)) << TILE_SHIFT;
+                tile.forEach(baseX, baseZ, consumer);
+            }
+        });
+    }
+
+    private static int tileIndex(int tileX, int tileZ) {
+        return ((tileZ & REGION_MASK) << REGION_SHIFT) | (tileX & REGION_MASK);
+    }
+
+    private static int cellIndex(int chunkX, int chunkZ) {
+        return ((chunkZ & TILE_MASK) << TILE_SHIFT) | (chunkX & TILE_MASK);
+    }
+
+    // Клетка в старших битах — список по возрастанию клеток сортируется как long
+    private static long entry(int cell, int owner) {
+        return ((long) cell << 32) | (owner & 0xFFFFFFFFL);
+    }
+
+    // ═══════════════════════════════════════
+    //  ТАЙЛ
+    // ═══════════════════════════════════════
+
+    // Не меняется после создания: with() возвращает новый тайл
+    private static final class Tile {
+        // owner + 1 по клеткам, ноль — свободный чанк
+        private final int[] dense;
+        // Если dense == null: entry(клетка, owner) по возрастанию клеток
+        private final long[] sparse;
+        private final int count;
+
+        private Tile(int[] dense, long[] sparse, int count) {
+            this.dense = dense;
+            this.sparse = sparse;
+            this.count = count;
+        }
+
+        int get(int cell) {
+            if (dense != null) return dense[cell] - 1;
+            int i = find(cell);
+            return i >= 0 ? (int) sparse[i] : ChunkOwnership.NONE;
+        }
+
+        // prev — текущий владелец клетки, отличается от owner; null — тайл опустел
+        Tile with(int cell, int prev, int owner) {
+            int next = count + (prev == ChunkOwnership.NONE ? 1 : 0) - (owner == ChunkOwnership.NONE ? 1 : 0);
+            if (next == 0) return null;
+
+            if (dense != null) {
+                int[] cells = dense.clone();
+                cells[cell] = owner + 1;
+                return next < SPARSE_MAX / 2 ? new Tile(null, toSparse(cells, next), next)
+                        : new Tile(cells, null, next);
+            }
+
+            long[] entries = new long[next];
+            int i = find(cell);
+            if (i >= 0 && owner != ChunkOwnership.NONE) {
+                System.arraycopy(sparse, 0, entries, 0, count);
+                entries[i] = entry(cell, owner);
+            } else if (i >= 0) {
+                System.arraycopy(sparse, 0, entries, 0, i);
+                System.arraycopy(sparse, i + 1, entries, i, count - i - 1);
+            } else {
+                int at = -i - 1;
+                System.arraycopy(sparse, 0, entries, 0, at);
+                entries[at] = entry(cell, owner);
+                System.arraycopy(sparse, at, entries, at + 1, count - at);
+            }
+            return next > SPARSE_MAX ? new Tile(toDense(entries), null, next) : new Tile(null, entries, next);
+        }
+
+        void forEach(int baseX, int baseZ, ChunkOwnership.ChunkOwnerConsumer consumer) {
+            if (dense != null) {
+                for (int cell = 0; cell < TILE_AREA; cell++) {
+                    if (dense[cell] != 0) {
+                        consumer.accept(baseX + (cell & TILE_MASK), baseZ + (cell >> TILE_SHIFT), dense[cell] - 1);
+                    }
+                }
+                return;
+            }
+            for (long entry : sparse) {
+                int cell = (int) (entry >>> 32);
+                consumer.accept(baseX + (cell & TILE_MASK), baseZ + (cell >> TILE_SHIFT), (int) entry);
+            }
+        }
+
+        // Индекс клетки в sparse или -(место вставки) - 1, как Arrays.binarySearch
+        private int find(int cell) {
+            int lo = 0;
+            int hi = count - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int midCell = (int) (sparse[mid] >>> 32);
+                if (midCell < cell) {
+                    lo = mid + 1;
+                } else if (midCell > cell) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(lo + 1);
+        }
+
+        private static long[] toSparse(int[] cells, int count) {
+            long[] entries = new long[count];
+            int n = 0;
+            for (int cell = 0; cell < TILE_AREA; cell++) {
+                if (cells[cell] != 0) entries[n++] = entry(cell, cells[cell] - 1);
+            }
+            return entries;
+        }
+
+        private static int[] toDense(long[] entries) {
+            int[] cells = new int[TILE_AREA];
+            for (long entry : entries) {
+                cells[(int) (entry >>> 32)] = (int) entry + 1;
+            }
+            return cells;
+        }
+    }
+}
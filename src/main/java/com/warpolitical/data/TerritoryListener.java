@@ -0,0 +1,19 @@
+package com.warpolitical.data;
+
+// Подписчик на изменения территорий (DataManager.addListener). Вызывается в потоке
+// сервера сразу после изменения, когда состояние и снимок уже обновлены.
+// Обработчик должен быть дешёвым: запомнить, что поменялось, и разобрать позже.
+public interface TerritoryListener {
+
+    // Чанк сменил владельца; previousTownId и townId — null для диких земель
+    void chunkChanged(String world, int chunkX, int chunkZ, String previousTownId, String townId);
+
+    // Город добавлен или поменялись его жители и флаги
+    void townChanged(String townId);
+
+    // Нация добавлена или поменялись её отношения и список городов
+    void nationChanged(String nationId);
+
+    // Состояние подменено целиком или клеймы перезагружены — по частям не восстановить
+    void territoryReset();
+}
@@ -0,0 +1,215 @@
+package com.warpolitical.data;
+
+import com.warpolitical.model.Nation;
+import com.warpolitical.model.Town;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Неизменяемый снимок территорий для защиты и уведомлений. DataManager собирает
+// новый снимок после каждого изменения и публикует его одной volatile-ссылкой:
+// читатель берёт ссылку один раз и без блокировок видит согласованное состояние.
+// Следующий снимок делит с предыдущим всё, что не поменялось: тайлы клеймов
+// (SnapshotClaims), представления городов и таблицу отношений.
+public final class TerritorySnapshot {
+
+    static final TerritorySnapshot EMPTY = new TerritorySnapshot(
+            0, null, Map.of(), new TownView[0], new RelationTable());
+
+    private final long version;
+    private final String activeWorldName;
+    // После сборки снимка не меняются; общие с соседними снимками
+    private final Map<String, SnapshotClaims> worlds;
+    // Клеймы мира сценария — защита читает их без поиска по имени
+    private final SnapshotClaims activeClaims;
+    // Города по ординалам
+    private final TownView[] towns;
+    private final RelationTable relations;
+
+    private TerritorySnapshot(long version, String activeWorldName, Map<String, SnapshotClaims> worlds,
+                              TownView[] towns, RelationTable relations) {
+        this.version = version;
+        this.activeWorldName = activeWorldName;
+        this.worlds = worlds;
+        this.activeClaims = activeWorldName != null ? worlds.get(activeWorldName) : null;
+        this.towns = towns;
+        this.relations = relations;
+    }
+
+    // Полный снимок — после подмены состояния и массовых изменений клеймов
+    static TerritorySnapshot of(TerritoryState state, long version) {
+        Map<String, SnapshotClaims> worlds = new HashMap<>();
+        for (Map.Entry<String, ChunkOwnership> entry : state.getChunkIndexes().entrySet()) {
+            worlds.put(entry.getKey(), SnapshotClaims.of(entry.getValue()));
+        }
+        OrdinalRegistry registry = state.getRegistry();
+        TownView[] views = new TownView[registry.townCount()];
+        for (Town town : state.getTowns().values()) {
+            putView(views, state, town);
+        }
+        return new TerritorySnapshot(version, state.getActiveWorldName(), worlds,
+                views, state.getRelations().copy());
+    }
+
+    // Чанк (chunkX, chunkZ) мира world получил владельца owner; NONE — освобождён
+    TerritorySnapshot withClaim(String world, int chunkX, int chunkZ, int owner) {
+        SnapshotClaims claims = worlds.getOrDefault(world, SnapshotClaims.EMPTY);
+        Map<String, SnapshotClaims> nextWorlds = new HashMap<>(worlds);
+        nextWorlds.put(world, claims.with(chunkX, chunkZ, owner));
+        return new TerritorySnapshot(version + 1, activeWorldName, nextWorlds, towns, relations);
+    }
+
+    // Поменялся один город: пересобирается только его представление
+    TerritorySnapshot withTown(TerritoryState state, String townId) {
+        TownView[] nextTowns = grownTowns(state);
+        Town town = state.getTown(townId);
+        if (town != null) putView(nextTowns, state, town);
+        return new TerritorySnapshot(version + 1, activeWorldName, worlds, nextTowns, relations);
+    }
+
+    // Поменялась нация: пересобираются представления её городов
+    TerritorySnapshot withNation(TerritoryState state, String nationId) {
+        TownView[] nextTowns = grownTowns(state);
+        for (Town town : state.getTowns().values()) {
+            if (nationId.equals(town.getNationId())) putView(nextTowns, state, town);
+        }
+        return new TerritorySnapshot(version + 1, activeWorldName, worlds, nextTowns, relations);
+    }
+
+    // Дипломатия: таблица отношений копируется только здесь
+    TerritorySnapshot withRelations(TerritoryState state) {
+        return new TerritorySnapshot(version + 1, activeWorldName, worlds, towns, state.getRelations().copy());
+    }
+
+    TerritorySnapshot withActiveWorld(String worldName) {
+        return new TerritorySnapshot(version + 1, worldName, worlds, towns, relations);
+    }
+
+    // Копия ссылок на представления; длина — по числу ординалов городов в реестре
+    private TownView[] grownTowns(TerritoryState state) {
+        return Arrays.copyOf(towns, Math.max(towns.length, state.getRegistry().townCount()));
+    }
+
+    private static void putView(TownView[] views, TerritoryState state, Town town) {
+        OrdinalRegistry registry = state.getRegistry();
+        int ordinal = registry.findTown(town.getId());
+        if (ordinal < 0 || ordinal >= views.length) return;
+        views[ordinal] = new TownView(town, state.getNation(town.getNationId()),
+                registry.findNation(town.getNationId()));
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public String getActiveWorldName() {
+        return activeWorldName;
+    }
+
+    public int getOwnerOrdinal(String world, int chunkX, int chunkZ) {
+        SnapshotClaims claims = world != null ? worlds.get(world) : null;
+        return claims != null ? claims.get(chunkX, chunkZ) : ChunkOwnership.NONE;
+    }
+
+    public int getActiveOwnerOrdinal(int chunkX, int chunkZ) {
+        return activeClaims != null ? activeClaims.get(chunkX, chunkZ) : ChunkOwnership.NONE;
+    }
+
+    public TownView getActiveTownAt(int chunkX, int chunkZ) {
+        return getTown(getActiveOwnerOrdinal(chunkX, chunkZ));
+    }
+
+    public int getActiveNationOrdinal(int chunkX, int chunkZ) {
+        TownView town = getActiveTownAt(chunkX, chunkZ);
+        return town != null ? town.nationOrdinal : OrdinalRegistry.NONE;
+    }
+
+    // Все клеймы мира сценария; порядок не определён
+    public void forEachActiveClaim(ChunkOwnership.ChunkOwnerConsumer consumer) {
+        if (activeClaims != null) activeClaims.forEach(consumer);
+    }
+
+    // Ординалы городов — от нуля до этого числа, без представления — null
+    public int getTownCount() {
+        return towns.length;
+    }
+
+    public TownView getTown(int townOrdinal) {
+        return townOrdinal >= 0 && townOrdinal < towns.length ? towns[townOrdinal] : null;
+    }
+
+    public TownView getTownAt(String world, int chunkX, int chunkZ) {
+        return getTown(getOwnerOrdinal(world, chunkX, chunkZ));
+    }
+
+    public boolean areTownsAtWar(int townA, int townB) {
+        TownView a = getTown(townA);
+        TownView b = getTown(townB);
+        return a != null && b != null && relations.atWar(a.nationOrdinal, b.nationOrdinal);
+    }
+
+    public boolean areTownsAllied(int townA, int townB) {
+        TownView a = getTown(townA);
+        TownView b = getTown(townB);
+        if (a == null || b == null) return false;
+        if (a.nationOrdinal != OrdinalRegistry.NONE && a.nationOrdinal == b.nationOrdinal) return true;
+        return relations.allied(a.nationOrdinal, b.nationOrdinal);
+    }
+
+    // Копия того, что нужно проверкам, из Town и его нации
+    public static final class TownView {
+        private final String id;
+        private final String name;
+        private final String nationId;
+        private final String nationName;
+        private final int nationOrdinal;
+        private final Set<String> residents;
+        private final boolean pvpEnabled;
+        private final boolean explosionsEnabled;
+
+        private TownView(Town town, Nation nation, int nationOrdinal) {
+            this.id = town.getId();
+            this.name = town.getName();
+            this.nationId = town.getNationId();
+            this.nationName = nation != null ? nation.getName() : "";
+            this.nationOrdinal = nationOrdinal;
+            this.residents = Set.copyOf(town.getResidents());
+            this.pvpEnabled = town.isPvpEnabled();
+            this.explosionsEnabled = town.isExplosionsEnabled();
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getNationId() {
+            return nationId;
+        }
+
+        public String getNationName() {
+            return nationName;
+        }
+
+        public int getNationOrdinal() {
+            return nationOrdinal;
+        }
+
+        public boolean isResident(String playerName) {
+            return residents.contains(playerName);
+        }
+
+        public boolean isPvpEnabled() {
+            return pvpEnabled;
+        }
+
+        public boolean isExplosionsEnabled() {
+            return explosionsEnabled;
+        }
+    }
+}
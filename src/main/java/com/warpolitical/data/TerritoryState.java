@@ -0,0 +1,422 @@
+package com.warpolitical.data;
+
+import com.warpolitical.WarPoliticalMod;
+import com.warpolitical.model.ClaimedChunk;
+import com.warpolitical.model.Nation;
+import com.warpolitical.model.Town;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Всё состояние территорий в памяти: нации, города, владение чанками, ординалы и отношения.
+// DataManager держит ссылку на текущее состояние; загрузка сценария собирает новое
+// состояние в фоне и подменяет им текущее одной записью (DataManager.publish).
+public class TerritoryState {
+
+    // Порог перехода на тайловое хранилище: минимум чанков и доля занятых ячеек в тайлах
+    private static final int DENSE_MIN_CHUNKS = 4096;
+    private static final double DENSE_TILE_FILL = 0.25;
+
+    private final Map<String, Nation> nations = new ConcurrentHashMap<>();
+    private final Map<String, Town> towns = new ConcurrentHashMap<>();
+    private volatile String activeWorldName = null;
+
+    // Хранилища владения по мирам, ординалы наций/городов и таблица отношений
+    private final Map<String, ChunkOwnership> chunkIndexes = new ConcurrentHashMap<>();
+    private final OrdinalRegistry registry = new OrdinalRegistry();
+    private final RelationTable relations = new RelationTable();
+    // Связные части территорий по мирам; строятся при первом запросе
+    private final Map<String, ComponentIndex> componentIndexes = new ConcurrentHashMap<>();
+
+    // Клеймы заменены целиком (новое состояние, импорт) — следующее сохранение перепишет
+    // chunks.bin. Отдельные клеймы и снятия сохраняет журнал, флаг они не трогают
+    private volatile boolean claimsDirty = true;
+    // Пара снимка и журнала изменений: журнал с другим id к состоянию не относится
+    private volatile long journalId = ThreadLocalRandom.current().nextLong();
+
+    public Map<String, Nation> getNations() {
+        return nations;
+    }
+
+    public Map<String, Town> getTowns() {
+        return towns;
+    }
+
+    public int getClaimedChunkCount() {
+        int total = 0;
+        for (ChunkOwnership index : chunkIndexes.values()) {
+            total += index.size();
+        }
+        return total;
+    }
+
+    public Nation getNation(String id) {
+        return id != null ? nations.get(id) : null;
+    }
+
+    public Town getTown(String id) {
+        return id != null ? towns.get(id) : null;
+    }
+
+    public void addNation(Nation nation) {
+        nations.put(nation.getId(), nation);
+        registry.nationOrdinal(nation.getId());
+    }
+
+    public void addTown(Town town) {
+        towns.put(town.getId(), town);
+        bindTown(town);
+    }
+
+    public OrdinalRegistry getRegistry() {
+        return registry;
+    }
+
+    public RelationTable getRelations() {
+        return relations;
+    }
+
+    public void claimChunk(int x, int z, String world, String townId) {
+        ChunkOwnership index = indexFor(world);
+        int ordinal = registry.townOrdinal(townId);
+        int previous = index.put(x, z, ordinal);
+        if (previous == ordinal) return;
+
+        ComponentIndex components = componentIndexes.get(world);
+        if (components != null) {
+            long packed = ClaimedChunk.pack(x, z);
+            if (previous != ChunkOwnership.NONE) components.remove(packed, previous);
+            components.add(packed, ordinal);
+        }
+
+        if (previous != ChunkOwnership.NONE) {
+            releaseChunk(previous);
+        }
+
+        Town town = towns.get(townId);
+        if (town != null) {
+            town.addChunk();
+            Nation nation = getNation(town.getNationId());
+            if (nation != null) nation.addChunk();
+        }
+
+        if (previous == ChunkOwnership.NONE) {
+            maybeSwitchToTiles(world, index);
+        }
+    }
+
+    public boolean unclaimChunk(int x, int z, String world) {
+        ChunkOwnership index = chunkIndexes.get(world);
+        if (index == null) return false;
+
+        int previous = index.remove(x, z);
+        if (previous == ChunkOwnership.NONE) return false;
+
+        ComponentIndex components = componentIndexes.get(world);
+        if (components != null) components.remove(ClaimedChunk.pack(x, z), previous);
+
+        releaseChunk(previous);
+        return true;
+    }
+
+    private void releaseChunk(int townOrdinal) {
+        Town oldTown = towns.get(registry.townId(townOrdinal));
+        if (oldTown == null) return;
+        oldTown.removeChunk();
+        Nation oldNation = getNation(oldTown.getNationId());
+        if (oldNation != null) oldNation.removeChunk();
+    }
+
+    public ClaimedChunk getChunkAt(String world, int chunkX, int chunkZ) {
+        int ordinal = getOwnerOrdinal(world, chunkX, chunkZ);
+        if (ordinal == ChunkOwnership.NONE) return null;
+        return new ClaimedChunk(chunkX, chunkZ, world, registry.townId(ordinal));
+    }
+
+    public boolean isChunkClaimed(String world, int chunkX, int chunkZ) {
+        return getOwnerOrdinal(world, chunkX, chunkZ) != ChunkOwnership.NONE;
+    }
+
+    public Town getTownAtChunk(String world, int chunkX, int chunkZ) {
+        int ordinal = getOwnerOrdinal(world, chunkX, chunkZ);
+        if (ordinal == ChunkOwnership.NONE) return null;
+        return towns.get(registry.townId(ordinal));
+    }
+
+    public int getOwnerOrdinal(String world, int chunkX, int chunkZ) {
+        if (world == null) return ChunkOwnership.NONE;
+        ChunkOwnership index = chunkIndexes.get(world);
+        if (index == null) return ChunkOwnership.NONE;
+        return index.get(chunkX, chunkZ);
+    }
+
+    public Nation getNationAtChunk(String world, int chunkX, int chunkZ) {
+        int ordinal = getOwnerOrdinal(world, chunkX, chunkZ);
+        if (ordinal == ChunkOwnership.NONE) return null;
+        String nationId = registry.nationId(registry.nationOfTown(ordinal));
+        return nationId != null ? nations.get(nationId) : null;
+    }
+
+    // ═══════════════════════════════════════
+    //  ДИПЛОМАТИЯ
+    // ═══════════════════════════════════════
+
+    public boolean areAtWar(String nationA, String nationB) {
+        return relations.atWar(registry.findNation(nationA), registry.findNation(nationB));
+    }
+
+    public boolean areAllied(String nationA, String nationB) {
+        return relations.allied(registry.findNation(nationA), registry.findNation(nationB));
+    }
+
+    public void declareWar(Nation n1, Nation n2) {
+        n1.addEnemy(n2.getId());
+        n2.addEnemy(n1.getId());
+        n1.removeAlly(n2.getId());
+        n2.removeAlly(n1.getId());
+        n1.setAtWar(true);
+        n2.setAtWar(true);
+
+        int a = registry.nationOrdinal(n1.getId());
+        int b = registry.nationOrdinal(n2.getId());
+        relations.setWar(a, b, true);
+        relations.setAlliance(a, b, false);
+    }
+
+    public void makePeace(Nation n1, Nation n2) {
+        n1.removeEnemy(n2.getId());
+        n2.removeEnemy(n1.getId());
+        if (n1.getEnemies().isEmpty()) n1.setAtWar(false);
+        if (n2.getEnemies().isEmpty()) n2.setAtWar(false);
+
+        relations.setWar(registry.nationOrdinal(n1.getId()),
+                registry.nationOrdinal(n2.getId()), false);
+    }
+
+    public void makeAlliance(Nation n1, Nation n2) {
+        n1.addAlly(n2.getId());
+        n2.addAlly(n1.getId());
+        n1.removeEnemy(n2.getId());
+        n2.removeEnemy(n1.getId());
+
+        int a = registry.nationOrdinal(n1.getId());
+        int b = registry.nationOrdinal(n2.getId());
+        relations.setAlliance(a, b, true);
+        relations.setWar(a, b, false);
+    }
+
+    // Пересобирает таблицу отношений по спискам allies/enemies наций
+    public void rebuildRelations() {
+        relations.clear();
+        for (Nation nation : nations.values()) {
+            int self = registry.nationOrdinal(nation.getId());
+            for (String enemy : nation.getEnemies()) {
+                relations.setWar(self, registry.nationOrdinal(enemy), true);
+            }
+            for (String ally : nation.getAllies()) {
+                relations.setAlliance(self, registry.nationOrdinal(ally), true);
+            }
+        }
+    }
+
+    // Обход всех занятых чанков мира: (x, z, ординал города)
+    public void forEachClaim(String world, ChunkOwnership.ChunkOwnerConsumer consumer) {
+        ChunkOwnership index = world != null ? chunkIndexes.get(world) : null;
+        if (index != null) index.forEach(consumer);
+    }
+
+    // Связные части территорий мира. Первый запрос — один проход по хранилищу,
+    // дальше индекс обновляется клеймами этого состояния
+    public ComponentIndex getComponents(String world) {
+        ComponentIndex components = componentIndexes.get(world);
+        if (components != null) return components;
+
+        ComponentIndex built = new ComponentIndex(registry);
+        ChunkOwnership index = chunkIndexes.get(world);
+        if (index != null) {
+            index.forEach((cx, cz, owner) -> built.add(ClaimedChunk.pack(cx, cz), owner));
+        }
+        componentIndexes.put(world, built);
+        return built;
+    }
+
+    // Уже построенный индекс частей или null — без прохода по хранилищу
+    public ComponentIndex findComponents(String world) {
+        return componentIndexes.get(world);
+    }
+
+    // Все чанки города в его мире, упакованные через ClaimedChunk.pack
+    public long[] getTownChunks(Town town) {
+        ChunkOwnership index = chunkIndexes.get(town.getWorldName());
+        int target = registry.findTown(town.getId());
+        if (index == null || target == OrdinalRegistry.NONE) return new long[0];
+
+        long[][] buffer = {new long[Math.max(town.getChunkCount(), 16)]};
+        int[] count = {0};
+        index.forEach((cx, cz, owner) -> {
+            if (owner != target) return;
+            if (count[0] == buffer[0].length) {
+                buffer[0] = Arrays.copyOf(buffer[0], count[0] << 1);
+            }
+            buffer[0][count[0]++] = ClaimedChunk.pack(cx, cz);
+        });
+        return Arrays.copyOf(buffer[0], count[0]);
+    }
+
+    public String getActiveWorldName() {
+        return activeWorldName;
+    }
+
+    public void setActiveWorldName(String name) {
+        this.activeWorldName = name;
+    }
+
+    public void clearAll() {
+        nations.clear();
+        towns.clear();
+        chunkIndexes.clear();
+        componentIndexes.clear();
+        claimsDirty = true;
+        registry.clear();
+        relations.clear();
+        activeWorldName = null;
+    }
+
+    // ═══════════════════════════════════════
+    //  ХРАНИЛИЩЕ ВЛАДЕНИЯ
+    // ═══════════════════════════════════════
+
+    private ChunkOwnership indexFor(String world) {
+        return chunkIndexes.computeIfAbsent(world, w -> new ChunkOwnershipIndex());
+    }
+
+    // Проверяем плотность на степенях двойки, чтобы не сканировать индекс на каждом клейме
+    private void maybeSwitchToTiles(String world, ChunkOwnership index) {
+        if (!(index instanceof ChunkOwnershipIndex)) return;
+
+        int size = index.size();
+        if (size < DENSE_MIN_CHUNKS || (size & (size - 1)) != 0) return;
+        if (registry.townCount() > TiledChunkOwnership.MAX_OWNER) return;
+
+        ChunkOwnershipIndex tilesTouched = new ChunkOwnershipIndex();
+        index.forEach((cx, cz, owner) -> tilesTouched.put(
+                cx >> TiledChunkOwnership.TILE_SHIFT, cz >> TiledChunkOwnership.TILE_SHIFT, 0));
+
+        double fill = size / (double) (tilesTouched.size()
+                * TiledChunkOwnership.TILE_SIZE * TiledChunkOwnership.TILE_SIZE);
+        if (fill < DENSE_TILE_FILL) return;
+
+        TiledChunkOwnership tiled = TiledChunkOwnership.copyOf(index);
+        chunkIndexes.put(world, tiled);
+
+        WarPoliticalMod.LOGGER.info(
+                "Мир '{}': плотное хранилище чанков ({} чанков, {} тайлов, ~{} КБ вместо ~{} КБ)",
+                world, size, tiled.getTileCount(),
+                tiled.estimateBytes() / 1024, index.estimateBytes() / 1024);
+    }
+
+    private void bindTown(Town town) {
+        int townOrdinal = registry.townOrdinal(town.getId());
+        if (town.getNationId() != null) {
+            registry.bindTown(townOrdinal, registry.nationOrdinal(town.getNationId()));
+        }
+    }
+
+    // Пересчитывает счётчики чанков городов и наций по хранилищу и логирует расхождения
+    public int verifyChunkCounters() {
+        int[] actual = new int[registry.townCount()];
+        for (ChunkOwnership index : chunkIndexes.values()) {
+            index.forEach((cx, cz, owner) -> {
+                if (owner < actual.length) actual[owner]++;
+            });
+        }
+
+        int drift = 0;
+        for (Town town : towns.values()) {
+            int ordinal = registry.findTown(town.getId());
+            int real = ordinal != OrdinalRegistry.NONE && ordinal < actual.length ? actual[ordinal] : 0;
+            if (town.getChunkCount() != real) {
+                WarPoliticalMod.LOGGER.warn("Расхождение счётчика города {}: {} вместо {}",
+                        town.getId(), town.getChunkCount(), real);
+                town.setChunkCount(real);
+                drift++;
+            }
+        }
+
+        for (Nation nation : nations.values()) {
+            int real = nation.countChunks(towns);
+            if (nation.getTotalChunks() != real) {
+                WarPoliticalMod.LOGGER.warn("Расхождение счётчика нации {}: {} вместо {}",
+                        nation.getId(), nation.getTotalChunks(), real);
+                nation.setTotalChunks(real);
+                drift++;
+            }
+        }
+
+        if (drift > 0) {
+            WarPoliticalMod.LOGGER.warn("Исправлено счётчиков чанков: {}", drift);
+        }
+        return drift;
+    }
+
+    Map<String, ChunkOwnership> getChunkIndexes() {
+        return chunkIndexes;
+    }
+
+    // ═══════════════════════════════════════
+    //  ОТМЕТКИ ИЗМЕНЕНИЙ ДЛЯ СОХРАНЕНИЯ
+    // ═══════════════════════════════════════
+
+    long getJournalId() {
+        return journalId;
+    }
+
+    void setJournalId(long journalId) {
+        this.journalId = journalId;
+    }
+
+    boolean isClaimsDirty() {
+        return claimsDirty;
+    }
+
+    void markClaimsClean() {
+        claimsDirty = false;
+    }
+
+    // Состояние совпадает с диском — после загрузки
+    void markAllClean() {
+        nations.values().forEach(Nation::markClean);
+        towns.values().forEach(Town::markClean);
+        claimsDirty = false;
+    }
+
+    // Следующее сохранение перепишет всё — после неудачной записи
+    void markAllDirty() {
+        nations.values().forEach(Nation::markDirty);
+        towns.values().forEach(Town::markDirty);
+        claimsDirty = true;
+    }
+
+    void importClaimedChunks(Iterable<ClaimedChunk> chunks) {
+        chunkIndexes.clear();
+        componentIndexes.clear();
+        claimsDirty = true;
+        for (ClaimedChunk chunk : chunks) {
+            importClaim(chunk.getWorldName(), chunk.getChunkX(), chunk.getChunkZ(),
+                    registry.townOrdinal(chunk.getTownId()));
+        }
+    }
+
+    // Запись владения без счётчиков — после импорта вызывается verifyChunkCounters()
+    void importClaim(String world, int chunkX, int chunkZ, int townOrdinal) {
+        ChunkOwnership index = indexFor(world);
+        int previous = index.put(chunkX, chunkZ, townOrdinal);
+        claimsDirty = true;
+        componentIndexes.remove(world);
+        if (previous == ChunkOwnership.NONE) {
+            maybeSwitchToTiles(world, index);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.warpolitical.data;
+
+import java.util.Arrays;
+
+// Плотное хранилище владения: мир разбит на тайлы 32x32 чанка, каждый тайл — short[]
+// с ординалом города (+1, ноль — свободный чанк). Тайлы создаются лениво при первом клейме.
+public class TiledChunkOwnership implements ChunkOwnership {
+
+    public static final int TILE_SHIFT = 5;
+    public static final int TILE_SIZE = 1 << TILE_SHIFT;
+    private static final int TILE_MASK = TILE_SIZE - 1;
+    private static final int TILE_AREA = TILE_SIZE * TILE_SIZE;
+
+    // Ординал хранится как owner + 1 в short
+    public static final int MAX_OWNER = Short.MAX_VALUE - 1;
+
+    // Тайл (tileX, tileZ) → номер слота в tiles
+    private final ChunkOwnershipIndex tileSlots;
+    private short[][] tiles;
+    private int[] tileCounts;
+    private int tileCount;
+    private int size;
+
+    public TiledChunkOwnership() {
+        this.tileSlots = new ChunkOwnershipIndex();
+        this.tiles = new short[16][];
+        this.tileCounts = new int[16];
+    }
+
+    private TiledChunkOwnership(TiledChunkOwnership source) {
+        this.tileSlots = source.tileSlots.copy();
+        this.tiles = new short[source.tiles.length][];
+        for (int slot = 0; slot < source.tileCount; slot++) {
+            this.tiles[slot] = source.tiles[slot].clone();
+        }
+        this.tileCounts = source.tileCounts.clone();
+        this.tileCount = source.tileCount;
+        this.size = source.size;
+    }
+
+    @Override
+    public int get(int chunkX, int chunkZ) {
+        int slot = tileSlots.get(chunkX >> TILE_SHIFT, chunkZ >> TILE_SHIFT);
+        if (slot == NONE) return NONE;
+        return tiles[slot][cellIndex(chunkX, chunkZ)] - 1;
+    }
+
+    @Override
+    public int put(int chunkX, int chunkZ, int owner) {
+        if (owner < 0 || owner > MAX_OWNER) {
+            throw new IllegalArgumentException("owner вне диапазона: " + owner);
+        }
+
+        int slot = slotFor(chunkX >> TILE_SHIFT, chunkZ >> TILE_SHIFT);
+        short[] tile = tiles[slot];
+        int cell = cellIndex(chunkX, chunkZ);
+        int prev = tile[cell] - 1;
+        tile[cell] = (short) (owner + 1);
+
+        if (prev == NONE) {
+            tileCounts[slot]++;
+            size++;
+        }
+        return prev;
+    }
+
+    @Override
+    public int remove(int chunkX, int chunkZ) {
+        int slot = tileSlots.get(chunkX >> TILE_SHIFT, chunkZ >> TILE_SHIFT);
+        if (slot == NONE) return NONE;
+
+        short[] tile = tiles[slot];
+        int cell = cellIndex(chunkX, chunkZ);
+        int prev = tile[cell] - 1;
+        if (prev != NONE) {
+            tile[cell] = 0;
+            tileCounts[slot]--;
+            size--;
+        }
+        return prev;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public int getTileCount() {
+        return tileCount;
+    }
+
+    @Override
+    public long estimateBytes() {
+        return (long) tileCount * TILE_AREA * Short.BYTES + tileSlots.estimateBytes();
+    }
+
+    @Override
+    public void forEach(ChunkOwnerConsumer consumer) {
+        tileSlots.forEach((tileX, tileZ, slot) -> {
+            if (tileCounts[slot] == 0) return;
+            short[] tile = tiles[slot];
+            int baseX = tileX << TILE_SHIFT;
+            int baseZ = tileZ << TILE_SHIFT;
+            for (int i = 0; i < TILE_AREA; i++) {
+                int owner = tile[i] - 1;
+                if (owner != NONE) {
+                    consumer.accept(baseX + (i & TILE_MASK), baseZ + (i >> TILE_SHIFT), owner);
+                }
+            }
+        });
+    }
+
+    @Override
+    public TiledChunkOwnership copy() {
+        return new TiledChunkOwnership(this);
+    }
+
+    public static TiledChunkOwnership copyOf(ChunkOwnership source) {
+        TiledChunkOwnership tiled = new TiledChunkOwnership();
+        source.forEach(tiled::put);
+        return tiled;
+    }
+
+    private int slotFor(int tileX, int tileZ) {
+        int slot = tileSlots.get(tileX, tileZ);
+        if (slot != NONE) return slot;
+
+        slot = tileCount++;
+        if (slot == tiles.length) {
+            tiles = Arrays.copyOf(tiles, slot << 1);
+            tileCounts = Arrays.copyOf(tileCounts, slot << 1);
+        }
+        tiles[slot] = new short[TILE_AREA];
+        tileSlots.put(tileX, tileZ, slot);
+        return slot;
+    }
+
+    private static int cellIndex(int chunkX, int chunkZ) {
+        return ((chunkZ & TILE_MASK) << TILE_SHIFT) | (chunkX & TILE_MASK);
+    }
+}
@@ -0,0 +1,67 @@
+package com.warpolitical.listeners;
+
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.world.World;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// Состояние игроков на время сессии: заводится при входе, убирается при выходе.
+// Если выход не пришёл, размер всё равно ограничен MAX_SESSIONS — вытесняется
+// запись, к которой дольше всех не обращались. Только поток сервера.
+public class PlayerSessions {
+
+    private static final int MAX_SESSIONS = 1024;
+
+    // Что защита и уведомления помнят об игроке между событиями
+    static final class PlayerSession {
+        // Переходы между территориями (TerritoryTracker)
+        long chunk;
+        World world;
+        long snapshotVersion = -1;
+        int townOrdinal = -1;
+        String townId;
+        long resolvedVersion = -1;
+
+        // Последнее сообщение о запрете строить
+        long lastDenyMessageAt;
+
+        // Последнее решение по блоку: снимок, мир, чанк и время проверки
+        long decisionVersion = -1;
+        World decisionWorld;
+        long decisionChunk;
+        long decidedAt;
+        boolean decisionAllowed;
+
+        // Последнее решение canBuild: для какого снимка и города, и каким оно было
+        long permissionVersion = -1;
+        int permissionTown = -1;
+        boolean permissionAllowed;
+    }
+
+    // Порядок доступа: при переполнении уходит самая давняя запись
+    private final Map<UUID, PlayerSession> sessions = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, PlayerSession> eldest) {
+            return size() > MAX_SESSIONS;
+        }
+    };
+
+    void register() {
+        ServerPlayConnectionEvents.JOIN.register((handler, sender, server) ->
+                sessions.put(handler.getPlayer().getUuid(), new PlayerSession()));
+        ServerPlayConnectionEvents.DISCONNECT.register((handler, server) ->
+                sessions.remove(handler.getPlayer().getUuid()));
+    }
+
+    // Игрок без записи (вошёл до регистрации, вытеснен) получает новую
+    PlayerSession get(PlayerEntity player) {
+        return sessions.computeIfAbsent(player.getUuid(), id -> new PlayerSession());
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+}
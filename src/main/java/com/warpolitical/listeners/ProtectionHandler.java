@@ -1,8 +1,9 @@
 package com.warpolitical.listeners;
 
 import com.warpolitical.WarPoliticalMod;
-import com.warpolitical.model.Nation;
-import com.warpolitical.model.Town;
+import com.warpolitical.data.ChunkOwnership;
+import com.warpolitical.data.TerritorySnapshot;
+import com.warpolitical.model.ClaimedChunk;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 import net.fabricmc.fabric.api.event.player.AttackBlockCallback;
 import net.fabricmc.fabric.api.event.player.PlayerBlockBreakEvents;
@@ -10,6 +11,7 @@ import net.fabricmc.fabric.api.event.player.UseBlockCallback;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.registry.RegistryKey;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.text.Text;
 import net.minecraft.util.ActionResult;
@@ -17,17 +19,18 @@ import net.minecraft.util.Formatting;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Objects;
-import java.util.UUID;
-
+// Все проверки читают TerritorySnapshot: ссылка берётся один раз на событие,
+// и всё решение принимается по одному согласованному снимку
 public class ProtectionHandler {
 
-    private static final Map<UUID, String> lastTownCache = new HashMap<>();
-    private static final Map<UUID, Long> messageCooldown = new HashMap<>();
+    private static final long DENY_MESSAGE_COOLDOWN_MS = 2000;
+    private static final long DECISION_TTL_NANOS = 1_000_000_000L;
+
+    private static final PlayerSessions sessions = new PlayerSessions();
+    private static final TerritoryTracker tracker = new TerritoryTracker(sessions);
 
     public static void register(WarPoliticalMod mod) {
+        sessions.register();
 
         // Защита от ломания блоков
         PlayerBlockBreakEvents.BEFORE.register(
@@ -35,11 +38,9 @@ public class ProtectionHandler {
                  BlockState state, BlockEntity blockEntity) -> {
 
             if (world.isClient()) return true;
-            if (player.hasPermissionLevel(2)) return true;
-            if (!isScenarioWorld(mod, world)) return true;
 
-            if (!canModify(mod, player, pos)) {
-                sendDeny(player, mod, pos);
+            if (!isAllowed(mod, player, world, pos)) {
+                sendDeny(player, mod.getDataManager().getTerritorySnapshot(), pos);
                 return false;
             }
             return true;
@@ -48,12 +49,10 @@ public class ProtectionHandler {
         // Защита от установки/использования блоков
         UseBlockCallback.EVENT.register((player, world, hand, hitResult) -> {
             if (world.isClient()) return ActionResult.PASS;
-            if (player.hasPermissionLevel(2)) return ActionResult.PASS;
-            if (!isScenarioWorld(mod, world)) return ActionResult.PASS;
 
             BlockPos pos = hitResult.getBlockPos();
-            if (!canModify(mod, player, pos)) {
-                sendDeny(player, mod, pos);
+            if (!isAllowed(mod, player, world, pos)) {
+                sendDeny(player, mod.getDataManager().getTerritorySnapshot(), pos);
                 return ActionResult.FAIL;
             }
             return ActionResult.PASS;
@@ -62,42 +61,35 @@ public class ProtectionHandler {
         // Защита от атаки блоков (начало ломания)
         AttackBlockCallback.EVENT.register((player, world, hand, pos, direction) -> {
             if (world.isClient()) return ActionResult.PASS;
-            if (player.hasPermissionLevel(2)) return ActionResult.PASS;
-            if (!isScenarioWorld(mod, world)) return ActionResult.PASS;
 
-            if (!canModify(mod, player, pos)) {
-                sendDeny(player, mod, pos);
+            if (!isAllowed(mod, player, world, pos)) {
+                sendDeny(player, mod.getDataManager().getTerritorySnapshot(), pos);
                 return ActionResult.FAIL;
             }
             return ActionResult.PASS;
         });
 
-        // Уведомления при перемещении (каждый тик сервера)
+        // Уведомления при перемещении: территория пересчитывается только
+        // при смене чанка, измерения или снимка территорий
         ServerTickEvents.END_SERVER_TICK.register(server -> {
+            TerritorySnapshot snapshot = mod.getDataManager().getTerritorySnapshot();
+            if (snapshot.getActiveWorldName() == null) return;
             for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
-                if (!isScenarioWorld(mod, player.getWorld())) continue;
+                if (!tracker.hasMoved(player, snapshot)) continue;
+                if (!isScenarioWorld(mod, snapshot, player.getWorld())) continue;
 
-                handleTerritoryNotification(mod, player);
+                handleTerritoryNotification(mod, snapshot, player);
             }
         });
     }
 
-    private static void handleTerritoryNotification(WarPoliticalMod mod,
+    private static void handleTerritoryNotification(WarPoliticalMod mod, TerritorySnapshot snapshot,
                                                       ServerPlayerEntity player) {
-        int cx = player.getChunkPos().x;
-        int cz = player.getChunkPos().z;
-        String worldName = mod.getWorldManager().getWorldId(player.getServerWorld());
-
-        Town town = mod.getDataManager().getTownAtChunk(worldName, cx, cz);
-        String currentTownId = town != null ? town.getId() : null;
-        String lastTownId = lastTownCache.get(player.getUuid());
-
-        if (!Objects.equals(currentTownId, lastTownId)) {
-            lastTownCache.put(player.getUuid(), currentTownId);
-
+        if (tracker.enterTown(player, snapshot)) {
+            TerritorySnapshot.TownView town = snapshot.getActiveTownAt(
+                    player.getChunkPos().x, player.getChunkPos().z);
             if (town != null) {
-                Nation nation = mod.getDataManager().getNation(town.getNationId());
-                String nationName = nation != null ? nation.getName() : "";
+                String nationName = town.getNationName();
 
                 // ActionBar
                 player.sendMessage(
@@ -123,37 +115,77 @@ public class ProtectionHandler {
         }
     }
 
-    private static boolean isScenarioWorld(WarPoliticalMod mod, World world) {
-        String active = mod.getDataManager().getActiveWorldName();
-        if (active == null) return false;
-        String worldName = world.getRegistryKey().getValue().getPath();
-        return worldName.contains(active) || active.contains(worldName)
-                || active.equals("overworld");
+    public static TerritoryTracker getTracker() {
+        return tracker;
     }
 
-    private static boolean canModify(WarPoliticalMod mod,
-                                      PlayerEntity player, BlockPos pos) {
-        String worldName = player.getWorld().getRegistryKey().getValue().getPath();
+    public static PlayerSessions getSessions() {
+        return sessions;
+    }
+
+    // Решение по блоку кэшируется в сессии игрока для (версия снимка, мир, чанк).
+    // Версия снимка растёт при любом изменении клеймов, жителей и дипломатии, поэтому
+    // служит эпохой: повторные действия в том же чанке — сравнение с кэшем без поиска.
+    // Права оператора от снимка не зависят — решение живёт не дольше DECISION_TTL_NANOS.
+    private static boolean isAllowed(WarPoliticalMod mod, PlayerEntity player, World world, BlockPos pos) {
+        TerritorySnapshot snapshot = mod.getDataManager().getTerritorySnapshot();
+        PlayerSessions.PlayerSession session = sessions.get(player);
         int chunkX = pos.getX() >> 4;
         int chunkZ = pos.getZ() >> 4;
+        long chunk = ClaimedChunk.pack(chunkX, chunkZ);
+        long now = System.nanoTime();
 
-        return mod.getClaimEngine().canBuild(
-                player.getName().getString(), worldName, chunkX, chunkZ);
+        if (session.decisionVersion == snapshot.getVersion() && session.decisionChunk == chunk
+                && session.decisionWorld == world && now - session.decidedAt < DECISION_TTL_NANOS) {
+            return session.decisionAllowed;
+        }
+
+        boolean allowed = player.hasPermissionLevel(2)
+                || !isScenarioWorld(mod, snapshot, world)
+                || canModify(mod, snapshot, player, chunkX, chunkZ);
+        session.decisionVersion = snapshot.getVersion();
+        session.decisionChunk = chunk;
+        session.decisionWorld = world;
+        session.decidedAt = now;
+        session.decisionAllowed = allowed;
+        return allowed;
     }
 
-    private static void sendDeny(PlayerEntity player, WarPoliticalMod mod,
+    // Сравнение ключа мира по ссылке; ключ сценария находит WorldManager
+    private static boolean isScenarioWorld(WarPoliticalMod mod, TerritorySnapshot snapshot, World world) {
+        RegistryKey<World> scenarioWorld = mod.getWorldManager().getScenarioWorld(snapshot.getActiveWorldName());
+        return scenarioWorld != null && world.getRegistryKey() == scenarioWorld;
+    }
+
+    // Игрок в мире сценария — владелец чанка берётся из хранилища этого мира
+    private static boolean canModify(WarPoliticalMod mod, TerritorySnapshot snapshot,
+                                      PlayerEntity player, int chunkX, int chunkZ) {
+        int owner = snapshot.getActiveOwnerOrdinal(chunkX, chunkZ);
+        if (owner == ChunkOwnership.NONE) return true;
+
+        // Решение для того же города в том же снимке уже известно
+        PlayerSessions.PlayerSession session = sessions.get(player);
+        if (session.permissionVersion == snapshot.getVersion() && session.permissionTown == owner) {
+            return session.permissionAllowed;
+        }
+
+        boolean allowed = mod.getClaimEngine().canBuild(snapshot.getTown(owner),
+                player.getName().getString());
+        session.permissionVersion = snapshot.getVersion();
+        session.permissionTown = owner;
+        session.permissionAllowed = allowed;
+        return allowed;
+    }
+
+    private static void sendDeny(PlayerEntity player, TerritorySnapshot snapshot,
                                   BlockPos pos) {
         // Кулдаун чтобы не спамить
+        PlayerSessions.PlayerSession session = sessions.get(player);
         long now = System.currentTimeMillis();
-        Long last = messageCooldown.get(player.getUuid());
-        if (last != null && now - last < 2000) return;
-        messageCooldown.put(player.getUuid(), now);
-
-        String worldName = player.getWorld().getRegistryKey().getValue().getPath();
-        int chunkX = pos.getX() >> 4;
-        int chunkZ = pos.getZ() >> 4;
+        if (now - session.lastDenyMessageAt < DENY_MESSAGE_COOLDOWN_MS) return;
+        session.lastDenyMessageAt = now;
 
-        Town town = mod.getDataManager().getTownAtChunk(worldName, chunkX, chunkZ);
+        TerritorySnapshot.TownView town = snapshot.getActiveTownAt(pos.getX() >> 4, pos.getZ() >> 4);
         String name = town != null ? town.getName() : "этой территории";
 
         player.sendMessage(
@@ -0,0 +1,74 @@
+package com.warpolitical.listeners;
+
+import com.warpolitical.data.TerritorySnapshot;
+import com.warpolitical.model.ClaimedChunk;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.world.World;
+
+import java.util.Objects;
+
+// Переходы игроков между территориями. Территория пересчитывается, только когда
+// у игрока сменился чанк или измерение либо вышел новый снимок территорий; для
+// стоящего на месте игрока проверка — сравнение long, ссылки на мир и версии.
+// Только поток сервера.
+public class TerritoryTracker {
+
+    // Положение и город игрока хранятся в его сессии
+    private final PlayerSessions sessions;
+
+    private long lookups;
+    private long lookupsAvoided;
+
+    TerritoryTracker(PlayerSessions sessions) {
+        this.sessions = sessions;
+    }
+
+    // false — игрок там же, что и в прошлый раз, и снимок тот же: пересчитывать нечего
+    boolean hasMoved(ServerPlayerEntity player, TerritorySnapshot snapshot) {
+        PlayerSessions.PlayerSession position = sessions.get(player);
+        long chunk = ClaimedChunk.pack(player.getChunkPos().x, player.getChunkPos().z);
+        World world = player.getWorld();
+
+        if (position.chunk == chunk && position.world == world
+                && position.snapshotVersion == snapshot.getVersion()) {
+            lookupsAvoided++;
+            return false;
+        }
+
+        position.chunk = chunk;
+        position.world = world;
+        position.snapshotVersion = snapshot.getVersion();
+        return true;
+    }
+
+    // Город по текущему чанку; true — он не тот, что был при прошлом пересчёте
+    // Игрок в мире сценария — город ищется в хранилище этого мира
+    boolean enterTown(ServerPlayerEntity player, TerritorySnapshot snapshot) {
+        lookups++;
+        PlayerSessions.PlayerSession position = sessions.get(player);
+        int ordinal = snapshot.getActiveOwnerOrdinal(player.getChunkPos().x, player.getChunkPos().z);
+
+        // В пределах одного снимка хватает сравнения ординалов; в новом снимке
+        // ординалы могли смениться — тогда сравниваем по id
+        if (position.resolvedVersion == snapshot.getVersion()) {
+            if (ordinal == position.townOrdinal) return false;
+        } else {
+            position.resolvedVersion = snapshot.getVersion();
+        }
+
+        TerritorySnapshot.TownView town = snapshot.getTown(ordinal);
+        String townId = town != null ? town.getId() : null;
+        position.townOrdinal = ordinal;
+        if (Objects.equals(townId, position.townId)) return false;
+        position.townId = townId;
+        return true;
+    }
+
+    public long getLookups() {
+        return lookups;
+    }
+
+    public long getLookupsAvoided() {
+        return lookupsAvoided;
+    }
+}
@@ -16,10 +16,32 @@ public class ClaimedChunk {
         this.townName = townName;
     }
 
+    public static String makeKey(String world, int chunkX, int chunkZ) {
+        return world + ":" + chunkX + ":" + chunkZ;
+    }
+
+    // Упаковка координат чанка в long: старшие 32 бита — X, младшие — Z
+    public static long pack(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    public static int unpackX(long packed) {
+        return (int) (packed >> 32);
+    }
+
+    public static int unpackZ(long packed) {
+        return (int) packed;
+    }
+
+    public String getKey() {
+        return makeKey(worldName, chunkX, chunkZ);
+    }
+
     public int getChunkX() { return chunkX; }
     public int getChunkZ() { return chunkZ; }
     public String getWorldName() { return worldName; }
     public String getTownName() { return townName; }
+    public String getTownId() { return townName; }
     public void setTownName(String townName) { this.townName = townName; }
 
     @Override
@@ -40,4 +62,4 @@ public class ClaimedChunk {
     public String toString() {
         return "ClaimedChunk{" + worldName + " [" + chunkX + ", " + chunkZ + "] -> " + townName + "}";
     }
-}
\ No newline at end of file
+}
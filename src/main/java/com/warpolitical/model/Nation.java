@@ -17,6 +17,10 @@ public class Nation {
     private final Set<String> allies = new HashSet<>();
     private final Set<String> enemies = new HashSet<>();
     private boolean atWar = false;
+    // Живой счётчик чанков всех городов нации, ведётся DataManager
+    private int chunkCount;
+    // Изменена после последнего сохранения; в JSON не пишется
+    private transient boolean dirty = true;
 
     public Nation(String id, String name, String color) {
         this.id = id;
@@ -24,7 +28,27 @@ public class Nation {
         this.color = color;
     }
 
-    public int getTotalChunks(Map<String, Town> allTowns) {
+    public int getTotalChunks() {
+        return chunkCount;
+    }
+
+    public void setTotalChunks(int chunkCount) {
+        this.chunkCount = chunkCount;
+        markDirty();
+    }
+
+    public void addChunk() {
+        chunkCount++;
+        dirty = true;
+    }
+
+    public void removeChunk() {
+        if (chunkCount > 0) chunkCount--;
+        dirty = true;
+    }
+
+    // Пересчёт по городам — только для проверки счётчика, не для горячего пути
+    public int countChunks(Map<String, Town> allTowns) {
         int total = 0;
         for (String townId : townIds) {
             Town town = allTowns.get(townId);
@@ -35,18 +59,19 @@ public class Nation {
         return total;
     }
 
-    public boolean canClaimMore(Map<String, Town> allTowns) {
-        return getTotalChunks(allTowns) < MAX_CHUNKS;
+    public boolean canClaimMore() {
+        return chunkCount < MAX_CHUNKS;
     }
 
     public void addTown(String townId) {
         if (!townIds.contains(townId)) {
             townIds.add(townId);
+            markDirty();
         }
     }
 
     public void removeTown(String townId) {
-        townIds.remove(townId);
+        if (townIds.remove(townId)) markDirty();
     }
 
     public String getId() {
@@ -59,6 +84,7 @@ public class Nation {
 
     public void setName(String name) {
         this.name = name;
+        markDirty();
     }
 
     public String getCapitalTownId() {
@@ -67,6 +93,7 @@ public class Nation {
 
     public void setCapitalTownId(String capitalTownId) {
         this.capitalTownId = capitalTownId;
+        markDirty();
     }
 
     public String getLeaderName() {
@@ -75,6 +102,7 @@ public class Nation {
 
     public void setLeaderName(String leaderName) {
         this.leaderName = leaderName;
+        markDirty();
     }
 
     public String getColor() {
@@ -83,6 +111,7 @@ public class Nation {
 
     public void setColor(String color) {
         this.color = color;
+        markDirty();
     }
 
     public String getDescription() {
@@ -91,6 +120,7 @@ public class Nation {
 
     public void setDescription(String description) {
         this.description = description;
+        markDirty();
     }
 
     public String getGovernmentType() {
@@ -99,18 +129,36 @@ public class Nation {
 
     public void setGovernmentType(String governmentType) {
         this.governmentType = governmentType;
+        markDirty();
     }
 
+    // Списки только для чтения; изменения идут через методы ниже и помечают нацию
     public List<String> getTownIds() {
-        return townIds;
+        return Collections.unmodifiableList(townIds);
     }
 
     public Set<String> getAllies() {
-        return allies;
+        return Collections.unmodifiableSet(allies);
     }
 
     public Set<String> getEnemies() {
-        return enemies;
+        return Collections.unmodifiableSet(enemies);
+    }
+
+    public void addAlly(String nationId) {
+        if (allies.add(nationId)) markDirty();
+    }
+
+    public void removeAlly(String nationId) {
+        if (allies.remove(nationId)) markDirty();
+    }
+
+    public void addEnemy(String nationId) {
+        if (enemies.add(nationId)) markDirty();
+    }
+
+    public void removeEnemy(String nationId) {
+        if (enemies.remove(nationId)) markDirty();
     }
 
     public boolean isAtWar() {
@@ -119,5 +167,18 @@ public class Nation {
 
     public void setAtWar(boolean atWar) {
         this.atWar = atWar;
+        markDirty();
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public void markDirty() {
+        dirty = true;
+    }
+
+    public void markClean() {
+        dirty = false;
     }
 }
@@ -1,5 +1,6 @@
 package com.warpolitical.model;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Random;
 import java.util.Set;
@@ -16,10 +17,13 @@ public class Town {
     private int centerZ;
     private String worldName;
     private String color;
-    private final Set<String> claimedChunkKeys = new HashSet<>();
+    // Сами чанки живут в хранилище владения DataManager, здесь только счётчик
+    private int chunkCount;
     private final Set<String> residents = new HashSet<>();
     private boolean pvpEnabled = true;
     private boolean explosionsEnabled = false;
+    // Изменён после последнего сохранения; в JSON не пишется
+    private transient boolean dirty = true;
 
     public Town(String id, String name, String nationId,
                 int centerX, int centerZ, String worldName) {
@@ -33,23 +37,26 @@ public class Town {
     }
 
     public boolean canClaimMore() {
-        return claimedChunkKeys.size() < MAX_CHUNKS;
+        return chunkCount < MAX_CHUNKS;
     }
 
     public int getChunkCount() {
-        return claimedChunkKeys.size();
+        return chunkCount;
     }
 
-    public void addChunk(String chunkKey) {
-        claimedChunkKeys.add(chunkKey);
+    public void setChunkCount(int chunkCount) {
+        this.chunkCount = chunkCount;
+        markDirty();
     }
 
-    public void removeChunk(String chunkKey) {
-        claimedChunkKeys.remove(chunkKey);
+    public void addChunk() {
+        chunkCount++;
+        dirty = true;
     }
 
-    public boolean ownsChunk(String chunkKey) {
-        return claimedChunkKeys.contains(chunkKey);
+    public void removeChunk() {
+        if (chunkCount > 0) chunkCount--;
+        dirty = true;
     }
 
     private String generateRandomColor() {
@@ -70,6 +77,7 @@ public class Town {
 
     public void setName(String name) {
         this.name = name;
+        markDirty();
     }
 
     public String getNationId() {
@@ -78,6 +86,7 @@ public class Town {
 
     public void setNationId(String nationId) {
         this.nationId = nationId;
+        markDirty();
     }
 
     public String getMayorName() {
@@ -86,6 +95,7 @@ public class Town {
 
     public void setMayorName(String mayorName) {
         this.mayorName = mayorName;
+        markDirty();
     }
 
     public int getCenterX() {
@@ -106,14 +116,24 @@ public class Town {
 
     public void setColor(String color) {
         this.color = color;
+        markDirty();
     }
 
-    public Set<String> getClaimedChunkKeys() {
-        return claimedChunkKeys;
+    // Только для чтения; изменения — через addResident/removeResident
+    public Set<String> getResidents() {
+        return Collections.unmodifiableSet(residents);
     }
 
-    public Set<String> getResidents() {
-        return residents;
+    public boolean addResident(String playerName) {
+        if (!residents.add(playerName)) return false;
+        markDirty();
+        return true;
+    }
+
+    public boolean removeResident(String playerName) {
+        if (!residents.remove(playerName)) return false;
+        markDirty();
+        return true;
     }
 
     public boolean isPvpEnabled() {
@@ -122,6 +142,7 @@ public class Town {
 
     public void setPvpEnabled(boolean pvpEnabled) {
         this.pvpEnabled = pvpEnabled;
+        markDirty();
     }
 
     public boolean isExplosionsEnabled() {
@@ -130,5 +151,18 @@ public class Town {
 
     public void setExplosionsEnabled(boolean explosionsEnabled) {
         this.explosionsEnabled = explosionsEnabled;
+        markDirty();
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public void markDirty() {
+        dirty = true;
+    }
+
+    public void markClean() {
+        dirty = false;
     }
 }
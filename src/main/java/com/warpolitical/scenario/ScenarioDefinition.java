@@ -0,0 +1,52 @@
+package com.warpolitical.scenario;
+
+import java.util.Map;
+
+// Разобранный YAML сценария. Собирается в фоне и не зависит от мира и DataManager.
+class ScenarioDefinition {
+
+    final String name;
+    final Map<String, Object> scenario;
+
+    // Мир
+    final String worldName;
+    final long seed;
+    final int borderRadius;
+
+    // Прогрузка чанков внутри границы перед заливкой
+    final boolean pregenerate;
+    final int pregenMaxInFlight;
+    final int pregenTickBudgetMs;
+
+    // Правила заливки
+    final boolean autoFill;
+    final String fillMethod;
+    final boolean skipWater;
+    final double waterThreshold;
+    final int parallelism;
+
+    ScenarioDefinition(String name, Map<String, Object> scenario,
+                       String worldName, long seed, int borderRadius,
+                       boolean pregenerate, int pregenMaxInFlight, int pregenTickBudgetMs,
+                       boolean autoFill, String fillMethod, boolean skipWater,
+                       double waterThreshold, int parallelism) {
+        this.name = name;
+        this.scenario = scenario;
+        this.worldName = worldName;
+        this.seed = seed;
+        this.borderRadius = borderRadius;
+        this.pregenerate = pregenerate;
+        this.pregenMaxInFlight = pregenMaxInFlight;
+        this.pregenTickBudgetMs = pregenTickBudgetMs;
+        this.autoFill = autoFill;
+        this.fillMethod = fillMethod;
+        this.skipWater = skipWater;
+        this.waterThreshold = waterThreshold;
+        this.parallelism = parallelism;
+    }
+
+    // Классификация воды нужна только заливке и только при skip_water_chunks
+    boolean needsWaterScan() {
+        return autoFill && skipWater;
+    }
+}
@@ -0,0 +1,345 @@
+package com.warpolitical.scenario;
+
+import com.warpolitical.WarPoliticalMod;
+import com.warpolitical.data.TerritoryState;
+import com.warpolitical.scenario.ScenarioParser.ScenarioResult;
+import com.warpolitical.world.ChunkPregenerator;
+import com.warpolitical.world.SlicedTask;
+import com.warpolitical.world.WaterMask;
+import com.warpolitical.world.WaterScan;
+import com.warpolitical.world.WorldBounds;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.world.World;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+// Загрузка сценария по стадиям, не блокируя тик сервера:
+//  PARSE     — разбор YAML (фон);
+//  WORLD     — граница и игровые правила (серверный поток, один шаг);
+//  PREGEN    — по желанию: генерация всех чанков внутри границы тикетами,
+//              с ограничением числа тикетов и бюджетом тика (серверный поток);
+//  WATER     — кэш воды (фон), затем классификация недостающих чанков
+//              порциями по TICK_BUDGET_NANOS за тик (серверный поток);
+//  TERRITORY — нации, города, радиусы и заливка в новое TerritoryState (фон);
+//  SAVE      — новое состояние целиком пишется на диск до публикации (поток записи);
+//  PUBLISH   — атомарная подмена состояния, BlueMap (серверный поток).
+// Текущее состояние до PUBLISH не меняется, поэтому ошибка на любой стадии ничего не ломает.
+public class ScenarioLoadPipeline {
+
+    // Из 50 мс тика на мир отдаём не больше 10
+    private static final long TICK_BUDGET_NANOS = 10_000_000L;
+    private static final int PROGRESS_STEP_PERCENT = 25;
+
+    public enum Stage {
+        PARSE("Разбор сценария"),
+        WORLD("Настройка мира"),
+        PREGEN("Прогрузка чанков"),
+        WATER("Поиск воды"),
+        TERRITORY("Расчёт территорий"),
+        SAVE("Сохранение"),
+        PUBLISH("Публикация");
+
+        public final String title;
+
+        Stage(String title) {
+            this.title = title;
+        }
+    }
+
+    // Все вызовы — на серверном потоке
+    public interface Listener {
+        void onProgress(Stage stage, String message);
+
+        void onFinished(ScenarioResult result);
+    }
+
+    private final WarPoliticalMod mod;
+    private final ScenarioParser parser;
+    private final MinecraftServer server;
+    private final ExecutorService executor;
+    private final String scenarioName;
+    private final Listener listener;
+
+    private Stage stage;
+    private long startedAt;
+    private ScenarioDefinition definition;
+    private String worldId;
+    private RegistryKey<World> worldKey;
+    private WorldBounds bounds;
+    private WaterMask water;
+    private long waterSeed;
+    private int waterKnownAtStart;
+    private SlicedTask sliced;
+    private long slicedBudgetNanos;
+    private Runnable afterSliced;
+    private int reportedPercent;
+    private boolean finished;
+
+    ScenarioLoadPipeline(WarPoliticalMod mod, ScenarioParser parser, MinecraftServer server,
+                         ExecutorService executor, String scenarioName, Listener listener) {
+        this.mod = mod;
+        this.parser = parser;
+        this.server = server;
+        this.executor = executor;
+        this.scenarioName = scenarioName;
+        this.listener = listener;
+    }
+
+    public Stage getStage() {
+        return stage;
+    }
+
+    void start() {
+        startedAt = System.nanoTime();
+        enter(Stage.PARSE, "'" + scenarioName + "'");
+
+        CompletableFuture
+                .supplyAsync(() -> {
+                    try {
+                        return parser.readDefinition(scenarioName);
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor)
+                .whenCompleteAsync((parsed, error) -> {
+                    if (error != null) {
+                        fail(error);
+                    } else {
+                        setupWorld(parsed);
+                    }
+                }, server);
+    }
+
+    // ═══════════════════════════════════════
+    //  СТАДИИ НА СЕРВЕРНОМ ПОТОКЕ
+    // ═══════════════════════════════════════
+
+    private void setupWorld(ScenarioDefinition parsed) {
+        if (finished) return;
+        this.definition = parsed;
+        enter(Stage.WORLD, parsed.worldName);
+
+        ServerWorld world;
+        try {
+            world = mod.getWorldManager().getOrCreateWorld(
+                    parsed.worldName, parsed.seed, parsed.borderRadius);
+        } catch (Exception e) {
+            fail(e);
+            return;
+        }
+        if (world == null) {
+            finish(ScenarioResult.error("Не удалось получить мир!"));
+            return;
+        }
+
+        worldId = mod.getWorldManager().getWorldId(world);
+        worldKey = world.getRegistryKey();
+        bounds = WorldBounds.of(world);
+
+        if (!parsed.needsWaterScan()) {
+            if (parsed.pregenerate) {
+                startPregen(world);
+            } else {
+                computeTerritory(null);
+            }
+            return;
+        }
+
+        long seed = world.getSeed();
+        int radius = bounds.getRadiusChunks();
+
+        // Кэш воды читается в фоне, недостающие чанки классифицируются порциями по тикам
+        CompletableFuture
+                .supplyAsync(() -> mod.getWorldManager().getWaterCache()
+                        .load(worldId, seed, parsed.waterThreshold, radius), executor)
+                .whenCompleteAsync((cached, error) -> {
+                    if (finished) return;
+                    if (error != null) {
+                        fail(error);
+                        return;
+                    }
+                    if (cached.getKnownCount() > 0) {
+                        WarPoliticalMod.LOGGER.info("Кэш воды: {} чанков известно заранее",
+                                cached.getKnownCount());
+                    }
+                    water = cached;
+                    waterSeed = seed;
+                    waterKnownAtStart = cached.getKnownCount();
+
+                    if (parsed.pregenerate) {
+                        startPregen(world);
+                    } else {
+                        startWaterScan(world);
+                    }
+                }, server);
+    }
+
+    private void startPregen(ServerWorld world) {
+        enter(Stage.PREGEN, "радиус " + bounds.getRadiusChunks()
+                + " чанков, до " + definition.pregenMaxInFlight + " одновременно");
+
+        ChunkPregenerator pregen = new ChunkPregenerator(world, bounds,
+                definition.pregenMaxInFlight, water, definition.waterThreshold);
+
+        runSliced(pregen, definition.pregenTickBudgetMs * 1_000_000L, () -> {
+            String rate = String.format("%.1f", pregen.getChunksPerSecond());
+            WarPoliticalMod.LOGGER.info(
+                    "Прогрузка завершена: {} чанков (тикетов {}, из кэша {}), {} чанков/с",
+                    pregen.getProcessed(), pregen.getRequested(), pregen.getSkipped(), rate);
+            listener.onProgress(stage, "готово, " + pregen.getProcessed() + " чанков, " + rate + " чанков/с");
+
+            if (water != null) {
+                startWaterScan(world);
+            } else {
+                computeTerritory(null);
+            }
+        });
+    }
+
+    private void startWaterScan(ServerWorld world) {
+        enter(Stage.WATER, "радиус " + bounds.getRadiusChunks() + " чанков");
+
+        WaterScan scan = new WaterScan(world, bounds, definition.waterThreshold, water);
+        runSliced(scan, TICK_BUDGET_NANOS, () -> {
+            WarPoliticalMod.LOGGER.info("Вода: {} водных из {} известных, проверено сейчас {}, не загружено {}",
+                    water.getWaterCount(), water.getKnownCount(),
+                    scan.getClassified(), scan.getUnavailable());
+
+            // Маска больше не меняется; запись кэша встаёт в очередь раньше расчёта территорий
+            if (water.getKnownCount() != waterKnownAtStart) {
+                WaterMask mask = water;
+                String cacheWorld = worldId;
+                long seed = waterSeed;
+                double threshold = definition.waterThreshold;
+                executor.execute(() -> mod.getWorldManager().getWaterCache()
+                        .save(cacheWorld, seed, threshold, mask));
+            }
+            computeTerritory(water);
+        });
+    }
+
+    private void runSliced(SlicedTask task, long budgetNanos, Runnable then) {
+        reportedPercent = 0;
+        slicedBudgetNanos = Math.max(1_000_000L, budgetNanos);
+        afterSliced = then;
+        sliced = task;
+    }
+
+    void tick() {
+        SlicedTask task = sliced;
+        if (task == null || finished) return;
+
+        boolean done;
+        try {
+            done = task.step(System.nanoTime() + slicedBudgetNanos);
+        } catch (Exception e) {
+            sliced = null;
+            task.cancel();
+            fail(e);
+            return;
+        }
+
+        int percent = task.getProgressPercent();
+        if (!done && percent >= reportedPercent + PROGRESS_STEP_PERCENT) {
+            reportedPercent = percent - percent % PROGRESS_STEP_PERCENT;
+            listener.onProgress(stage, reportedPercent + "%" + task.getProgressDetail());
+        }
+
+        if (done) {
+            sliced = null;
+            Runnable next = afterSliced;
+            afterSliced = null;
+            next.run();
+        }
+    }
+
+    // Сервер останавливается: снимаем тикеты и прочее, что держит незавершённая стадия
+    void cancel() {
+        SlicedTask task = sliced;
+        sliced = null;
+        finished = true;
+        if (task != null) task.cancel();
+    }
+
+    private void computeTerritory(WaterMask water) {
+        enter(Stage.TERRITORY, definition.fillMethod);
+
+        ScenarioDefinition parsed = definition;
+        CompletableFuture
+                .supplyAsync(() -> parser.buildTerritory(parsed, worldId, bounds, water), executor)
+                .whenCompleteAsync((state, error) -> {
+                    if (error != null) {
+                        fail(error);
+                    } else {
+                        persist(state);
+                    }
+                }, server);
+    }
+
+    // Публикуется и при ошибке записи: состояние уже собрано, а запись повторит
+    // следующее сохранение
+    private void persist(TerritoryState state) {
+        if (finished) return;
+        enter(Stage.SAVE, state.getClaimedChunkCount() + " чанков");
+
+        mod.getSaveService().persist(state)
+                .whenCompleteAsync((ok, error) -> {
+                    boolean publish = !finished;
+                    mod.getSaveService().resume(publish);
+                    if (error != null || !Boolean.TRUE.equals(ok)) {
+                        WarPoliticalMod.LOGGER.warn("Новое состояние записано не полностью");
+                    }
+                    if (publish) publish(state);
+                }, server);
+    }
+
+    private void publish(TerritoryState state) {
+        if (finished) return;
+        enter(Stage.PUBLISH, state.getClaimedChunkCount() + " чанков");
+
+        mod.getWorldManager().bindScenarioWorld(worldKey, worldId);
+        // Карта перерисуется по событию подмены состояния
+        mod.getDataManager().publish(state);
+
+        WarPoliticalMod.LOGGER.info("Сценарий '{}' загружен за {} мс",
+                definition.name, (System.nanoTime() - startedAt) / 1_000_000);
+
+        finish(ScenarioResult.success(definition.name,
+                state.getNations().size(), state.getTowns().size(),
+                state.getClaimedChunkCount()));
+    }
+
+    // ═══════════════════════════════════════
+    //  СЛУЖЕБНОЕ
+    // ═══════════════════════════════════════
+
+    private void enter(Stage next, String detail) {
+        stage = next;
+        WarPoliticalMod.LOGGER.info("Загрузка сценария: {} ({})", next.title, detail);
+        listener.onProgress(next, detail);
+    }
+
+    private void fail(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                ? error.getCause() : error;
+
+        // IllegalArgumentException несёт готовое сообщение для игрока (нет файла, секции и т.п.)
+        if (cause instanceof IllegalArgumentException) {
+            finish(ScenarioResult.error(cause.getMessage()));
+        } else {
+            WarPoliticalMod.LOGGER.error("Ошибка загрузки сценария на стадии {}", stage, cause);
+            finish(ScenarioResult.error("Ошибка: " + cause.getMessage()));
+        }
+    }
+
+    private void finish(ScenarioResult result) {
+        if (finished) return;
+        finished = true;
+        parser.onLoadFinished(this);
+        listener.onFinished(result);
+    }
+}
@@ -1,23 +1,39 @@
 package com.warpolitical.scenario;
 
 import com.warpolitical.WarPoliticalMod;
+import com.warpolitical.data.TerritoryState;
 import com.warpolitical.model.Nation;
 import com.warpolitical.model.Town;
+import com.warpolitical.world.WaterMask;
+import com.warpolitical.world.WorldBounds;
 import net.minecraft.server.MinecraftServer;
-import net.minecraft.server.world.ServerWorld;
 import org.yaml.snakeyaml.Yaml;
 
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class ScenarioParser {
 
+    // Блоков. С центрами внутри границы расстояние² чанка до города в заливке
+    // VORONOI не больше 8·R² и помещается в 31 бит её ключа сортировки
+    private static final int MAX_BORDER_RADIUS = 262_000;
+
     private final WarPoliticalMod mod;
     private final MinecraftServer server;
     private final Path scenariosDir;
 
+    // Фоновые стадии загрузки идут по одной, в отдельном потоке
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "WPE-Scenario");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile ScenarioLoadPipeline activeLoad;
+
     public ScenarioParser(WarPoliticalMod mod, MinecraftServer server) {
         this.mod = mod;
         this.server = server;
@@ -38,69 +54,131 @@ public class ScenarioParser {
         return result;
     }
 
+    // ═══════════════════════════════════════
+    //  АСИНХРОННАЯ ЗАГРУЗКА
+    // ═══════════════════════════════════════
+
+    public boolean isLoading() {
+        return activeLoad != null;
+    }
+
+    // Запускает загрузку и сразу возвращает управление; ход загрузки приходит в listener
+    // на серверном потоке. Вызывать только с серверного потока.
+    public boolean startLoad(String scenarioName, ScenarioLoadPipeline.Listener listener) {
+        if (activeLoad != null) return false;
+
+        activeLoad = new ScenarioLoadPipeline(mod, this, server, executor, scenarioName, listener);
+        activeLoad.start();
+        return true;
+    }
+
+    // Вызывается каждый тик сервера: продвигает стадии, работающие с миром
+    public void tick() {
+        ScenarioLoadPipeline load = activeLoad;
+        if (load != null) load.tick();
+    }
+
+    void onLoadFinished(ScenarioLoadPipeline load) {
+        if (activeLoad == load) activeLoad = null;
+    }
+
+    public void shutdown() {
+        ScenarioLoadPipeline load = activeLoad;
+        activeLoad = null;
+        if (load != null) load.cancel();
+        executor.shutdownNow();
+    }
+
+    // ═══════════════════════════════════════
+    //  СТАДИИ (фоновый поток)
+    // ═══════════════════════════════════════
+
     @SuppressWarnings("unchecked")
-    public ScenarioResult loadAndApply(String scenarioName) {
+    ScenarioDefinition readDefinition(String scenarioName) throws IOException {
         File file = findFile(scenarioName);
         if (file == null) {
-            return ScenarioResult.error("Сценарий '" + scenarioName + "' не найден!");
+            throw new IllegalArgumentException("Сценарий '" + scenarioName + "' не найден!");
         }
 
-        try {
-            Yaml yaml = new Yaml();
-            Map<String, Object> root;
-            try (InputStream is = new FileInputStream(file)) {
-                root = yaml.load(is);
-            }
-
-            Map<String, Object> scenario = (Map<String, Object>) root.get("scenario");
-            if (scenario == null) {
-                return ScenarioResult.error("Неверный формат: нет секции 'scenario'");
-            }
+        Yaml yaml = new Yaml();
+        Map<String, Object> root;
+        try (InputStream is = new FileInputStream(file)) {
+            root = yaml.load(is);
+        }
 
-            return parseAndApply(scenario);
-        } catch (Exception e) {
-            WarPoliticalMod.LOGGER.error("Ошибка парсинга сценария", e);
-            return ScenarioResult.error("Ошибка: " + e.getMessage());
+        Map<String, Object> scenario = root != null ? (Map<String, Object>) root.get("scenario") : null;
+        if (scenario == null) {
+            throw new IllegalArgumentException("Неверный формат: нет секции 'scenario'");
         }
-    }
 
-    @SuppressWarnings("unchecked")
-    private ScenarioResult parseAndApply(Map<String, Object> scenario) {
         String name = (String) scenario.getOrDefault("name", "Unnamed");
 
-        WarPoliticalMod.LOGGER.info("══════════════════════════════");
-        WarPoliticalMod.LOGGER.info("  Загрузка сценария: {}", name);
-        WarPoliticalMod.LOGGER.info("══════════════════════════════");
-
-        mod.getDataManager().clearAll();
-
         // Мир
         Map<String, Object> worldSection = (Map<String, Object>) scenario.get("world");
         if (worldSection == null) {
-            return ScenarioResult.error("Нет секции 'world'");
+            throw new IllegalArgumentException("Нет секции 'world'");
         }
 
         String worldName = (String) worldSection.getOrDefault("name", "overworld");
         long seed = getNumber(worldSection, "seed", new Random().nextLong()).longValue();
         int borderRadius = getNumber(worldSection, "border_radius", 640).intValue();
+        if (borderRadius <= 0 || borderRadius > MAX_BORDER_RADIUS) {
+            throw new IllegalArgumentException("border_radius должен быть от 1 до " + MAX_BORDER_RADIUS);
+        }
+        boolean pregenerate = (Boolean) worldSection.getOrDefault("pregenerate", false);
+        int pregenMaxInFlight = getNumber(worldSection, "pregen_max_in_flight", 64).intValue();
+        int pregenTickBudgetMs = getNumber(worldSection, "pregen_tick_budget_ms", 10).intValue();
+
+        if (scenario.get("nations") == null) {
+            throw new IllegalArgumentException("Нет секции 'nations'");
+        }
+
+        // Заполнение оставшихся чанков
+        Map<String, Object> fillRules = (Map<String, Object>) scenario.get("fill_rules");
+        boolean autoFill = true;
+        String fillMethod = "VORONOI";
+        boolean skipWater = true;
+        double waterThreshold = 0.75;
+        int parallelism = 1;
 
-        ServerWorld world = mod.getWorldManager().getOrCreateWorld(worldName, seed, borderRadius);
-        if (world == null) {
-            return ScenarioResult.error("Не удалось получить мир!");
+        if (fillRules != null) {
+            autoFill = (Boolean) fillRules.getOrDefault("auto_fill_land", true);
+            fillMethod = (String) fillRules.getOrDefault("fill_method", "VORONOI");
+            skipWater = (Boolean) fillRules.getOrDefault("skip_water_chunks", true);
+            waterThreshold = getNumber(fillRules, "water_threshold", 0.75).doubleValue();
+            parallelism = getNumber(fillRules, "parallelism", 1).intValue();
+        }
+
+        // 0 или меньше — все доступные ядра
+        if (parallelism <= 0) {
+            parallelism = Runtime.getRuntime().availableProcessors();
         }
 
-        String activeWorldId = mod.getWorldManager().getWorldId(world);
-        mod.getDataManager().setActiveWorldName(activeWorldId);
+        return new ScenarioDefinition(name, scenario, worldName, seed, borderRadius,
+                pregenerate, pregenMaxInFlight, pregenTickBudgetMs,
+                autoFill, fillMethod, skipWater, waterThreshold, parallelism);
+    }
+
+    // Собирает новое состояние территорий целиком, не трогая мир и текущее состояние
+    @SuppressWarnings("unchecked")
+    TerritoryState buildTerritory(ScenarioDefinition definition, String activeWorldId,
+                                  WorldBounds bounds, WaterMask water) {
+        Map<String, Object> scenario = definition.scenario;
+
+        WarPoliticalMod.LOGGER.info("══════════════════════════════");
+        WarPoliticalMod.LOGGER.info("  Загрузка сценария: {}", definition.name);
+        WarPoliticalMod.LOGGER.info("══════════════════════════════");
+
+        TerritoryState state = new TerritoryState();
+        state.setActiveWorldName(activeWorldId);
 
         // Нации
         Map<String, Object> nationsSection = (Map<String, Object>) scenario.get("nations");
-        if (nationsSection == null) {
-            return ScenarioResult.error("Нет секции 'nations'");
-        }
 
         Map<String, Nation> nations = new LinkedHashMap<>();
         Map<String, Town> towns = new LinkedHashMap<>();
         Map<String, Integer> townRadii = new HashMap<>();
+        Map<String, Double> townWeights = new HashMap<>();
 
         for (Map.Entry<String, Object> nationEntry : nationsSection.entrySet()) {
             String nationId = nationEntry.getKey();
@@ -116,8 +194,8 @@ public class ScenarioParser {
 
             List<String> allies = (List<String>) ns.getOrDefault("allies", Collections.emptyList());
             List<String> enemies = (List<String>) ns.getOrDefault("enemies", Collections.emptyList());
-            nation.getAllies().addAll(allies);
-            nation.getEnemies().addAll(enemies);
+            allies.forEach(nation::addAlly);
+            enemies.forEach(nation::addEnemy);
 
             // Города
             Map<String, Object> townsSection = (Map<String, Object>) ns.get("towns");
@@ -131,6 +209,11 @@ public class ScenarioParser {
                             "center_chunk", Arrays.asList(0, 0));
                     int cx = center.get(0);
                     int cz = center.size() > 1 ? center.get(1) : 0;
+                    int borderChunks = definition.borderRadius / 16;
+                    if (Math.abs(cx) > borderChunks || Math.abs(cz) > borderChunks) {
+                        throw new IllegalArgumentException("Центр города " + townId + " [" + cx + ", " + cz
+                                + "] за границей мира (±" + borderChunks + " чанков)");
+                    }
 
                     Town town = new Town(townId,
                             (String) ts.getOrDefault("name", townLocalId),
@@ -143,6 +226,8 @@ public class ScenarioParser {
 
                     int radius = getNumber(ts, "radius", 5).intValue();
                     townRadii.put(townId, radius);
+                    // Вес для POWER / FLOOD_WEIGHTED; по умолчанию — начальный радиус
+                    townWeights.put(townId, getNumber(ts, "weight", radius).doubleValue());
 
                     Boolean isCapital = (Boolean) ts.getOrDefault("is_capital", false);
                     if (isCapital) {
@@ -162,12 +247,11 @@ public class ScenarioParser {
                     nationName, nation.getTownIds().size());
         }
 
-        // Сохраняем в DataManager
         for (Nation nation : nations.values()) {
-            mod.getDataManager().addNation(nation);
+            state.addNation(nation);
         }
         for (Town town : towns.values()) {
-            mod.getDataManager().addTown(town);
+            state.addTown(town);
         }
 
         // Дипломатия
@@ -175,56 +259,35 @@ public class ScenarioParser {
         if (diplomacy != null) {
             parseDiplomacy(diplomacy, nations);
         }
+        state.rebuildRelations();
 
         // Привязка чанков: начальные радиусы
         for (Map.Entry<String, Integer> entry : townRadii.entrySet()) {
             Town town = towns.get(entry.getKey());
             int radius = entry.getValue();
-            claimTownRadius(town, radius, world);
+            claimTownRadius(state, bounds, town, radius);
         }
 
-        // Заполнение оставшихся чанков
-        Map<String, Object> fillRules = (Map<String, Object>) scenario.get("fill_rules");
-        boolean autoFill = true;
-        String fillMethod = "VORONOI";
-        double waterThreshold = 0.75;
-
-        if (fillRules != null) {
-            autoFill = (Boolean) fillRules.getOrDefault("auto_fill_land", true);
-            fillMethod = (String) fillRules.getOrDefault("fill_method", "VORONOI");
-            waterThreshold = getNumber(fillRules, "water_threshold", 0.75).doubleValue();
-        }
-
-        if (autoFill) {
-            mod.getClaimEngine().fillRemainingChunks(
-                    world, towns, nations, fillMethod, waterThreshold);
+        if (definition.autoFill) {
+            mod.getClaimEngine().fillRemainingChunks(state, bounds, water,
+                    towns, nations, townWeights, definition.fillMethod, definition.parallelism);
         }
 
-        // BlueMap
-        if (mod.getBlueMapIntegration().isInitialized()) {
-            mod.getBlueMapIntegration().renderAll();
-        }
-
-        // Сохранение
-        mod.getDataManager().saveAll();
-
-        int totalChunks = mod.getDataManager().getClaimedChunks().size();
-
         WarPoliticalMod.LOGGER.info("══════════════════════════════");
-        WarPoliticalMod.LOGGER.info("  Сценарий '{}' загружен!", name);
+        WarPoliticalMod.LOGGER.info("  Сценарий '{}' рассчитан!", definition.name);
         WarPoliticalMod.LOGGER.info("  Наций: {}", nations.size());
         WarPoliticalMod.LOGGER.info("  Городов: {}", towns.size());
-        WarPoliticalMod.LOGGER.info("  Чанков: {}", totalChunks);
+        WarPoliticalMod.LOGGER.info("  Чанков: {}", state.getClaimedChunkCount());
         WarPoliticalMod.LOGGER.info("══════════════════════════════");
 
-        return ScenarioResult.success(name, nations.size(), towns.size(), totalChunks);
+        return state;
     }
 
-    private void claimTownRadius(Town town, int radius, ServerWorld world) {
+    private void claimTownRadius(TerritoryState state, WorldBounds bounds, Town town, int radius) {
         int cx = town.getCenterX();
         int cz = town.getCenterZ();
         int claimed = 0;
-        String activeWorld = mod.getDataManager().getActiveWorldName();
+        String activeWorld = state.getActiveWorldName();
 
         for (int dx = -radius; dx <= radius; dx++) {
             for (int dz = -radius; dz <= radius; dz++) {
@@ -232,9 +295,9 @@ public class ScenarioParser {
                     int chunkX = cx + dx;
                     int chunkZ = cz + dz;
 
-                    if (mod.getWorldManager().isInWorldBorder(world, chunkX, chunkZ)) {
-                        if (!mod.getDataManager().isChunkClaimed(activeWorld, chunkX, chunkZ)) {
-                            mod.getDataManager().claimChunk(chunkX, chunkZ, activeWorld, town.getId());
+                    if (bounds.contains(chunkX, chunkZ)) {
+                        if (!state.isChunkClaimed(activeWorld, chunkX, chunkZ)) {
+                            state.claimChunk(chunkX, chunkZ, activeWorld, town.getId());
                             claimed++;
                         }
                     }
@@ -257,8 +320,8 @@ public class ScenarioParser {
                 Nation n1 = nations.get(attacker);
                 Nation n2 = nations.get(defender);
                 if (n1 != null && n2 != null) {
-                    n1.getEnemies().add(defender);
-                    n2.getEnemies().add(attacker);
+                    n1.addEnemy(defender);
+                    n2.addEnemy(attacker);
                     n1.setAtWar(true);
                     n2.setAtWar(true);
                     WarPoliticalMod.LOGGER.info("Война: {} ({} vs {})",
@@ -277,8 +340,8 @@ public class ScenarioParser {
                             Nation a = nations.get(members.get(i));
                             Nation b = nations.get(members.get(j));
                             if (a != null && b != null) {
-                                a.getAllies().add(b.getId());
-                                b.getAllies().add(a.getId());
+                                a.addAlly(b.getId());
+                                b.addAlly(a.getId());
                             }
                         }
                     }
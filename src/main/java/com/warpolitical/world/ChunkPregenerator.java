@@ -0,0 +1,152 @@
+package com.warpolitical.world;
+
+import com.warpolitical.WarPoliticalMod;
+import net.minecraft.server.world.ChunkTicketType;
+import net.minecraft.server.world.ServerChunkManager;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkStatus;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Генерация/загрузка всех чанков внутри границы перед заливкой.
+// Чанк запрашивается тикетом уровня FULL; одновременно в работе не больше maxInFlight
+// тикетов, а собственный цикл укладывается в бюджет тика — генерацию делают воркеры
+// чанк-системы, TPS не проседает. Готовый чанк сразу классифицируется на воду
+// (пока он загружен), после чего тикет снимается и чанк может выгрузиться.
+public class ChunkPregenerator implements SlicedTask {
+
+    private static final ChunkTicketType<ChunkPos> PREGEN_TICKET =
+            ChunkTicketType.create("warpolitical_pregen", Comparator.comparingLong(ChunkPos::toLong));
+    // Радиус 0 → уровень тикета 33, ровно FULL без тиков сущностей
+    private static final int TICKET_RADIUS = 0;
+
+    private final ServerWorld world;
+    private final WorldBounds bounds;
+    private final int maxInFlight;
+    private final WaterMask water;
+    private final double waterThreshold;
+    private final BlockPos.Mutable pos = new BlockPos.Mutable();
+
+    private final int radius;
+    private final int side;
+    private int cursor;
+    private final List<ChunkPos> inFlight = new ArrayList<>();
+
+    private final long startedAt = System.nanoTime();
+    private int processed;
+    private int requested;
+    private int skipped;
+
+    // water == null — вода не классифицируется, только генерация
+    public ChunkPregenerator(ServerWorld world, WorldBounds bounds, int maxInFlight,
+                             WaterMask water, double waterThreshold) {
+        this.world = world;
+        this.bounds = bounds;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.water = water;
+        this.waterThreshold = waterThreshold;
+        this.radius = bounds.getRadiusChunks();
+        this.side = radius * 2 + 1;
+    }
+
+    @Override
+    public boolean step(long deadlineNanos) {
+        ServerChunkManager chunks = world.getChunkManager();
+
+        // Забираем готовые
+        for (int i = inFlight.size() - 1; i >= 0; i--) {
+            ChunkPos chunkPos = inFlight.get(i);
+            Chunk chunk = chunks.getChunk(chunkPos.x, chunkPos.z, ChunkStatus.FULL, false);
+            if (chunk == null) continue;
+
+            visit(chunk, chunkPos.x, chunkPos.z);
+            chunks.removeTicket(PREGEN_TICKET, chunkPos, TICKET_RADIUS, chunkPos);
+            inFlight.set(i, inFlight.get(inFlight.size() - 1));
+            inFlight.remove(inFlight.size() - 1);
+        }
+
+        // Выдаём новые, пока есть место и время
+        int total = side * side;
+        while (cursor < total && inFlight.size() < maxInFlight
+                && System.nanoTime() < deadlineNanos) {
+            int cx = cursor / side - radius;
+            int cz = cursor % side - radius;
+            cursor++;
+
+            if (!bounds.contains(cx, cz)) continue;
+            // Чанк известен по кэшу воды — значит, уже был сгенерирован
+            if (water != null && water.isKnown(cx, cz)) {
+                skipped++;
+                continue;
+            }
+
+            Chunk loaded = chunks.getChunk(cx, cz, ChunkStatus.FULL, false);
+            if (loaded != null) {
+                visit(loaded, cx, cz);
+                continue;
+            }
+
+            ChunkPos chunkPos = new ChunkPos(cx, cz);
+            chunks.addTicket(PREGEN_TICKET, chunkPos, TICKET_RADIUS, chunkPos);
+            inFlight.add(chunkPos);
+            requested++;
+        }
+
+        return cursor >= total && inFlight.isEmpty();
+    }
+
+    private void visit(Chunk chunk, int cx, int cz) {
+        if (water != null) {
+            water.set(cx, cz, WorldManager.isWaterChunk(chunk, cx, cz, waterThreshold, pos));
+        }
+        processed++;
+    }
+
+    @Override
+    public int getProgressPercent() {
+        int total = side * side;
+        if (total == 0) return 100;
+        // Выданные, но не готовые чанки ещё не считаются пройденными
+        return (int) (Math.max(0, cursor - inFlight.size()) * 100L / total);
+    }
+
+    @Override
+    public String getProgressDetail() {
+        return String.format(", %.1f чанков/с", getChunksPerSecond());
+    }
+
+    @Override
+    public void cancel() {
+        ServerChunkManager chunks = world.getChunkManager();
+        for (ChunkPos chunkPos : inFlight) {
+            chunks.removeTicket(PREGEN_TICKET, chunkPos, TICKET_RADIUS, chunkPos);
+        }
+        inFlight.clear();
+        WarPoliticalMod.LOGGER.info("Прогрузка чанков прервана: {} готово", processed);
+    }
+
+    public double getChunksPerSecond() {
+        double seconds = (System.nanoTime() - startedAt) / 1e9;
+        return seconds > 0 ? processed / seconds : 0;
+    }
+
+    // Сколько чанков пройдено (сгенерировано, загружено с диска или уже было в памяти)
+    public int getProcessed() {
+        return processed;
+    }
+
+    // Сколько из них потребовало тикета
+    public int getRequested() {
+        return requested;
+    }
+
+    // Сколько пропущено как известные по кэшу воды
+    public int getSkipped() {
+        return skipped;
+    }
+}
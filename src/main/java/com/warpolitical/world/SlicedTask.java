@@ -0,0 +1,20 @@
+package com.warpolitical.world;
+
+// Работа с миром, которую нельзя вынести в фон: выполняется на серверном потоке
+// порциями, по одной на тик, пока step() не вернёт true.
+public interface SlicedTask {
+
+    // Работает до дедлайна (System.nanoTime); true — задача завершена
+    boolean step(long deadlineNanos);
+
+    int getProgressPercent();
+
+    // Дополнение к проценту в сообщении о ходе стадии
+    default String getProgressDetail() {
+        return "";
+    }
+
+    // Освобождает удерживаемые ресурсы, если задачу бросили на полпути
+    default void cancel() {
+    }
+}
@@ -0,0 +1,93 @@
+package com.warpolitical.world;
+
+import com.warpolitical.WarPoliticalMod;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+// Кэш классификации воды на диске: cache/water/<мир>.bin.
+// Годен, пока совпадают сид мира и порог воды; радиус может отличаться —
+// тогда переносится пересечение квадратов, остальное досчитывается.
+public class WaterCache {
+
+    private static final int MAGIC = 0x57504557; // "WPEW"
+    private static final int VERSION = 1;
+
+    private final Path dir;
+
+    public WaterCache(Path configDir) {
+        this.dir = configDir.resolve("cache").resolve("water");
+    }
+
+    // Пустая маска нужного радиуса, если кэша нет или он не подходит
+    public WaterMask load(String worldId, long seed, double threshold, int radius) {
+        WaterMask mask = new WaterMask(radius);
+        File file = fileFor(worldId).toFile();
+        if (!file.exists()) return mask;
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                WarPoliticalMod.LOGGER.warn("Кэш воды {}: неизвестный формат, пересчитываем", file.getName());
+                return mask;
+            }
+            long cachedSeed = in.readLong();
+            double cachedThreshold = in.readDouble();
+            if (cachedSeed != seed || Double.compare(cachedThreshold, threshold) != 0) {
+                WarPoliticalMod.LOGGER.info("Кэш воды {}: другой сид или порог, пересчитываем", file.getName());
+                return mask;
+            }
+
+            WaterMask cached = new WaterMask(in.readInt());
+            readWords(in, cached.knownWords());
+            readWords(in, cached.waterWords());
+            cached.recount();
+
+            if (cached.getRadius() == radius) return cached;
+            mask.copyKnown(cached);
+            return mask;
+        } catch (IOException e) {
+            WarPoliticalMod.LOGGER.warn("Кэш воды {} не прочитан: {}", file.getName(), e.getMessage());
+            return new WaterMask(radius);
+        }
+    }
+
+    public void save(String worldId, long seed, double threshold, WaterMask mask) {
+        Path target = fileFor(worldId);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(dir);
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp.toFile())))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(seed);
+                out.writeDouble(threshold);
+                out.writeInt(mask.getRadius());
+                writeWords(out, mask.knownWords());
+                writeWords(out, mask.waterWords());
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            WarPoliticalMod.LOGGER.warn("Кэш воды не сохранён: {}", e.getMessage());
+        }
+    }
+
+    private Path fileFor(String worldId) {
+        return dir.resolve(worldId.replaceAll("[^a-zA-Z0-9_.-]", "_") + ".bin");
+    }
+
+    private static void readWords(DataInputStream in, long[] words) throws IOException {
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.readLong();
+        }
+    }
+
+    private static void writeWords(DataOutputStream out, long[] words) throws IOException {
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.warpolitical.world;
+
+// Битовые маски чанков в квадрате [-radius, radius]² (координаты чанков):
+// known — чанк классифицирован, water — чанк водный. Неизвестный чанк считается сушей.
+// Заполняется на серверном потоке, дальше только читается стадиями заливки.
+public class WaterMask {
+
+    private final int radius;
+    private final int side;
+    private final long[] known;
+    private final long[] water;
+    private int knownCount;
+    private int waterCount;
+
+    public WaterMask(int radius) {
+        this.radius = radius;
+        this.side = radius * 2 + 1;
+        int words = (int) (((long) side * side + 63) >>> 6);
+        this.known = new long[words];
+        this.water = new long[words];
+    }
+
+    public int getRadius() {
+        return radius;
+    }
+
+    public int getKnownCount() {
+        return knownCount;
+    }
+
+    public int getWaterCount() {
+        return waterCount;
+    }
+
+    public boolean isWater(int chunkX, int chunkZ) {
+        int pos = indexOf(chunkX, chunkZ);
+        return pos >= 0 && (water[pos >>> 6] & (1L << pos)) != 0;
+    }
+
+    public boolean isKnown(int chunkX, int chunkZ) {
+        int pos = indexOf(chunkX, chunkZ);
+        return pos >= 0 && (known[pos >>> 6] & (1L << pos)) != 0;
+    }
+
+    public void set(int chunkX, int chunkZ, boolean isWater) {
+        int pos = indexOf(chunkX, chunkZ);
+        if (pos < 0) return;
+        int word = pos >>> 6;
+        long bit = 1L << pos;
+
+        if ((known[word] & bit) == 0) {
+            known[word] |= bit;
+            knownCount++;
+        }
+        if (isWater && (water[word] & bit) == 0) {
+            water[word] |= bit;
+            waterCount++;
+        } else if (!isWater && (water[word] & bit) != 0) {
+            water[word] &= ~bit;
+            waterCount--;
+        }
+    }
+
+    // Переносит известные чанки из другой маски (например, кэша с другим радиусом)
+    public void copyKnown(WaterMask other) {
+        int r = Math.min(radius, other.radius);
+        for (int cx = -r; cx <= r; cx++) {
+            for (int cz = -r; cz <= r; cz++) {
+                if (other.isKnown(cx, cz)) {
+                    set(cx, cz, other.isWater(cx, cz));
+                }
+            }
+        }
+    }
+
+    long[] knownWords() {
+        return known;
+    }
+
+    long[] waterWords() {
+        return water;
+    }
+
+    // Пересчёт счётчиков после прямой записи слов (чтение кэша)
+    void recount() {
+        knownCount = 0;
+        waterCount = 0;
+        for (int i = 0; i < known.length; i++) {
+            knownCount += Long.bitCount(known[i]);
+            waterCount += Long.bitCount(water[i]);
+        }
+    }
+
+    private int indexOf(int chunkX, int chunkZ) {
+        int ix = chunkX + radius;
+        int iz = chunkZ + radius;
+        if (ix < 0 || iz < 0 || ix >= side || iz >= side) return -1;
+        return ix * side + iz;
+    }
+}
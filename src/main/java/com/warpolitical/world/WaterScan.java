@@ -0,0 +1,79 @@
+package com.warpolitical.world;
+
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkStatus;
+
+// Классификация водных чанков внутри границы порциями: каждый вызов step() работает
+// на серверном потоке до дедлайна и продолжает с того места, где остановился.
+// Чанки, уже известные по кэшу, пропускаются; незагруженные чанки не грузятся
+// и остаются неизвестными (заливка считает их сушей).
+public class WaterScan implements SlicedTask {
+
+    private final ServerWorld world;
+    private final WorldBounds bounds;
+    private final double threshold;
+    private final WaterMask mask;
+    private final BlockPos.Mutable pos = new BlockPos.Mutable();
+
+    private final int radius;
+    private final int side;
+    private int cursor;
+
+    private int classified;
+    private int unavailable;
+
+    public WaterScan(ServerWorld world, WorldBounds bounds, double threshold, WaterMask mask) {
+        this.world = world;
+        this.bounds = bounds;
+        this.threshold = threshold;
+        this.mask = mask;
+        this.radius = mask.getRadius();
+        this.side = radius * 2 + 1;
+    }
+
+    // true — пройдены все чанки
+    @Override
+    public boolean step(long deadlineNanos) {
+        int total = side * side;
+        while (cursor < total) {
+            int cx = cursor / side - radius;
+            int cz = cursor % side - radius;
+            cursor++;
+
+            if (!bounds.contains(cx, cz) || mask.isKnown(cx, cz)) continue;
+
+            Chunk chunk = world.getChunkManager().getChunk(cx, cz, ChunkStatus.FULL, false);
+            if (chunk == null) {
+                unavailable++;
+                continue;
+            }
+            mask.set(cx, cz, WorldManager.isWaterChunk(chunk, cx, cz, threshold, pos));
+            classified++;
+
+            if (System.nanoTime() >= deadlineNanos) break;
+        }
+        return cursor >= total;
+    }
+
+    @Override
+    public int getProgressPercent() {
+        int total = side * side;
+        return total == 0 ? 100 : (int) (cursor * 100L / total);
+    }
+
+    // Сколько чанков классифицировано этим проходом (без кэша)
+    public int getClassified() {
+        return classified;
+    }
+
+    // Сколько чанков не было загружено и осталось неизвестными
+    public int getUnavailable() {
+        return unavailable;
+    }
+
+    public WaterMask getMask() {
+        return mask;
+    }
+}
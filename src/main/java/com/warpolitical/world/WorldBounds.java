@@ -0,0 +1,37 @@
+package com.warpolitical.world;
+
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.world.border.WorldBorder;
+
+// Снимок границы мира, снятый на серверном потоке. Фоновые стадии загрузки
+// проверяют попадание чанков в границу по нему, не обращаясь к миру.
+public final class WorldBounds {
+
+    private final double centerX;
+    private final double centerZ;
+    private final double half;
+
+    public WorldBounds(double centerX, double centerZ, double size) {
+        this.centerX = centerX;
+        this.centerZ = centerZ;
+        this.half = size / 2;
+    }
+
+    public static WorldBounds of(ServerWorld world) {
+        WorldBorder border = world.getWorldBorder();
+        return new WorldBounds(border.getCenterX(), border.getCenterZ(), border.getSize());
+    }
+
+    public int getRadiusChunks() {
+        return (int) half / 16;
+    }
+
+    // Чанк целиком внутри границы
+    public boolean contains(int chunkX, int chunkZ) {
+        double blockX = chunkX * 16.0;
+        double blockZ = chunkZ * 16.0;
+
+        return blockX >= (centerX - half) && (blockX + 16) <= (centerX + half)
+                && blockZ >= (centerZ - half) && (blockZ + 16) <= (centerZ + half);
+    }
+}
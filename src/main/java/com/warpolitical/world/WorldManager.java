@@ -3,21 +3,44 @@ package com.warpolitical.world;
 import com.warpolitical.WarPoliticalMod;
 import net.minecraft.block.Block;
 import net.minecraft.block.Blocks;
+import net.minecraft.registry.RegistryKey;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.GameRules;
 import net.minecraft.world.Heightmap;
+import net.minecraft.world.World;
 import net.minecraft.world.border.WorldBorder;
+import net.minecraft.world.chunk.Chunk;
 
 public class WorldManager {
 
     private final WarPoliticalMod mod;
     private final MinecraftServer server;
+    private final WaterCache waterCache;
+
+    // Мир активного сценария: имя из состояния переводится в ключ один раз,
+    // дальше события сравнивают ключ мира по ссылке
+    private volatile ScenarioWorld scenarioWorld;
+
+    private static final class ScenarioWorld {
+        final String worldId;
+        final RegistryKey<World> key;
+
+        ScenarioWorld(String worldId, RegistryKey<World> key) {
+            this.worldId = worldId;
+            this.key = key;
+        }
+    }
 
     public WorldManager(WarPoliticalMod mod, MinecraftServer server) {
         this.mod = mod;
         this.server = server;
+        this.waterCache = new WaterCache(mod.getConfigDir());
+    }
+
+    public WaterCache getWaterCache() {
+        return waterCache;
     }
 
     public ServerWorld getOrCreateWorld(String worldName, long seed, int borderRadius) {
@@ -37,22 +60,37 @@ public class WorldManager {
         return world;
     }
 
+    // Точное совпадение с полным id ("minecraft:the_nether") или путём ("the_nether");
+    // поиск подстроки путал миры с похожими именами
     public ServerWorld getWorldByName(String name) {
         for (ServerWorld world : server.getWorlds()) {
             String worldId = world.getRegistryKey().getValue().toString();
             String worldPath = world.getRegistryKey().getValue().getPath();
 
-            if (worldId.equals(name) || worldPath.equals(name)
-                    || worldId.contains(name) || worldPath.contains(name)) {
+            if (worldId.equals(name) || worldPath.equals(name)) {
                 return world;
             }
         }
+        return null;
+    }
 
-        if (name.equals("overworld") || name.contains("overworld")) {
-            return server.getOverworld();
-        }
+    // Вызывается при публикации сценария — мир уже известен, искать не нужно
+    public void bindScenarioWorld(RegistryKey<World> key, String worldId) {
+        scenarioWorld = new ScenarioWorld(worldId, key);
+    }
 
-        return null;
+    // Ключ мира для activeWorldName из снимка; null — сценария нет или мир не найден.
+    // Имя сверяется с привязанным (обычно та же строка), поиск — только при смене
+    // имени: перезагрузка данных, старт сервера.
+    public RegistryKey<World> getScenarioWorld(String activeWorldName) {
+        if (activeWorldName == null) return null;
+        ScenarioWorld bound = scenarioWorld;
+        if (bound == null || !activeWorldName.equals(bound.worldId)) {
+            ServerWorld world = getWorldByName(activeWorldName);
+            bound = new ScenarioWorld(activeWorldName, world != null ? world.getRegistryKey() : null);
+            scenarioWorld = bound;
+        }
+        return bound.key;
     }
 
     public ServerWorld getOverworld() {
@@ -74,50 +112,49 @@ public class WorldManager {
         rules.get(GameRules.SPAWN_RADIUS).set(0, server);
     }
 
-    public boolean isWaterChunk(ServerWorld world, int chunkX, int chunkZ, double threshold) {
-        int waterBlocks = 0;
+    // Читает верхний блок каждой колонки прямо из карты высот чанка.
+    // Останавливается, как только исход ясен: порог набран или уже недостижим.
+    public static boolean isWaterChunk(Chunk chunk, int chunkX, int chunkZ,
+                                       double threshold, BlockPos.Mutable pos) {
         int totalBlocks = 256;
+        int needed = (int) Math.ceil(threshold * totalBlocks);
+        if (needed <= 0) return true;
 
+        int waterBlocks = 0;
+        int checked = 0;
         int baseX = chunkX * 16;
         int baseZ = chunkZ * 16;
 
         for (int x = 0; x < 16; x++) {
             for (int z = 0; z < 16; z++) {
-                int worldX = baseX + x;
-                int worldZ = baseZ + z;
-
-                int topY = world.getTopY(Heightmap.Type.WORLD_SURFACE, worldX, worldZ);
-                BlockPos pos = new BlockPos(worldX, topY - 1, worldZ);
-                Block block = world.getBlockState(pos).getBlock();
-
-                if (block == Blocks.WATER
-                        || block == Blocks.SEAGRASS
-                        || block == Blocks.TALL_SEAGRASS
-                        || block == Blocks.KELP
-                        || block == Blocks.KELP_PLANT) {
-                    waterBlocks++;
+                // sampleHeightmap уже даёт Y верхнего блока (высота карты − 1)
+                int topY = chunk.sampleHeightmap(Heightmap.Type.WORLD_SURFACE, x, z);
+                pos.set(baseX + x, topY, baseZ + z);
+
+                if (isWaterBlock(chunk.getBlockState(pos).getBlock())) {
+                    if (++waterBlocks >= needed) return true;
                 }
+                checked++;
+                if (waterBlocks + (totalBlocks - checked) < needed) return false;
             }
         }
+        return false;
+    }
 
-        return (waterBlocks / (double) totalBlocks) >= threshold;
+    private static boolean isWaterBlock(Block block) {
+        return block == Blocks.WATER
+                || block == Blocks.SEAGRASS
+                || block == Blocks.TALL_SEAGRASS
+                || block == Blocks.KELP
+                || block == Blocks.KELP_PLANT;
     }
 
     public int getWorldRadiusChunks(ServerWorld world) {
-        return (int) (world.getWorldBorder().getSize() / 2) / 16;
+        return WorldBounds.of(world).getRadiusChunks();
     }
 
     public boolean isInWorldBorder(ServerWorld world, int chunkX, int chunkZ) {
-        WorldBorder border = world.getWorldBorder();
-        double centerX = border.getCenterX();
-        double centerZ = border.getCenterZ();
-        double half = border.getSize() / 2;
-
-        double blockX = chunkX * 16.0;
-        double blockZ = chunkZ * 16.0;
-
-        return blockX >= (centerX - half) && (blockX + 16) <= (centerX + half)
-                && blockZ >= (centerZ - half) && (blockZ + 16) <= (centerZ + half);
+        return WorldBounds.of(world).contains(chunkX, chunkZ);
     }
 
     public String getWorldId(ServerWorld world) {
@@ -0,0 +1,115 @@
+package com.warpolitical.bluemap;
+
+import com.warpolitical.model.ClaimedChunk;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContourTracerTest {
+
+    @Test
+    void squareGivesFourClockwiseCorners() {
+        ContourTracer.Contour contour = ContourTracer.trace(chunks(0, 0, 1, 0, 0, 1, 1, 1));
+
+        assertRing(contour.outer, 0, 0, 32, 0, 32, 32, 0, 32);
+        assertTrue(contour.holes.isEmpty());
+        assertTrue(area(contour.outer) > 0);
+    }
+
+    @Test
+    void enclosedGapBecomesHole() {
+        List<Long> ring = new ArrayList<>();
+        for (int x = 0; x < 3; x++) {
+            for (int z = 0; z < 3; z++) {
+                if (x != 1 || z != 1) ring.add(ClaimedChunk.pack(x, z));
+            }
+        }
+        ContourTracer.Contour contour = ContourTracer.trace(ring.stream().mapToLong(Long::longValue).toArray());
+
+        assertRing(contour.outer, 0, 0, 48, 0, 48, 48, 0, 48);
+        assertEquals(1, contour.holes.size());
+        List<double[]> hole = contour.holes.get(0);
+        assertEquals(4, hole.size());
+        assertTrue(area(hole) < 0);
+        for (double[] point : hole) {
+            assertTrue(point[0] == 16 || point[0] == 32);
+            assertTrue(point[1] == 16 || point[1] == 32);
+        }
+    }
+
+    @Test
+    void concaveShapeKeepsOnlyCorners() {
+        // L из трёх чанков
+        ContourTracer.Contour contour = ContourTracer.trace(chunks(0, 0, 0, 1, 1, 1));
+
+        assertEquals(6, contour.outer.size());
+        assertEquals(3 * 16 * 16, area(contour.outer));
+    }
+
+    @Test
+    void junctionsStayOnStraightEdges() {
+        // Город 0 — полоса из трёх чанков; над ней два соседа, стык в (2, 0)
+        ContourTracer.Owners owners = (x, z) -> {
+            if (z == 0 && x >= 0 && x <= 2) return 0;
+            if (z == -1 && x >= 0 && x <= 1) return 1;
+            if (z == -1 && x == 2) return 2;
+            return -1;
+        };
+        long[] strip = chunks(0, 0, 1, 0, 2, 0);
+
+        assertEquals(4, ContourTracer.trace(strip).outer.size());
+        List<double[]> outer = ContourTracer.trace(strip, owners).outer;
+        assertTrue(contains(outer, 32, 0));
+        assertTrue(ContourTracer.isJunction(owners, 2, 0));
+        assertFalse(ContourTracer.isJunction(owners, 1, 1));
+    }
+
+    @Test
+    void emptyPartHasNoContour() {
+        assertNull(ContourTracer.trace(new long[0]));
+    }
+
+    static long[] chunks(int... coordinates) {
+        long[] result = new long[coordinates.length / 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ClaimedChunk.pack(coordinates[2 * i], coordinates[2 * i + 1]);
+        }
+        return result;
+    }
+
+    static double area(List<double[]> ring) {
+        double sum = 0;
+        for (int i = 0, n = ring.size(); i < n; i++) {
+            double[] a = ring.get(i);
+            double[] b = ring.get((i + 1) % n);
+            sum += a[0] * b[1] - b[0] * a[1];
+        }
+        return sum / 2;
+    }
+
+    // Кольцо совпадает с ожидаемым с точностью до начальной точки
+    private static void assertRing(List<double[]> ring, double... expected) {
+        int n = expected.length / 2;
+        assertEquals(n, ring.size());
+        int shift = -1;
+        for (int i = 0; i < n; i++) {
+            if (ring.get(i)[0] == expected[0] && ring.get(i)[1] == expected[1]) shift = i;
+        }
+        assertTrue(shift >= 0);
+        for (int i = 0; i < n; i++) {
+            double[] point = ring.get((shift + i) % n);
+            assertEquals(expected[2 * i], point[0]);
+            assertEquals(expected[2 * i + 1], point[1]);
+        }
+    }
+
+    private static boolean contains(List<double[]> ring, double x, double z) {
+        for (double[] point : ring) {
+            if (point[0] == x && point[1] == z) return true;
+        }
+        return false;
+    }
+}
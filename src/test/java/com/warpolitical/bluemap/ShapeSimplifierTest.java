@@ -0,0 +1,116 @@
+package com.warpolitical.bluemap;
+
+import com.warpolitical.model.ClaimedChunk;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShapeSimplifierTest {
+
+    private static final int SIZE = 60;
+
+    // Три города полосами с рваными границами и четвёртый — остров внутри среднего
+    private static final ContourTracer.Owners STRIPES = (x, z) -> {
+        if (x < 0 || z < 0 || x >= SIZE || z >= SIZE) return -1;
+        if (x >= 27 && x <= 32 && z >= 25 && z <= 30) return 3;
+        if (x < 18 + z * 7 % 5) return 0;
+        if (x < 40 + z * 3 % 4) return 1;
+        return 2;
+    };
+
+    // Граница 0 и 1 с карманом глубиной три чанка; в кармане, не касаясь 0, —
+    // город 2, который заходит за прямую срезки кармана
+    private static final ContourTracer.Owners POCKET = (x, z) -> {
+        if (x < 0 || z < 0 || x >= SIZE || z >= SIZE) return -1;
+        if (x >= 28 && x < 34 && z >= 8 && z < 16) return 2;
+        return z < (x >= 20 && x < 40 ? 7 : 10) ? 0 : 1;
+    };
+
+    @Test
+    void neighboursNeitherOverlapNorLeaveGaps() {
+        for (double tolerance : new double[]{8, 20, 40}) {
+            assertTiling(STRIPES, 4, tolerance);
+        }
+    }
+
+    @Test
+    void chordDoesNotCrossThirdOwner() {
+        for (double tolerance : new double[]{40, 60}) {
+            assertTiling(POCKET, 3, tolerance);
+        }
+    }
+
+    @Test
+    void cornersDropStraightRunJunctions() {
+        ContourTracer.Contour traced = ContourTracer.trace(chunksOf(STRIPES, 3), STRIPES);
+        ContourTracer.Contour corners = ShapeSimplifier.corners(traced);
+
+        assertEquals(4, corners.outer.size());
+        assertEquals(6 * 6 * 16 * 16, ContourTracerTest.area(corners.outer));
+    }
+
+    // Упрощённые контуры городов 0..towns-1 не накладываются, а внутри карты
+    // покрывают каждую точку
+    private static void assertTiling(ContourTracer.Owners owners, int towns, double tolerance) {
+        List<ContourTracer.Contour> shapes = new ArrayList<>();
+        for (int town = 0; town < towns; town++) {
+            ContourTracer.Contour traced = ContourTracer.trace(chunksOf(owners, town), owners);
+            ContourTracer.Contour simplified = ShapeSimplifier.simplify(traced, tolerance, owners);
+            assertNotNull(simplified);
+            assertTrue(ShapeSimplifier.vertexCount(simplified) <= ShapeSimplifier.vertexCount(traced));
+            shapes.add(simplified);
+        }
+
+        // Точки не на сетке, чтобы не попадать на рёбра
+        int blocks = SIZE * 16;
+        for (double x = 1.3; x < blocks; x += 4) {
+            for (double z = 2.7; z < blocks; z += 4) {
+                int covering = 0;
+                for (ContourTracer.Contour shape : shapes) {
+                    if (inside(shape, x, z)) covering++;
+                }
+                assertTrue(covering <= 1, "наложение в " + x + ", " + z);
+                // У края карты контур может срезать угол; внутри покрыто всё
+                double margin = tolerance + 16;
+                if (x > margin && z > margin && x < blocks - margin && z < blocks - margin) {
+                    assertEquals(1, covering, "щель в " + x + ", " + z);
+                }
+            }
+        }
+    }
+
+    private static long[] chunksOf(ContourTracer.Owners owners, int town) {
+        List<Long> chunks = new ArrayList<>();
+        for (int x = 0; x < SIZE; x++) {
+            for (int z = 0; z < SIZE; z++) {
+                if (owners.ownerAt(x, z) == town) chunks.add(ClaimedChunk.pack(x, z));
+            }
+        }
+        return chunks.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static boolean inside(ContourTracer.Contour shape, double x, double z) {
+        if (!inside(shape.outer, x, z)) return false;
+        for (List<double[]> hole : shape.holes) {
+            if (inside(hole, x, z)) return false;
+        }
+        return true;
+    }
+
+    // Чётность пересечений луча вдоль x
+    private static boolean inside(List<double[]> ring, double x, double z) {
+        boolean result = false;
+        for (int i = 0, j = ring.size() - 1; i < ring.size(); j = i++) {
+            double[] a = ring.get(i);
+            double[] b = ring.get(j);
+            if ((a[1] > z) != (b[1] > z)
+                    && x < (b[0] - a[0]) * (z - a[1]) / (b[1] - a[1]) + a[0]) {
+                result = !result;
+            }
+        }
+        return result;
+    }
+}
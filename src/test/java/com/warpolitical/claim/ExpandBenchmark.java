@@ -0,0 +1,153 @@
+package com.warpolitical.claim;
+
+import com.warpolitical.data.TerritoryState;
+import com.warpolitical.model.Nation;
+import com.warpolitical.model.Town;
+import com.warpolitical.world.WaterMask;
+import com.warpolitical.world.WorldBounds;
+
+import java.util.*;
+
+// Сравнение EXPAND: прежняя строковая реализация против ExpandFill на синтетической
+// карте (сетка городов с разбросом, ~8% воды, нации по три города). Оба движка
+// получают одинаковые состояния; кроме времени проверяется совпадение результата.
+// Запуск: gradle benchExpand; совпадение на малой карте проверяет ExpandFillTest.
+public final class ExpandBenchmark {
+
+    public static final int[] DEFAULT_RADII_BLOCKS = {480, 2000, 5000};
+
+    private static final String WORLD = "bench";
+    private static final int TOWN_SPACING = 14;
+    private static final int TOWN_RADIUS = 2;
+    private static final double WATER_SHARE = 0.08;
+    private static final long SEED = 42069L;
+
+    private ExpandBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        for (String line : run(DEFAULT_RADII_BLOCKS)) {
+            System.out.println(line);
+        }
+    }
+
+    public static List<String> run(int[] radiiBlocks) {
+        List<String> report = new ArrayList<>();
+
+        // Прогрев JIT на самой маленькой карте, в отчёт не идёт
+        runLegacy(new Scenario(radiiBlocks[0]));
+        runNew(new Scenario(radiiBlocks[0]));
+
+        for (int radiusBlocks : radiiBlocks) {
+            int runs = radiusBlocks <= 2000 ? 3 : 1;
+            long legacyBest = Long.MAX_VALUE;
+            long newBest = Long.MAX_VALUE;
+            Scenario legacy = null;
+            Scenario rewritten = null;
+
+            for (int i = 0; i < runs; i++) {
+                legacy = new Scenario(radiusBlocks);
+                legacyBest = Math.min(legacyBest, runLegacy(legacy));
+                rewritten = new Scenario(radiusBlocks);
+                newBest = Math.min(newBest, runNew(rewritten));
+            }
+
+            boolean same = legacy.sameResult(rewritten);
+            report.add(String.format(
+                    "EXPAND r=%d блоков (%d чанков, городов %d): старый %d мс, новый %d мс, ×%.1f, назначено %d, совпадает: %s",
+                    radiusBlocks, rewritten.bounds.getRadiusChunks(), rewritten.towns.size(),
+                    legacyBest / 1_000_000, newBest / 1_000_000,
+                    legacyBest / (double) Math.max(1, newBest),
+                    rewritten.assigned, same ? "да" : "НЕТ"));
+        }
+        return report;
+    }
+
+    static long runLegacy(Scenario scenario) {
+        long started = System.nanoTime();
+        scenario.assigned = LegacyExpandFill.run(scenario.state, scenario.bounds, scenario.water,
+                scenario.towns, scenario.nations);
+        return System.nanoTime() - started;
+    }
+
+    static long runNew(Scenario scenario) {
+        long started = System.nanoTime();
+        scenario.assigned = new ExpandFill(scenario.state, scenario.bounds, scenario.water)
+                .run(scenario.towns, scenario.nations);
+        return System.nanoTime() - started;
+    }
+
+    // Детерминированная карта: одинаковый радиус даёт одинаковое состояние
+    static class Scenario {
+        final TerritoryState state = new TerritoryState();
+        final WorldBounds bounds;
+        final WaterMask water;
+        final Map<String, Nation> nations = new LinkedHashMap<>();
+        final Map<String, Town> towns = new LinkedHashMap<>();
+        int assigned;
+
+        Scenario(int radiusBlocks) {
+            Random random = new Random(SEED);
+            bounds = new WorldBounds(0, 0, radiusBlocks * 2);
+            int radius = bounds.getRadiusChunks();
+            state.setActiveWorldName(WORLD);
+
+            water = new WaterMask(radius);
+            for (int cx = -radius; cx <= radius; cx++) {
+                for (int cz = -radius; cz <= radius; cz++) {
+                    water.set(cx, cz, random.nextDouble() < WATER_SHARE);
+                }
+            }
+
+            Nation nation = null;
+            for (int gx = -radius; gx <= radius; gx += TOWN_SPACING) {
+                for (int gz = -radius; gz <= radius; gz += TOWN_SPACING) {
+                    int cx = gx + random.nextInt(7) - 3;
+                    int cz = gz + random.nextInt(7) - 3;
+                    if (!bounds.contains(cx, cz)) continue;
+
+                    if (towns.size() % 3 == 0) {
+                        nation = new Nation("n" + nations.size(), "n" + nations.size(), "#FFFFFF");
+                        nations.put(nation.getId(), nation);
+                        state.addNation(nation);
+                    }
+                    String townId = nation.getId() + "_t" + towns.size();
+                    Town town = new Town(townId, townId, nation.getId(), cx, cz, WORLD);
+                    nation.addTown(townId);
+                    towns.put(townId, town);
+                    state.addTown(town);
+                }
+            }
+
+            for (Town town : towns.values()) {
+                for (int dx = -TOWN_RADIUS; dx <= TOWN_RADIUS; dx++) {
+                    for (int dz = -TOWN_RADIUS; dz <= TOWN_RADIUS; dz++) {
+                        int cx = town.getCenterX() + dx;
+                        int cz = town.getCenterZ() + dz;
+                        if (dx * dx + dz * dz > TOWN_RADIUS * TOWN_RADIUS) continue;
+                        if (!bounds.contains(cx, cz) || state.isChunkClaimed(WORLD, cx, cz)) continue;
+                        state.claimChunk(cx, cz, WORLD, town.getId());
+                    }
+                }
+            }
+        }
+
+        boolean sameResult(Scenario other) {
+            if (assigned != other.assigned) return false;
+            int radius = bounds.getRadiusChunks();
+            for (int cx = -radius; cx <= radius; cx++) {
+                for (int cz = -radius; cz <= radius; cz++) {
+                    Town a = state.getTownAtChunk(WORLD, cx, cz);
+                    Town b = other.state.getTownAtChunk(WORLD, cx, cz);
+                    if (!Objects.equals(a != null ? a.getId() : null, b != null ? b.getId() : null)) {
+                        return false;
+                    }
+                }
+            }
+            for (Town town : towns.values()) {
+                if (town.getChunkCount() != other.towns.get(town.getId()).getChunkCount()) return false;
+            }
+            return true;
+        }
+    }
+}
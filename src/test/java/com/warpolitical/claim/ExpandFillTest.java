@@ -0,0 +1,21 @@
+package com.warpolitical.claim;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpandFillTest {
+
+    @Test
+    void matchesLegacyImplementation() {
+        for (int radiusBlocks : new int[]{160, 480}) {
+            ExpandBenchmark.Scenario legacy = new ExpandBenchmark.Scenario(radiusBlocks);
+            ExpandBenchmark.Scenario rewritten = new ExpandBenchmark.Scenario(radiusBlocks);
+            ExpandBenchmark.runLegacy(legacy);
+            ExpandBenchmark.runNew(rewritten);
+
+            assertTrue(rewritten.assigned > 0);
+            assertTrue(legacy.sameResult(rewritten), "расхождение при r=" + radiusBlocks);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.warpolitical.claim;
+
+import com.warpolitical.data.TerritoryState;
+import com.warpolitical.model.ClaimedChunk;
+import com.warpolitical.model.Nation;
+import com.warpolitical.model.Town;
+import com.warpolitical.world.WaterMask;
+import com.warpolitical.world.WorldBounds;
+
+import java.util.*;
+
+// Прежняя реализация EXPAND на строковых множествах и LinkedList.
+// В заливке не используется — эталон для ExpandBenchmark и ExpandFillTest.
+final class LegacyExpandFill {
+
+    private LegacyExpandFill() {
+    }
+
+    static int run(TerritoryState state,
+                   WorldBounds bounds,
+                   WaterMask water,
+                   Map<String, Town> towns,
+                   Map<String, Nation> nations) {
+
+        String worldName = state.getActiveWorldName();
+        int chunkRadius = bounds.getRadiusChunks();
+
+        // Допустимые чанки: внутри границы и не вода
+        Set<String> allowed = new HashSet<>();
+        for (int cx = -chunkRadius; cx <= chunkRadius; cx++) {
+            for (int cz = -chunkRadius; cz <= chunkRadius; cz++) {
+                if (bounds.contains(cx, cz) && (water == null || !water.isWater(cx, cz))) {
+                    allowed.add(cx + "," + cz);
+                }
+            }
+        }
+
+        // Очереди BFS для каждого города
+        Map<String, Queue<int[]>> queues = new LinkedHashMap<>();
+        Set<String> visited = new HashSet<>();
+
+        for (Town town : towns.values()) {
+            Queue<int[]> queue = new LinkedList<>();
+
+            for (long packed : state.getTownChunks(town)) {
+                int cx = ClaimedChunk.unpackX(packed);
+                int cz = ClaimedChunk.unpackZ(packed);
+
+                for (int[] n : getNeighbors(cx, cz)) {
+                    String nKey = n[0] + "," + n[1];
+                    if (allowed.contains(nKey) && !visited.contains(nKey)
+                            && !state.isChunkClaimed(worldName, n[0], n[1])) {
+                        queue.add(n);
+                        visited.add(nKey);
+                    }
+                }
+            }
+
+            queues.put(town.getId(), queue);
+        }
+
+        // Итеративное расширение
+        boolean anyExpanded = true;
+        int totalAssigned = 0;
+
+        while (anyExpanded) {
+            anyExpanded = false;
+
+            for (Map.Entry<String, Queue<int[]>> entry : queues.entrySet()) {
+                String townId = entry.getKey();
+                Queue<int[]> queue = entry.getValue();
+                Town town = towns.get(townId);
+                Nation nation = nations.get(town.getNationId());
+
+                if (queue.isEmpty()) continue;
+                if (!town.canClaimMore()) continue;
+                if (nation != null && !nation.canClaimMore()) continue;
+
+                int expandCount = Math.min(4, queue.size());
+                for (int i = 0; i < expandCount && !queue.isEmpty(); i++) {
+                    int[] next = queue.poll();
+
+                    if (state.isChunkClaimed(worldName, next[0], next[1])) {
+                        continue;
+                    }
+                    if (!town.canClaimMore()) break;
+                    if (nation != null && !nation.canClaimMore()) break;
+
+                    state.claimChunk(next[0], next[1], worldName, townId);
+                    totalAssigned++;
+                    anyExpanded = true;
+
+                    for (int[] nb : getNeighbors(next[0], next[1])) {
+                        String nbKey = nb[0] + "," + nb[1];
+                        if (allowed.contains(nbKey) && !visited.contains(nbKey)
+                                && !state.isChunkClaimed(worldName, nb[0], nb[1])) {
+                            queue.add(nb);
+                            visited.add(nbKey);
+                        }
+                    }
+                }
+            }
+        }
+
+        return totalAssigned;
+    }
+
+    private static int[][] getNeighbors(int cx, int cz) {
+        return new int[][]{
+                {cx + 1, cz}, {cx - 1, cz},
+                {cx, cz + 1}, {cx, cz - 1}
+        };
+    }
+}
@@ -0,0 +1,135 @@
+package com.warpolitical.claim;
+
+import com.warpolitical.data.TerritoryState;
+import com.warpolitical.model.Nation;
+import com.warpolitical.model.Town;
+import com.warpolitical.world.WaterMask;
+import com.warpolitical.world.WorldBounds;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VoronoiFillTest {
+
+    private static final String WORLD = "voronoi";
+    private static final long SEED = 1337L;
+
+    @Test
+    void sameResultForAnyParallelism() {
+        // Ячейка 10×10 — ни город, ни нация в лимит не упираются
+        Scenario sequential = new Scenario(480, 10);
+        sequential.fill(1);
+        for (int parallelism : new int[]{2, 4, 7}) {
+            Scenario parallel = new Scenario(480, 10);
+            parallel.fill(parallelism);
+            assertSameResult(sequential, parallel);
+        }
+    }
+
+    @Test
+    void limitsGiveSameResultForAnyParallelism() {
+        // Ячейка 24×24 больше Town.MAX_CHUNKS, три города больше Nation.MAX_CHUNKS
+        Scenario sequential = new Scenario(1600, 24);
+        sequential.fill(1);
+
+        boolean townCapped = false;
+        for (Town town : sequential.towns.values()) {
+            assertTrue(town.getChunkCount() <= Town.MAX_CHUNKS, town.getId());
+            townCapped |= town.getChunkCount() == Town.MAX_CHUNKS;
+        }
+        boolean nationCapped = false;
+        for (Nation nation : sequential.nations.values()) {
+            assertTrue(nation.getTotalChunks() <= Nation.MAX_CHUNKS, nation.getId());
+            nationCapped |= nation.getTotalChunks() == Nation.MAX_CHUNKS;
+        }
+        assertTrue(townCapped, "ни один город не упёрся в лимит");
+        assertTrue(nationCapped, "ни одна нация не упёрлась в лимит");
+
+        for (int parallelism : new int[]{2, 4, 7}) {
+            Scenario parallel = new Scenario(1600, 24);
+            parallel.fill(parallelism);
+            assertSameResult(sequential, parallel);
+        }
+    }
+
+    // Владелец каждого чанка и счётчики всех городов и наций
+    private static void assertSameResult(Scenario expected, Scenario actual) {
+        int radius = expected.bounds.getRadiusChunks();
+        for (int cx = -radius; cx <= radius; cx++) {
+            for (int cz = -radius; cz <= radius; cz++) {
+                Town a = expected.state.getTownAtChunk(WORLD, cx, cz);
+                Town b = actual.state.getTownAtChunk(WORLD, cx, cz);
+                assertEquals(a == null ? null : a.getId(), b == null ? null : b.getId(),
+                        "владелец " + cx + ", " + cz);
+            }
+        }
+        for (Town town : expected.towns.values()) {
+            assertEquals(town.getChunkCount(), actual.towns.get(town.getId()).getChunkCount(), town.getId());
+        }
+        for (Nation nation : expected.nations.values()) {
+            assertEquals(nation.getTotalChunks(), actual.nations.get(nation.getId()).getTotalChunks(), nation.getId());
+        }
+    }
+
+    // Сетка городов с разбросом, ~8% воды, нации по три города, у каждого города
+    // стартовый крест из пяти чанков
+    private static class Scenario {
+        final TerritoryState state = new TerritoryState();
+        final WorldBounds bounds;
+        final WaterMask water;
+        final Map<String, Nation> nations = new LinkedHashMap<>();
+        final Map<String, Town> towns = new LinkedHashMap<>();
+
+        Scenario(int radiusBlocks, int spacing) {
+            Random random = new Random(SEED);
+            bounds = new WorldBounds(0, 0, radiusBlocks * 2);
+            int radius = bounds.getRadiusChunks();
+            state.setActiveWorldName(WORLD);
+
+            water = new WaterMask(radius);
+            for (int cx = -radius; cx <= radius; cx++) {
+                for (int cz = -radius; cz <= radius; cz++) {
+                    water.set(cx, cz, random.nextDouble() < 0.08);
+                }
+            }
+
+            Nation nation = null;
+            for (int gx = -radius; gx <= radius; gx += spacing) {
+                for (int gz = -radius; gz <= radius; gz += spacing) {
+                    int cx = gx + random.nextInt(5) - 2;
+                    int cz = gz + random.nextInt(5) - 2;
+                    if (!bounds.contains(cx, cz)) continue;
+
+                    if (towns.size() % 3 == 0) {
+                        nation = new Nation("n" + nations.size(), "n" + nations.size(), "#FFFFFF");
+                        nations.put(nation.getId(), nation);
+                        state.addNation(nation);
+                    }
+                    String townId = nation.getId() + "_t" + towns.size();
+                    Town town = new Town(townId, townId, nation.getId(), cx, cz, WORLD);
+                    nation.addTown(townId);
+                    towns.put(townId, town);
+                    state.addTown(town);
+                }
+            }
+
+            int[][] cross = {{0, 0}, {1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+            for (Town town : towns.values()) {
+                for (int[] offset : cross) {
+                    int cx = town.getCenterX() + offset[0];
+                    int cz = town.getCenterZ() + offset[1];
+                    if (!bounds.contains(cx, cz) || state.isChunkClaimed(WORLD, cx, cz)) continue;
+                    state.claimChunk(cx, cz, WORLD, town.getId());
+                }
+            }
+        }
+
+        void fill(int parallelism) {
+            new VoronoiFill(state, bounds, water, parallelism).run(towns, nations);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.warpolitical.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeJournalTest {
+
+    private static final long ID = 0x1234_5678_9ABCL;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recordsReadBackInOrder() {
+        Path file = dir.resolve("journal.wal");
+        ChangeJournal journal = new ChangeJournal(file, ID, 0, List.of());
+        journal.claim("overworld", 10, -20, "town");
+        journal.unclaim("overworld", 11, -20);
+        journal.append(ChangeJournal.Op.WAR, "a", "b");
+        journal.append(ChangeJournal.Op.TOWN_PVP, "town", true);
+        journal.append(ChangeJournal.Op.CLEAR);
+        journal.close();
+
+        List<ChangeJournal.Record> records = ChangeJournal.read(file, ID, 0);
+        assertEquals(5, records.size());
+
+        ChangeJournal.Record claim = records.get(0);
+        assertEquals(1, claim.seq);
+        assertEquals(ChangeJournal.Op.CLAIM, claim.op);
+        assertEquals("overworld", claim.world);
+        assertEquals(10, claim.x);
+        assertEquals(-20, claim.z);
+        assertEquals("town", claim.first);
+
+        assertEquals(ChangeJournal.Op.UNCLAIM, records.get(1).op);
+        assertEquals("b", records.get(2).second);
+        assertTrue(records.get(3).flag);
+        assertEquals(ChangeJournal.Op.CLEAR, records.get(4).op);
+        assertEquals(5, records.get(4).seq);
+    }
+
+    @Test
+    void foreignOrMissingJournalIsEmpty() {
+        Path file = dir.resolve("journal.wal");
+        assertTrue(ChangeJournal.read(file, ID, 0).isEmpty());
+
+        ChangeJournal journal = new ChangeJournal(file, ID, 0, List.of());
+        journal.claim("overworld", 0, 0, "town");
+        journal.close();
+
+        assertTrue(ChangeJournal.read(file, ID + 1, 0).isEmpty());
+    }
+
+    @Test
+    void afterSeqSkipsRecordsAlreadyInSnapshot() {
+        Path file = dir.resolve("journal.wal");
+        ChangeJournal journal = new ChangeJournal(file, ID, 0, List.of());
+        for (int x = 0; x < 10; x++) {
+            journal.claim("overworld", x, 0, "town");
+        }
+        journal.close();
+
+        List<ChangeJournal.Record> records = ChangeJournal.read(file, ID, 7);
+        assertEquals(3, records.size());
+        assertEquals(8, records.get(0).seq);
+    }
+
+    @Test
+    void compactDropsSnapshottedRecords() {
+        Path file = dir.resolve("journal.wal");
+        ChangeJournal journal = new ChangeJournal(file, ID, 0, List.of());
+        for (int x = 0; x < 6; x++) {
+            journal.claim("overworld", x, 0, "town");
+        }
+        journal.compact(4);
+        journal.close();
+
+        List<ChangeJournal.Record> records = ChangeJournal.read(file, ID, 0);
+        assertEquals(2, records.size());
+        assertEquals(5, records.get(0).seq);
+    }
+
+    @Test
+    void resetStartsNewJournalAndKeepsSequence() {
+        Path file = dir.resolve("journal.wal");
+        ChangeJournal journal = new ChangeJournal(file, ID, 0, List.of());
+        journal.claim("overworld", 1, 1, "town");
+        journal.claim("overworld", 2, 2, "town");
+        journal.reset(ID + 1);
+        journal.claim("overworld", 3, 3, "town");
+        journal.close();
+
+        assertTrue(ChangeJournal.read(file, ID, 0).isEmpty());
+        List<ChangeJournal.Record> records = ChangeJournal.read(file, ID + 1, 0);
+        assertEquals(1, records.size());
+        assertEquals(3, records.get(0).x);
+        assertEquals(3, records.get(0).seq);
+    }
+
+    @Test
+    void recoveredRecordsSurviveReopen() {
+        Path file = dir.resolve("journal.wal");
+        ChangeJournal first = new ChangeJournal(file, ID, 0, List.of());
+        first.claim("overworld", 1, 1, "town");
+        first.close();
+
+        List<ChangeJournal.Record> recovered = ChangeJournal.read(file, ID, 0);
+        ChangeJournal second = new ChangeJournal(file, ID, 0, recovered);
+        assertEquals(1, second.getLastSeq());
+        second.claim("overworld", 2, 2, "town");
+        second.close();
+
+        List<ChangeJournal.Record> records = ChangeJournal.read(file, ID, 0);
+        assertEquals(2, records.size());
+        assertEquals(2, records.get(1).seq);
+    }
+
+    @Test
+    void tornTailIsDropped() throws IOException {
+        Path file = dir.resolve("journal.wal");
+        ChangeJournal journal = new ChangeJournal(file, ID, 0, List.of());
+        for (int x = 0; x < 3; x++) {
+            journal.claim("overworld", x, 0, "town");
+        }
+        journal.close();
+
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 5));
+
+        List<ChangeJournal.Record> records = ChangeJournal.read(file, ID, 0);
+        assertEquals(2, records.size());
+    }
+}
@@ -0,0 +1,93 @@
+package com.warpolitical.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClaimFileTest {
+
+    // Край мира Minecraft в чанках
+    private static final int EDGE = 1_875_000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripKeepsOwnersInEveryWorld() throws IOException {
+        TerritoryState source = new TerritoryState();
+        Random random = new Random(7);
+        for (int i = 0; i < 5000; i++) {
+            source.claimChunk(random.nextInt(200) - 100, random.nextInt(200) - 100, "overworld",
+                    "t" + random.nextInt(12));
+        }
+        // Отрезки по z на краях мира и одиночные чанки в другом мире
+        for (int z = EDGE - 40; z < EDGE; z++) {
+            source.claimChunk(-EDGE, z, "overworld", "edge");
+        }
+        source.claimChunk(3, -5, "nether", "t1");
+        source.claimChunk(4, -5, "nether", "t2");
+
+        Path file = dir.resolve("chunks.bin");
+        ClaimFile.write(file, townIds(source), source.getChunkIndexes());
+
+        TerritoryState loaded = new TerritoryState();
+        assertTrue(ClaimFile.read(file, loaded));
+        assertEquals(source.getClaimedChunkCount(), loaded.getClaimedChunkCount());
+        for (Map.Entry<String, ChunkOwnership> entry : source.getChunkIndexes().entrySet()) {
+            String world = entry.getKey();
+            entry.getValue().forEach((x, z, owner) -> assertEquals(
+                    source.getRegistry().townId(owner),
+                    loaded.getRegistry().townId(loaded.getOwnerOrdinal(world, x, z))));
+        }
+    }
+
+    @Test
+    void emptyStateRoundTrips() throws IOException {
+        Path file = dir.resolve("chunks.bin");
+        ClaimFile.write(file, new String[0], Map.of());
+
+        TerritoryState loaded = new TerritoryState();
+        assertTrue(ClaimFile.read(file, loaded));
+        assertEquals(0, loaded.getClaimedChunkCount());
+    }
+
+    @Test
+    void foreignFormatIsRejected() throws IOException {
+        Path file = dir.resolve("chunks.bin");
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9});
+
+        assertFalse(ClaimFile.read(file, new TerritoryState()));
+    }
+
+    @Test
+    void truncatedFileFails() throws IOException {
+        TerritoryState source = new TerritoryState();
+        for (int x = 0; x < 50; x++) {
+            source.claimChunk(x, x, "overworld", "t" + (x % 3));
+        }
+        Path file = dir.resolve("chunks.bin");
+        ClaimFile.write(file, townIds(source), source.getChunkIndexes());
+
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 10));
+
+        assertThrows(IOException.class, () -> ClaimFile.read(file, new TerritoryState()));
+    }
+
+    private static String[] townIds(TerritoryState state) {
+        OrdinalRegistry registry = state.getRegistry();
+        String[] ids = new String[registry.townCount()];
+        for (int ordinal = 0; ordinal < ids.length; ordinal++) {
+            ids[ordinal] = registry.townId(ordinal);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,115 @@
+package com.warpolitical.data;
+
+import com.warpolitical.model.ClaimedChunk;
+import com.warpolitical.model.Nation;
+import com.warpolitical.model.Town;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ComponentIndexTest {
+
+    @Test
+    void claimsJoinAndSplitParts() {
+        OrdinalRegistry registry = new OrdinalRegistry();
+        int town = registry.townOrdinal("a");
+        ComponentIndex index = new ComponentIndex(registry);
+
+        index.add(ClaimedChunk.pack(0, 0), town);
+        index.add(ClaimedChunk.pack(2, 0), town);
+        assertEquals(2, index.getTownComponentCount(town));
+
+        // Мост соединяет части
+        index.add(ClaimedChunk.pack(1, 0), town);
+        assertEquals(1, index.getTownComponentCount(town));
+
+        // По диагонали — отдельная часть
+        index.add(ClaimedChunk.pack(3, 1), town);
+        assertEquals(2, index.getTownComponentCount(town));
+
+        // Снятие моста снова разделяет
+        index.remove(ClaimedChunk.pack(1, 0), town);
+        assertEquals(3, index.getTownComponentCount(town));
+        assertEquals(3, index.getTownComponents(town).size());
+    }
+
+    @Test
+    void nationJoinsPartsOfItsTowns() {
+        OrdinalRegistry registry = new OrdinalRegistry();
+        int nation = registry.nationOrdinal("n");
+        int a = registry.townOrdinal("a");
+        int b = registry.townOrdinal("b");
+        registry.bindTown(a, nation);
+        registry.bindTown(b, nation);
+        ComponentIndex index = new ComponentIndex(registry);
+
+        index.add(ClaimedChunk.pack(0, 0), a);
+        index.add(ClaimedChunk.pack(1, 0), b);
+
+        assertEquals(1, index.getTownComponentCount(a));
+        assertEquals(1, index.getTownComponentCount(b));
+        assertEquals(1, index.getNationComponentCount(nation));
+        assertEquals(2, index.getNationComponents(nation).get(0).length);
+    }
+
+    @Test
+    void unknownOwnersHaveNoParts() {
+        ComponentIndex index = new ComponentIndex(new OrdinalRegistry());
+        assertEquals(0, index.getTownComponentCount(5));
+        assertTrue(index.getNationComponents(-1).isEmpty());
+    }
+
+    @Test
+    void snapshotIndexMatchesStateIndex() {
+        TerritoryState state = new TerritoryState();
+        state.setActiveWorldName("overworld");
+        for (int n = 0; n < 3; n++) {
+            state.addNation(new Nation("n" + n, "n" + n, "#FFFFFF"));
+        }
+        for (int t = 0; t < 12; t++) {
+            String nation = t % 4 == 3 ? null : "n" + (t % 3);
+            state.addTown(new Town("t" + t, "t" + t, nation, 0, 0, "overworld"));
+        }
+
+        Random random = new Random(11);
+        ComponentIndex live = state.getComponents("overworld");
+        for (int i = 0; i < 8000; i++) {
+            int x = random.nextInt(60);
+            int z = random.nextInt(60);
+            if (random.nextInt(4) == 0) {
+                state.unclaimChunk(x, z, "overworld");
+            } else {
+                state.claimChunk(x, z, "overworld", "t" + random.nextInt(12));
+            }
+        }
+
+        ComponentIndex fromSnapshot = ComponentIndex.of(TerritorySnapshot.of(state, 1));
+        OrdinalRegistry registry = state.getRegistry();
+        for (int t = 0; t < 12; t++) {
+            int ordinal = registry.findTown("t" + t);
+            assertEquals(parts(live.getTownComponents(ordinal)), parts(fromSnapshot.getTownComponents(ordinal)));
+        }
+        for (int n = 0; n < 3; n++) {
+            int ordinal = registry.findNation("n" + n);
+            assertEquals(parts(live.getNationComponents(ordinal)), parts(fromSnapshot.getNationComponents(ordinal)));
+        }
+    }
+
+    // Части без учёта порядка чанков и самих частей
+    private static List<String> parts(List<long[]> components) {
+        List<String> result = new ArrayList<>();
+        for (long[] component : components) {
+            long[] sorted = component.clone();
+            Arrays.sort(sorted);
+            result.add(Arrays.toString(sorted));
+        }
+        Collections.sort(result);
+        return result;
+    }
+}
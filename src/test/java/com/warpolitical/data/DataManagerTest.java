@@ -0,0 +1,69 @@
+package com.warpolitical.data;
+
+import com.warpolitical.model.Nation;
+import com.warpolitical.model.Town;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataManagerTest {
+
+    private static final String WORLD = "overworld";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void claimEditsGoOnlyToJournal() throws IOException {
+        DataManager data = new DataManager(dir);
+        data.loadAll();
+        data.setActiveWorldName(WORLD);
+        data.addNation(new Nation("n", "n", "#FFFFFF"));
+        data.addTown(new Town("t", "t", "n", 0, 0, WORLD));
+        for (int x = 0; x < 4; x++) {
+            data.claimChunk(x, 0, WORLD, "t");
+        }
+        // Первое сохранение нового состояния пишет клеймы целиком
+        data.saveAll();
+        Path claimsFile = dir.resolve("data").resolve("chunks.bin");
+        byte[] written = Files.readAllBytes(claimsFile);
+
+        data.claimChunk(10, 10, WORLD, "t");
+        data.unclaimChunk(0, 0, WORLD);
+        DataManager.Snapshot snapshot = data.snapshot();
+        assertNull(snapshot.claims);
+        assertTrue(data.write(snapshot));
+        assertTrue(Arrays.equals(written, Files.readAllBytes(claimsFile)));
+        data.close();
+
+        // Правки возвращаются из журнала поверх старого chunks.bin
+        DataManager reloaded = new DataManager(dir);
+        reloaded.loadAll();
+        TerritoryState state = reloaded.getState();
+        assertEquals("t", state.getTownAtChunk(WORLD, 10, 10).getId());
+        assertNull(state.getTownAtChunk(WORLD, 0, 0));
+        assertEquals(4, reloaded.getTown("t").getChunkCount());
+        reloaded.close();
+    }
+
+    @Test
+    void clearRewritesClaims() {
+        DataManager data = new DataManager(dir);
+        data.loadAll();
+        data.setActiveWorldName(WORLD);
+        data.addNation(new Nation("n", "n", "#FFFFFF"));
+        data.addTown(new Town("t", "t", "n", 0, 0, WORLD));
+        data.claimChunk(0, 0, WORLD, "t");
+        data.saveAll();
+
+        data.clearAll();
+        assertNotNull(data.snapshot().claims);
+        data.close();
+    }
+}
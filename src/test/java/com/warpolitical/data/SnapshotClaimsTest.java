@@ -0,0 +1,87 @@
+package com.warpolitical.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotClaimsTest {
+
+    @Test
+    void editsMatchMutableIndex() {
+        Random random = new Random(5);
+        ChunkOwnershipIndex expected = new ChunkOwnershipIndex();
+        SnapshotClaims claims = SnapshotClaims.EMPTY;
+
+        for (int i = 0; i < 40_000; i++) {
+            // Сначала редкие тайлы по большой площади, потом плотный угол
+            int range = i < 20_000 ? 3000 : 64;
+            int x = random.nextInt(range) - range / 2;
+            int z = random.nextInt(range) - range / 2;
+            if (random.nextInt(3) == 0) {
+                expected.remove(x, z);
+                claims = claims.with(x, z, ChunkOwnership.NONE);
+            } else {
+                int owner = random.nextInt(50_000);
+                expected.put(x, z, owner);
+                claims = claims.with(x, z, owner);
+            }
+        }
+
+        assertClaims(expected, claims);
+        assertClaims(expected, SnapshotClaims.of(expected));
+    }
+
+    @Test
+    void earlierSnapshotsDoNotChange() {
+        Random random = new Random(9);
+        ChunkOwnershipIndex expected = new ChunkOwnershipIndex();
+        SnapshotClaims claims = SnapshotClaims.EMPTY;
+        List<SnapshotClaims> snapshots = new ArrayList<>();
+        List<ChunkOwnershipIndex> copies = new ArrayList<>();
+
+        for (int i = 0; i < 20_000; i++) {
+            int x = random.nextInt(100);
+            int z = random.nextInt(100);
+            if (random.nextInt(4) == 0) {
+                expected.remove(x, z);
+                claims = claims.with(x, z, ChunkOwnership.NONE);
+            } else {
+                int owner = random.nextInt(8);
+                expected.put(x, z, owner);
+                claims = claims.with(x, z, owner);
+            }
+            if (i % 2000 == 0) {
+                snapshots.add(claims);
+                copies.add(expected.copy());
+            }
+        }
+
+        for (int i = 0; i < snapshots.size(); i++) {
+            assertClaims(copies.get(i), snapshots.get(i));
+        }
+    }
+
+    @Test
+    void unchangedOwnerKeepsSnapshot() {
+        SnapshotClaims claims = SnapshotClaims.EMPTY.with(1, 2, 3);
+        assertSame(claims, claims.with(1, 2, 3));
+        assertSame(SnapshotClaims.EMPTY, SnapshotClaims.EMPTY.with(1, 2, ChunkOwnership.NONE));
+        assertEquals(0, claims.with(1, 2, ChunkOwnership.NONE).size());
+    }
+
+    // Совпадение по всем чанкам в обе стороны
+    private static void assertClaims(ChunkOwnership expected, SnapshotClaims actual) {
+        assertEquals(expected.size(), actual.size());
+        expected.forEach((x, z, owner) -> assertEquals(owner, actual.get(x, z)));
+        int[] visited = {0};
+        actual.forEach((x, z, owner) -> {
+            assertEquals(expected.get(x, z), owner);
+            visited[0]++;
+        });
+        assertEquals(expected.size(), visited[0]);
+    }
+}